@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+/**
+ * A record read from a table. The values are stored in an array in field order, so that they can be
+ * retrieved by ordinal without a lookup, while retrieving them by name takes a single lookup in the
+ * {@link Schema}.
+ */
+final class ArrayRecord
+    extends Record
+{
+    private final Schema schema;
+    private final Value[] values;
+
+    ArrayRecord(final boolean deleted, final Schema schema, final Value[] values)
+    {
+        super(deleted);
+        this.schema = schema;
+        this.values = values;
+    }
+
+    @Override
+    public Schema getSchema()
+    {
+        return schema;
+    }
+
+    @Override
+    Value getValue(final String fieldName)
+    {
+        final int ordinal = schema.getOrdinal(fieldName);
+
+        return ordinal == -1 ? null : values[ordinal];
+    }
+
+    @Override
+    Value getValue(final int ordinal)
+    {
+        return values[ordinal];
+    }
+}
@@ -24,6 +24,8 @@ package nl.knaw.dans.common.dbflib;
 public class ByteArrayValue
     extends Value
 {
+    private final MemoPointer memoPointer;
+
     /**
      * Creates a new <code>ByteArrayValue</code> object.
      *
@@ -32,6 +34,27 @@ public class ByteArrayValue
     public ByteArrayValue(final byte[] byteArrayValue)
     {
         super((Object) byteArrayValue);
+        memoPointer = null;
+    }
+
+    /**
+     * Creates a byte array value for a memo field of which the contents are read on first access.
+     */
+    ByteArrayValue(final Field field, final MemoPointer memoPointer)
+    {
+        super(field, null);
+        this.memoPointer = memoPointer;
+    }
+
+    @Override
+    byte[] getOriginalRaw()
+    {
+        if (memoPointer != null)
+        {
+            return memoPointer.getBytes();
+        }
+
+        return super.getOriginalRaw();
     }
 
     @Override
@@ -45,8 +68,9 @@ public class ByteArrayValue
                             throws ValueTooLargeException
     {
         /*
-         * The 'typed' value IS a byte[] in this particular subclass.
+         * The 'typed' value IS a byte[] in this particular subclass. It may not have been read yet
+         * if the value is backed by a memo pointer.
          */
-        return (byte[]) typed;
+        return (byte[]) getTypedValue();
     }
 }
@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads records with positional reads on the channel of the table file. Unlike
+ * {@link FileRecordSource} it does not use the file pointer of the table file, so several of
+ * these sources can read from the same table concurrently, each from its own thread. Like
+ * {@link FileRecordSource} it serves requests for records that are already buffered without
+ * reading the file again.
+ */
+class ChannelRecordSource
+    implements RecordSource
+{
+    private final FileChannel channel;
+    private final DbfHeader header;
+    private final int maxBufferedRecords;
+    private ByteBuffer buffer = ByteBuffer.allocate(0);
+    private long startBufferedRecord = 0;
+    private int nBufferedRecord = 0;
+
+    ChannelRecordSource(final FileChannel channel, final DbfHeader header, final int bufferSize)
+    {
+        this.channel = channel;
+        this.header = header;
+        maxBufferedRecords = Math.max(bufferSize / header.getRecordLength(), 1);
+    }
+
+    public ByteBuffer getRecords(final long startIndex, final int maxRecords)
+                          throws IOException, CorruptedTableException
+    {
+        if (startIndex < startBufferedRecord || startIndex >= startBufferedRecord + nBufferedRecord)
+        {
+            bufferRecords(startIndex,
+                          Math.min(maxRecords, maxBufferedRecords));
+        }
+
+        final int recordLength = header.getRecordLength();
+        final int nRecords = (int) Math.min(maxRecords, startBufferedRecord + nBufferedRecord - startIndex);
+        final ByteBuffer records = buffer.duplicate();
+        final int position = (int) (startIndex - startBufferedRecord) * recordLength;
+
+        records.limit(position + nRecords * recordLength);
+        records.position(position);
+
+        return records;
+    }
+
+    public void recordWritten(final long index, final int offset, final byte[] bytes, final int length)
+    {
+        if (index >= startBufferedRecord && index < startBufferedRecord + nBufferedRecord)
+        {
+            System.arraycopy(bytes, 0, buffer.array(),
+                             ((int) (index - startBufferedRecord) * header.getRecordLength()) + offset, length);
+        }
+    }
+
+    public void invalidate()
+    {
+        nBufferedRecord = 0;
+    }
+
+    private void bufferRecords(final long startIndex, final int maxRecords)
+                        throws IOException, CorruptedTableException
+    {
+        final int recordLength = header.getRecordLength();
+        final int nRecords = (int) Math.max(Math.min(maxRecords, header.getRecordCount() - startIndex), 1);
+        final int length = nRecords * recordLength;
+
+        if (buffer.capacity() < length)
+        {
+            buffer = ByteBuffer.allocate(length);
+        }
+
+        buffer.clear();
+        buffer.limit(length);
+
+        final long position = header.getLength() + (startIndex * recordLength);
+
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, position + buffer.position()) == -1)
+            {
+                break;
+            }
+        }
+
+        startBufferedRecord = startIndex;
+        nBufferedRecord = buffer.position() / recordLength;
+
+        if (nBufferedRecord == 0)
+        {
+            throw new CorruptedTableException("Unexpected end of table file reading record " + startIndex);
+        }
+    }
+}
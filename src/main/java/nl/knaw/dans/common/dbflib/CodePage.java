@@ -0,0 +1,307 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Decodes and encodes the text of CHARACTER and MEMO fields in a single-byte character set, such as
+ * the DOS code pages (cp437, cp850, cp866, ...), the Windows code pages (cp1250, cp1251, cp1252,
+ * ...), Latin-1 and ASCII, through lookup tables. The tables are computed once per character set
+ * from the JDK's own decoder and encoder, so the results are exactly the same as those of
+ * <code>new String(bytes, charsetName)</code> and <code>String.getBytes(charsetName)</code>.
+ * <p>
+ * Decoding removes soft returns in the same pass.
+ */
+final class CodePage
+{
+    private static final byte SOFT_RETURN_1 = (byte) 0x8d;
+    private static final byte SOFT_RETURN_2 = (byte) 0x0a;
+    private static final char REPLACEMENT_CHAR = '\ufffd';
+
+    /*
+     * Character sets that are not single-byte map to this instance, because a ConcurrentMap cannot
+     * hold null values.
+     */
+    private static final CodePage NONE = new CodePage(null, null, false, null, null);
+    private static final ConcurrentMap<String, CodePage> codePages = new ConcurrentHashMap<String, CodePage>();
+    private final Charset charset;
+    private final char[] decodeTable;
+    private final boolean asciiCompatible;
+
+    /*
+     * The characters that can be encoded, other than ASCII if asciiCompatible, sorted, and the
+     * bytes they are encoded to.
+     */
+    private final char[] encodeChars;
+    private final byte[] encodeBytes;
+
+    private CodePage(final Charset charset, final char[] decodeTable, final boolean asciiCompatible,
+                     final char[] encodeChars, final byte[] encodeBytes)
+    {
+        this.charset = charset;
+        this.decodeTable = decodeTable;
+        this.asciiCompatible = asciiCompatible;
+        this.encodeChars = encodeChars;
+        this.encodeBytes = encodeBytes;
+    }
+
+    /**
+     * Returns the code page for the specified character set, or <code>null</code> if it is not a
+     * single-byte character set.
+     *
+     * @param charsetName the name of a supported character set
+     */
+    static CodePage forName(final String charsetName)
+    {
+        CodePage codePage = codePages.get(charsetName);
+
+        if (codePage == null)
+        {
+            codePage = create(Charset.forName(charsetName));
+            codePages.putIfAbsent(charsetName, codePage);
+        }
+
+        return codePage == NONE ? null : codePage;
+    }
+
+    private static CodePage create(final Charset charset)
+    {
+        final CharsetEncoder encoder = charset.canEncode() ? charset.newEncoder() : null;
+        final CharsetDecoder decoder =
+            charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                   .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        if (encoder == null || encoder.maxBytesPerChar() != 1.0f || decoder.maxCharsPerByte() != 1.0f)
+        {
+            return NONE;
+        }
+
+        final byte[] allBytes = new byte[256];
+
+        for (int i = 0; i < allBytes.length; ++i)
+        {
+            allBytes[i] = (byte) i;
+        }
+
+        final char[] decodeTable = new char[256];
+        final String decodedTogether = new String(allBytes, charset);
+
+        if (decodedTogether.length() != decodeTable.length)
+        {
+            return NONE;
+        }
+
+        for (int i = 0; i < decodeTable.length; ++i)
+        {
+            final String decoded = new String(allBytes, i, 1, charset);
+
+            /*
+             * Only if every byte decodes to one character on its own, and to the same character
+             * in context, can decoding be done byte by byte.
+             */
+            if (decoded.length() != 1 || decodedTogether.charAt(i) != decoded.charAt(0))
+            {
+                return NONE;
+            }
+
+            decodeTable[i] = decoded.charAt(0);
+        }
+
+        final char[] chars = new char[256];
+        final byte[] bytes = new byte[256];
+        int n = 0;
+
+        for (int i = 0; i < decodeTable.length; ++i)
+        {
+            final char c = decodeTable[i];
+
+            if (c == REPLACEMENT_CHAR || Arrays.binarySearch(chars, 0, n, c) >= 0)
+            {
+                continue;
+            }
+
+            final byte[] encoded = encode(encoder, c);
+
+            if (encoded == null)
+            {
+                continue;
+            }
+
+            /*
+             * Insertion sort; there are at most 256 characters.
+             */
+            int j = n++;
+
+            for (; j > 0 && chars[j - 1] > c; --j)
+            {
+                chars[j] = chars[j - 1];
+                bytes[j] = bytes[j - 1];
+            }
+
+            chars[j] = c;
+            bytes[j] = encoded[0];
+        }
+
+        /*
+         * Most code pages leave ASCII as is, which allows a shortcut when encoding.
+         */
+        boolean asciiCompatible = true;
+
+        for (char c = 0; c < 0x80 && asciiCompatible; ++c)
+        {
+            final int index = Arrays.binarySearch(chars, 0, n, c);
+
+            asciiCompatible = decodeTable[c] == c && index >= 0 && bytes[index] == c;
+        }
+
+        return new CodePage(charset,
+                            decodeTable,
+                            asciiCompatible,
+                            Arrays.copyOf(chars, n),
+                            Arrays.copyOf(bytes, n));
+    }
+
+    private static byte[] encode(final CharsetEncoder encoder, final char c)
+    {
+        try
+        {
+            final ByteBuffer encoded = encoder.reset().encode(CharBuffer.wrap(new char[] { c }));
+
+            return encoded.remaining() == 1 ? new byte[] { encoded.get() } : null;
+        }
+        catch (final CharacterCodingException characterCodingException)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Decodes the bytes, removing soft returns.
+     */
+    String decode(final byte[] bytes, final int offset, final int length)
+    {
+        final char[] chars = new char[length];
+
+        return new String(chars, 0,
+                          decode(bytes, offset, length, chars));
+    }
+
+    /**
+     * Decodes the remaining bytes of the buffer, removing soft returns. The position of the buffer
+     * is not changed.
+     */
+    String decode(final ByteBuffer buffer)
+    {
+        if (buffer.hasArray())
+        {
+            return decode(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+
+        final int end = buffer.limit();
+        final char[] chars = new char[buffer.remaining()];
+        int n = 0;
+
+        for (int i = buffer.position(); i < end; ++i)
+        {
+            final byte b = buffer.get(i);
+
+            if (b == SOFT_RETURN_1 && i < end - 1 && buffer.get(i + 1) == SOFT_RETURN_2)
+            {
+                ++i;
+
+                continue;
+            }
+
+            chars[n++] = decodeTable[b & 0xff];
+        }
+
+        return new String(chars, 0, n);
+    }
+
+    /**
+     * Decodes the bytes into <code>chars</code>, removing soft returns. <code>chars</code> must be
+     * at least <code>length</code> long.
+     *
+     * @return the number of characters decoded
+     */
+    int decode(final byte[] bytes, final int offset, final int length, final char[] chars)
+    {
+        final int end = offset + length;
+        int n = 0;
+
+        for (int i = offset; i < end; ++i)
+        {
+            final byte b = bytes[i];
+
+            if (b == SOFT_RETURN_1 && i < end - 1 && bytes[i + 1] == SOFT_RETURN_2)
+            {
+                ++i;
+
+                continue;
+            }
+
+            chars[n++] = decodeTable[b & 0xff];
+        }
+
+        return n;
+    }
+
+    /**
+     * Encodes the string.
+     */
+    byte[] encode(final String string)
+    {
+        final int length = string.length();
+        final byte[] bytes = new byte[length];
+
+        for (int i = 0; i < length; ++i)
+        {
+            final char c = string.charAt(i);
+
+            if (c < 0x80 && asciiCompatible)
+            {
+                bytes[i] = (byte) c;
+
+                continue;
+            }
+
+            final int index = Arrays.binarySearch(encodeChars, c);
+
+            if (index < 0)
+            {
+                /*
+                 * Unmappable characters and surrogate pairs are left to the JDK, so that they are
+                 * replaced exactly as String.getBytes would.
+                 */
+                return string.getBytes(charset);
+            }
+
+            bytes[i] = encodeBytes[index];
+        }
+
+        return bytes;
+    }
+}
@@ -38,6 +38,8 @@ public class Database
     private final Map<String, Table> tableMap = new HashMap<String, Table>();
     private final Version version;
     private final String charsetName;
+    private MemoCache memoCache = null;
+    private DurabilityPolicy durabilityPolicy = null;
 
     /**
      * Creates a new Database object. A file representing the database directory must be provided.
@@ -161,6 +163,8 @@ public class Database
             table = new Table(new File(databaseDirectory, name),
                               version,
                               fields);
+            table.setDatabaseMemoCache(memoCache);
+            table.setDatabaseDurabilityPolicy(durabilityPolicy);
             tableMap.put(name, table);
         }
 
@@ -175,6 +179,8 @@ public class Database
         {
             table = new Table(new File(databaseDirectory, name),
                               charsetName);
+            table.setDatabaseMemoCache(memoCache);
+            table.setDatabaseDurabilityPolicy(durabilityPolicy);
             tableMap.put(name, table);
         }
     }
@@ -217,4 +223,61 @@ public class Database
     {
         return charsetName;
     }
+
+    /**
+     * Sets a memo cache that is shared by all tables of this database, including tables that are
+     * added later. A table uses it unless it is opened with {@link OpenOptions} that specify a
+     * cache of their own. Tables that have already opened their memo file use the new cache after
+     * they are reopened.
+     *
+     * @param memoCache the cache to share, or <code>null</code> for no cache
+     */
+    public void setMemoCache(final MemoCache memoCache)
+    {
+        this.memoCache = memoCache;
+
+        for (final Table table : tableMap.values())
+        {
+            table.setDatabaseMemoCache(memoCache);
+        }
+    }
+
+    /**
+     * Returns the memo cache that is shared by the tables of this database.
+     *
+     * @return the memo cache, or <code>null</code>
+     */
+    public MemoCache getMemoCache()
+    {
+        return memoCache;
+    }
+
+    /**
+     * Sets a durability policy that is shared by all tables of this database, including tables
+     * that are added later, so that its sync counts cover the whole database. A table uses it
+     * unless it is opened with {@link OpenOptions} that specify a policy of their own. Tables that
+     * are already open use the new policy after they are reopened.
+     *
+     * @param durabilityPolicy the policy to share, or <code>null</code> to sync as
+     *            {@link DurabilityPolicy#none()}
+     */
+    public void setDurabilityPolicy(final DurabilityPolicy durabilityPolicy)
+    {
+        this.durabilityPolicy = durabilityPolicy;
+
+        for (final Table table : tableMap.values())
+        {
+            table.setDatabaseDurabilityPolicy(durabilityPolicy);
+        }
+    }
+
+    /**
+     * Returns the durability policy that is shared by the tables of this database.
+     *
+     * @return the durability policy, or <code>null</code>
+     */
+    public DurabilityPolicy getDurabilityPolicy()
+    {
+        return durabilityPolicy;
+    }
 }
@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+
+/**
+ * Parses and formats the YYYYMMDD dates stored in DATE fields directly from and to the raw bytes.
+ * Dates are represented as the number of days since 1970-01-01 in the proleptic Gregorian calendar
+ * (the "epoch day"), the same as <code>java.time.LocalDate.toEpochDay()</code>. The methods keep no
+ * state, so they can be used from several threads at once.
+ */
+final class DateCodec
+{
+    private static final int DAYS_PER_400_YEARS = 146097;
+
+    /*
+     * Days from 0000-03-01 to 1970-01-01.
+     */
+    private static final int DAYS_0000_TO_1970 = 719468;
+
+    private DateCodec()
+    {
+        /*
+         * Disallow instantiation.
+         */
+    }
+
+    /**
+     * Returns whether the date is empty, i.e. its year consists only of spaces.
+     */
+    static boolean isBlank(final byte[] bytes, final int offset)
+    {
+        for (int i = offset; i < offset + 4; ++i)
+        {
+            if ((bytes[i] & 0xff) > ' ')
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Parses the YYYYMMDD date at <code>offset</code> to an epoch day. Like the
+     * <code>Calendar</code> used by {@link DateValue}, out of range months and days roll over into
+     * the next year or month.
+     *
+     * @throws NumberFormatException if the date contains anything else than digits
+     */
+    static int parseEpochDay(final byte[] bytes, final int offset)
+    {
+        return toEpochDay(parseDigits(bytes, offset, 4),
+                          parseDigits(bytes, offset + 4, 2),
+                          parseDigits(bytes, offset + 6, 2));
+    }
+
+    /**
+     * Converts a year, one-based month and one-based day to an epoch day.
+     */
+    static int toEpochDay(final int year, final int month, final int day)
+    {
+        /*
+         * Count years from March, so that the leap day is the last day of the year.
+         */
+        int y = year + Math.floorDiv(month - 1, 12);
+        final int m = month - 1 - (Math.floorDiv(month - 1, 12) * 12) + 1;
+
+        if (m <= 2)
+        {
+            --y;
+        }
+
+        final int era = Math.floorDiv(y, 400);
+        final int yearOfEra = y - era * 400;
+        final int dayOfYear = (153 * (m > 2 ? m - 3 : m + 9) + 2) / 5 + day - 1;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+
+        return era * DAYS_PER_400_YEARS + dayOfEra - DAYS_0000_TO_1970;
+    }
+
+    /**
+     * Formats the date as YYYYMMDD into the eight bytes at <code>offset</code>.
+     *
+     * @throws IllegalArgumentException if the year does not fit in four digits
+     */
+    static void format(final int year, final int month, final int day, final byte[] bytes, final int offset)
+    {
+        if (year < 0 || year > 9999)
+        {
+            throw new IllegalArgumentException("Year does not fit in a DATE field: " + year);
+        }
+
+        formatDigits(year, bytes, offset, 4);
+        formatDigits(month, bytes, offset + 4, 2);
+        formatDigits(day, bytes, offset + 6, 2);
+    }
+
+    /**
+     * Parses a number of ASCII digits.
+     *
+     * @throws NumberFormatException if the bytes contain anything else than digits
+     */
+    static int parseDigits(final byte[] bytes, final int offset, final int length)
+    {
+        int value = 0;
+
+        for (int i = offset; i < offset + length; ++i)
+        {
+            final int digit = bytes[i] - '0';
+
+            if (digit < 0 || digit > 9)
+            {
+                throw new NumberFormatException("Not a valid date: '" + new String(bytes, offset, length) + "'");
+            }
+
+            value = value * 10 + digit;
+        }
+
+        return value;
+    }
+
+    private static void formatDigits(final int value, final byte[] bytes, final int offset, final int length)
+    {
+        int rest = value;
+
+        for (int i = offset + length - 1; i >= offset; --i)
+        {
+            bytes[i] = (byte) ('0' + rest % 10);
+            rest /= 10;
+        }
+    }
+}
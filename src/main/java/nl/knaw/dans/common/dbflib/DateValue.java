@@ -15,10 +15,6 @@
  */
 package nl.knaw.dans.common.dbflib;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.text.Format;
-import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
 
@@ -30,8 +26,7 @@ import java.util.Date;
 public class DateValue
     extends Value
 {
-    private static final int RECORD_DATE_LENGTH = 8;
-    private static final Format dateFormat = new SimpleDateFormat("yyyyMMdd");
+    static final int RECORD_DATE_LENGTH = 8;
 
     /**
      * Creates a new DateValue object.
@@ -51,29 +46,23 @@ public class DateValue
     @Override
     protected Object doGetTypedValue(final byte[] rawValue)
     {
-        final String yearString = new String(rawValue, 0, 4);
-        final String monthString = new String(rawValue, 4, 2);
-        final String dayString = new String(rawValue, 6, 2);
-        final Calendar cal = Calendar.getInstance();
-
-        if (yearString.trim().isEmpty())
+        if (isBlank(rawValue))
         {
             return null;
         }
-        else
-        {
-            final int year = Integer.parseInt(yearString);
-            final int month = Integer.parseInt(monthString) - 1;
-            final int day = Integer.parseInt(dayString);
-
-            cal.set(Calendar.YEAR, year);
-            cal.set(Calendar.MONTH, month);
-            cal.set(Calendar.DAY_OF_MONTH, day);
-            cal.set(Calendar.HOUR_OF_DAY, 0);
-            cal.set(Calendar.MINUTE, 0);
-            cal.set(Calendar.SECOND, 0);
-            cal.set(Calendar.MILLISECOND, 0);
-        }
+
+        final Calendar cal = Calendar.getInstance();
+
+        cal.set(Calendar.YEAR,
+                DateCodec.parseDigits(rawValue, 0, 4));
+        cal.set(Calendar.MONTH,
+                DateCodec.parseDigits(rawValue, 4, 2) - 1);
+        cal.set(Calendar.DAY_OF_MONTH,
+                DateCodec.parseDigits(rawValue, 6, 2));
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
 
         return cal.getTime();
     }
@@ -82,22 +71,88 @@ public class DateValue
     protected byte[] doGetRawValue(final Field field)
                             throws ValueTooLargeException
     {
-        final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(RECORD_DATE_LENGTH);
+        /*
+         * A Calendar per call rather than a shared DateFormat, so that values can be written from
+         * several threads at once.
+         */
+        final Calendar cal = Calendar.getInstance();
+        cal.setTime((Date) typed);
+
+        final int year = cal.get(Calendar.YEAR);
+
+        if (year > 9999)
+        {
+            throw new ValueTooLargeException("Year does not fit in a DATE field: " + year);
+        }
+
+        final byte[] bytes = new byte[RECORD_DATE_LENGTH];
+        DateCodec.format(year,
+                         cal.get(Calendar.MONTH) + 1,
+                         cal.get(Calendar.DAY_OF_MONTH),
+                         bytes,
+                         0);
+
+        return bytes;
+    }
+
+    @Override
+    boolean isNull()
+    {
+        final byte[] raw = getOriginalRaw();
 
-        try
+        if (raw == null)
         {
-            byteArrayOutputStream.write(dateFormat.format(typed).getBytes());
+            return typed == null;
         }
-        catch (final IOException ioException)
+
+        return isBlank(raw);
+    }
+
+    /*
+     * Returns the date as an epoch day. A value read from a table is parsed directly from its raw
+     * bytes, in the proleptic Gregorian calendar. A value created from a Date uses the fields of
+     * that Date in the default time zone, i.e. the digits that would be written to the table.
+     */
+    int epochDay()
+    {
+        final byte[] raw = getOriginalRaw();
+
+        if (raw != null)
+        {
+            return isBlank(raw) ? 0 : DateCodec.parseEpochDay(raw, 0);
+        }
+
+        if (typed == null)
+        {
+            return 0;
+        }
+
+        final Calendar cal = Calendar.getInstance();
+        cal.setTime((Date) typed);
+
+        return DateCodec.toEpochDay(cal.get(Calendar.YEAR),
+                                    cal.get(Calendar.MONTH) + 1,
+                                    cal.get(Calendar.DAY_OF_MONTH));
+    }
+
+    /*
+     * A field that is empty, or filled with null characters, has a blank year.
+     */
+    private static boolean isBlank(final byte[] raw)
+    {
+        if (raw.length < RECORD_DATE_LENGTH)
         {
-            assert false : "Writing to ByteArrayOutputStream should not cause an IOException";
+            for (final byte b : raw)
+            {
+                if ((b & 0xff) > ' ')
+                {
+                    throw new NumberFormatException("Not a valid date: '" + new String(raw) + "'");
+                }
+            }
 
-            /*
-             * It should never happen, but if it does, we want to know about it.
-             */
-            throw new RuntimeException(ioException);
+            return true;
         }
 
-        return byteArrayOutputStream.toByteArray();
+        return DateCodec.isBlank(raw, 0);
     }
 }
@@ -74,7 +74,8 @@ class DbfHeader
     private static final int LENGTH_FIELD_DATA_ADDRESS = FD_OFFSET_LENGTH - FD_OFFSET_DATA_ADDRESS;
     private static final int LENGTH_FIELD_DESCR_AFTER_DECIMAL_COUNT =
         FD_OFFSET_NEXT_FIELD - FD_OFFSET_RESERVED_MULTIUSER_1;
-    private static final int LENGTH_TABLE_HEADER_AFTER_RECORD_COUNT = OFFSET_FIELD_DESCRIPTORS - OFFSET_RESERVED_1;
+    private static final int LENGTH_TABLE_HEADER_AFTER_INCOMPLETE_TRANSACTION =
+        OFFSET_FIELD_DESCRIPTORS - OFFSET_ENCRYPTION_FLAG;
     private static final int LENGTH_TABLE_INFO_BLOCK = 32;
     private static final int LENGTH_DELETE_FLAG = 1;
     private static final int OFFSET_WORK_AREA_ID = 20;
@@ -100,12 +101,13 @@ class DbfHeader
      */
     private Version version;
     private int versionByte;
-    private int recordCount;
+    private long recordCount;
     private List<Field> fields = new ArrayList<Field>();
     private short headerLength;
     private short recordLength;
     private Date lastModifiedDate;
     private boolean hasMemo;
+    private boolean incompleteTransaction;
 
     void readAll(final DataInput dataInput)
           throws IOException, CorruptedTableException
@@ -126,7 +128,9 @@ class DbfHeader
         version = Version.getVersion(versionByte, headerLength % 32);
 
         readRecordLength(dataInput);
-        dataInput.skipBytes(LENGTH_TABLE_HEADER_AFTER_RECORD_COUNT);
+        dataInput.skipBytes(LENGTH_RESERVED_1);
+        readIncompleteTransaction(dataInput);
+        dataInput.skipBytes(LENGTH_TABLE_HEADER_AFTER_INCOMPLETE_TRANSACTION);
         readFieldDescriptors(dataInput,
                              getFieldCount());
     }
@@ -230,9 +234,20 @@ class DbfHeader
         recordLength = Util.changeEndianness((short) dataInput.readUnsignedShort());
     }
 
+    private void readIncompleteTransaction(final DataInput dataInput)
+                                    throws IOException
+    {
+        incompleteTransaction = dataInput.readByte() != 0;
+    }
+
     void readFieldDescriptors(final DataInput dataInput, final int fieldCount)
                        throws IOException
     {
+        /*
+         * The fields read replace any fields set before, instead of being added to them.
+         */
+        fields = new ArrayList<Field>(fieldCount);
+
         for (int i = 0; i < fieldCount; ++i)
         {
             fields.add(readField(dataInput));
@@ -276,7 +291,10 @@ class DbfHeader
     void readRecordCount(final DataInput dataInput)
                   throws IOException
     {
-        recordCount = Util.changeEndianness(dataInput.readInt());
+        /*
+         * The record count is an unsigned 32-bit number.
+         */
+        recordCount = Util.changeEndianness(dataInput.readInt()) & 0xffffffffL;
     }
 
     void writeAll(final DataOutput dataOutput)
@@ -389,7 +407,7 @@ class DbfHeader
         this.version = version;
     }
 
-    void setRecordCount(final int recordCount)
+    void setRecordCount(final long recordCount)
     {
         this.recordCount = recordCount;
     }
@@ -404,11 +422,25 @@ class DbfHeader
         return version;
     }
 
-    int getRecordCount()
+    long getRecordCount()
     {
         return recordCount;
     }
 
+    /**
+     * Returns whether the table file is flagged as being in the middle of a transaction, i.e. of a
+     * batch of changes that was not committed or rolled back completely.
+     */
+    boolean isIncompleteTransaction()
+    {
+        return incompleteTransaction;
+    }
+
+    void setIncompleteTransaction(final boolean incompleteTransaction)
+    {
+        this.incompleteTransaction = incompleteTransaction;
+    }
+
     void writeEncryptionFlag(final DataOutput dataOutput)
                       throws IOException
     {
@@ -418,7 +450,7 @@ class DbfHeader
     void writeIncompleteTransaction(final DataOutput dataOutput)
                              throws IOException
     {
-        dataOutput.writeByte(0x00); // not supported yet
+        dataOutput.writeByte(incompleteTransaction ? 0x01 : 0x00);
     }
 
     void writeFieldDescriptor(final DataOutput dataOutput, final Field field)
@@ -521,7 +553,7 @@ class DbfHeader
     void writeRecordCount(final DataOutput dataOutput)
                    throws IOException
     {
-        dataOutput.writeInt(Util.changeEndianness(recordCount));
+        dataOutput.writeInt(Util.changeEndianness((int) recordCount));
     }
 
     void writeRecordLength(final DataOutput dataOutput)
@@ -0,0 +1,247 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Specifies when a {@link Table} forces the changes to its table file and memo file to be written
+ * to the storage device, rather than leaving them in the page cache of the operating system until
+ * it writes them out by itself. Forcing the changes, or syncing for short, protects them against
+ * power failures and operating system crashes, at the cost of waiting for the device. A policy is
+ * created with one of the static methods and passed to the table in the {@link OpenOptions}:
+ *
+ * <pre>
+ * final DurabilityPolicy policy = DurabilityPolicy.everyNRecords(1000);
+ * table.open(OpenOptions.defaults().setDurabilityPolicy(policy));
+ * </pre>
+ *
+ * The table file and the memo file are synced together, with <code>FileChannel.force</code>, and
+ * this counts as one sync. The policy keeps count of the syncs and of the time they take. One
+ * policy can be shared by several tables, for instance by all tables of a {@link Database}, in
+ * which case the counts are those of all tables together. The counting is thread-safe.
+ * <p>
+ * Committing a {@link TableBatch} always syncs the files, whatever the policy, as the batch
+ * cannot be made crash-safe otherwise. These syncs are counted as well.
+ *
+ * @see OpenOptions#setDurabilityPolicy(DurabilityPolicy)
+ * @see Database#setDurabilityPolicy(DurabilityPolicy)
+ */
+public class DurabilityPolicy
+{
+    /**
+     * Enumerates the moments at which a table can sync its files.
+     */
+    public enum Mode
+    {
+        /**
+         * Never syncs the files; the operating system decides when the changes are written. This
+         * is the default.
+         */
+        NONE,
+        /**
+         * Syncs the files when the table is closed, if anything was written since it was opened.
+         */
+        ON_CLOSE,
+        /**
+         * Syncs the files as soon as a number of records were written since the last sync, and
+         * when the table is closed. Records written through a {@link TableAppender} are counted
+         * when it is flushed.
+         */
+        EVERY_N_RECORDS,
+        /**
+         * Syncs the files on the first write after a number of milliseconds have passed since the
+         * last sync, and when the table is closed. No background thread is used, so changes made
+         * just before a table becomes idle are only synced when it is closed.
+         */
+        EVERY_N_MILLIS,
+        /**
+         * Syncs the files after each operation that writes to the table: each call that adds,
+         * updates or deletes records, each flush of a {@link TableAppender}, and each pack. This
+         * is the safest, but also the slowest mode.
+         */
+        EVERY_COMMIT;
+    }
+
+    private final Mode mode;
+    private final long interval;
+    private long syncCount = 0;
+    private long totalSyncNanos = 0;
+    private long maxSyncNanos = 0;
+
+    private DurabilityPolicy(final Mode mode, final long interval)
+    {
+        this.mode = mode;
+        this.interval = interval;
+    }
+
+    /**
+     * Returns a policy that never syncs the files.
+     *
+     * @return a new <code>DurabilityPolicy</code>
+     * @see Mode#NONE
+     */
+    public static DurabilityPolicy none()
+    {
+        return new DurabilityPolicy(Mode.NONE, 0);
+    }
+
+    /**
+     * Returns a policy that syncs the files when the table is closed.
+     *
+     * @return a new <code>DurabilityPolicy</code>
+     * @see Mode#ON_CLOSE
+     */
+    public static DurabilityPolicy onClose()
+    {
+        return new DurabilityPolicy(Mode.ON_CLOSE, 0);
+    }
+
+    /**
+     * Returns a policy that syncs the files after every <code>nRecords</code> records written.
+     *
+     * @param nRecords the number of records to write between syncs
+     * @return a new <code>DurabilityPolicy</code>
+     * @throws IllegalArgumentException if <code>nRecords</code> is not positive
+     * @see Mode#EVERY_N_RECORDS
+     */
+    public static DurabilityPolicy everyNRecords(final long nRecords)
+    {
+        if (nRecords <= 0)
+        {
+            throw new IllegalArgumentException("Number of records must be positive");
+        }
+
+        return new DurabilityPolicy(Mode.EVERY_N_RECORDS, nRecords);
+    }
+
+    /**
+     * Returns a policy that syncs the files at most once every <code>millis</code>
+     * milliseconds.
+     *
+     * @param millis the minimum number of milliseconds between syncs
+     * @return a new <code>DurabilityPolicy</code>
+     * @throws IllegalArgumentException if <code>millis</code> is negative
+     * @see Mode#EVERY_N_MILLIS
+     */
+    public static DurabilityPolicy everyNMillis(final long millis)
+    {
+        if (millis < 0)
+        {
+            throw new IllegalArgumentException("Number of milliseconds must not be negative");
+        }
+
+        return new DurabilityPolicy(Mode.EVERY_N_MILLIS, millis);
+    }
+
+    /**
+     * Returns a policy that syncs the files after each operation that writes to the table.
+     *
+     * @return a new <code>DurabilityPolicy</code>
+     * @see Mode#EVERY_COMMIT
+     */
+    public static DurabilityPolicy everyCommit()
+    {
+        return new DurabilityPolicy(Mode.EVERY_COMMIT, 0);
+    }
+
+    /**
+     * Returns the mode of this policy.
+     *
+     * @return the mode
+     */
+    public Mode getMode()
+    {
+        return mode;
+    }
+
+    /**
+     * Returns the number of records or milliseconds between syncs, depending on the mode, or 0
+     * if the mode does not have an interval.
+     *
+     * @return the interval
+     */
+    public long getInterval()
+    {
+        return interval;
+    }
+
+    /**
+     * Returns the number of times the files were synced.
+     *
+     * @return the number of syncs
+     */
+    public synchronized long getSyncCount()
+    {
+        return syncCount;
+    }
+
+    /**
+     * Returns the total time spent syncing the files.
+     *
+     * @param unit the unit in which to return the time
+     * @return the total sync time
+     */
+    public synchronized long getTotalSyncTime(final TimeUnit unit)
+    {
+        return unit.convert(totalSyncNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the time taken by the slowest sync.
+     *
+     * @param unit the unit in which to return the time
+     * @return the maximum sync time
+     */
+    public synchronized long getMaxSyncTime(final TimeUnit unit)
+    {
+        return unit.convert(maxSyncNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /*
+     * Returns whether the files must be synced after a write, given the number of records written
+     * and the time passed since the last sync.
+     */
+    boolean isSyncDue(final long unsyncedRecords, final long nanosSinceSync)
+    {
+        switch (mode)
+        {
+            case EVERY_N_RECORDS:
+                return unsyncedRecords >= interval;
+
+            case EVERY_N_MILLIS:
+                return nanosSinceSync >= TimeUnit.MILLISECONDS.toNanos(interval);
+
+            case EVERY_COMMIT:
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    boolean isSyncOnClose()
+    {
+        return mode != Mode.NONE;
+    }
+
+    synchronized void synced(final long nanos)
+    {
+        ++syncCount;
+        totalSyncNanos += nanos;
+        maxSyncNanos = Math.max(maxSyncNanos, nanos);
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads records with <code>seek</code> and <code>read</code> calls on the table's
+ * <code>RandomAccessFile</code> into a heap buffer. The buffer is reused between calls and
+ * requests for records that are already buffered are served without reading the file again.
+ */
+class FileRecordSource
+    implements RecordSource
+{
+    private final RandomAccessFile raFile;
+    private final DbfHeader header;
+    private byte[] buffer = new byte[0];
+    private long startBufferedRecord = 0;
+    private int nBufferedRecord = 0;
+
+    FileRecordSource(final RandomAccessFile raFile, final DbfHeader header)
+    {
+        this.raFile = raFile;
+        this.header = header;
+    }
+
+    public ByteBuffer getRecords(final long startIndex, final int maxRecords)
+                          throws IOException, CorruptedTableException
+    {
+        if (startIndex < startBufferedRecord || startIndex >= startBufferedRecord + nBufferedRecord)
+        {
+            bufferRecords(startIndex, maxRecords);
+        }
+
+        final int recordLength = header.getRecordLength();
+        final int nRecords = (int) Math.min(maxRecords, startBufferedRecord + nBufferedRecord - startIndex);
+
+        return ByteBuffer.wrap(buffer,
+                               (int) (startIndex - startBufferedRecord) * recordLength,
+                               nRecords * recordLength);
+    }
+
+    public void recordWritten(final long index, final int offset, final byte[] bytes, final int length)
+    {
+        if (index >= startBufferedRecord && index < startBufferedRecord + nBufferedRecord)
+        {
+            System.arraycopy(bytes, 0, buffer,
+                             ((int) (index - startBufferedRecord) * header.getRecordLength()) + offset, length);
+        }
+    }
+
+    public void invalidate()
+    {
+        nBufferedRecord = 0;
+    }
+
+    private void bufferRecords(final long startIndex, final int maxRecords)
+                        throws IOException, CorruptedTableException
+    {
+        final int recordLength = header.getRecordLength();
+        final int nRecords = (int) Math.max(Math.min(maxRecords, header.getRecordCount() - startIndex), 1);
+        final int length = nRecords * recordLength;
+
+        if (buffer.length < length)
+        {
+            buffer = new byte[length];
+        }
+
+        raFile.seek(header.getLength() + (startIndex * recordLength));
+
+        int bytesRead = 0;
+
+        while (bytesRead < length)
+        {
+            final int n = raFile.read(buffer, bytesRead, length - bytesRead);
+
+            if (n == -1)
+            {
+                break;
+            }
+
+            bytesRead += n;
+        }
+
+        startBufferedRecord = startIndex;
+        nBufferedRecord = bytesRead / recordLength;
+
+        if (nBufferedRecord == 0)
+        {
+            throw new CorruptedTableException("Unexpected end of table file reading record " + startIndex);
+        }
+    }
+}
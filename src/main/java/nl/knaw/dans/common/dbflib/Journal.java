@@ -0,0 +1,217 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A sidecar file that holds the before-images of the parts of a table file that a batch of
+ * changes is about to overwrite: the table info block at the start of the header, the records
+ * that are updated or deleted, and the bytes after the last record, which appended records
+ * overwrite. The journal is written and synced before the table file is touched, and deleted once
+ * the changes to the table file are synced. A journal that is found when the table is opened
+ * therefore belongs to a batch that may have been applied partly, and is used to roll it back.
+ * <p>
+ * The journal ends with a CRC-32 checksum of its contents. A journal without a valid checksum was
+ * not synced completely, so the table file cannot have been changed yet, and it is ignored.
+ */
+final class Journal
+{
+    private static final int MAGIC = 0x44424a4c; // "DBJL"
+    private static final int LENGTH_CHECKSUM = 8;
+
+    private final File file;
+
+    Journal(final File file)
+    {
+        this.file = file;
+    }
+
+    boolean exists()
+    {
+        return file.exists();
+    }
+
+    /**
+     * Writes the before-images of the records at <code>indexes</code>, and of the table info block
+     * and the end of <code>raFile</code>, to the journal, and syncs it.
+     */
+    void write(final RandomAccessFile raFile, final DbfHeader header, final long[] indexes)
+        throws IOException
+    {
+        final int headerLength = header.getLength();
+        final int recordLength = header.getRecordLength();
+        final long endOfRecords = headerLength + (header.getRecordCount() * recordLength);
+        final long fileLength = raFile.length();
+        final byte[] tableInfo = new byte[DbfHeader.OFFSET_FIELD_DESCRIPTORS];
+        final byte[] tail = new byte[(int) Math.max(fileLength - endOfRecords, 0)];
+        final byte[] record = new byte[recordLength];
+        final FileOutputStream fileOutput = new FileOutputStream(file);
+
+        try
+        {
+            final CRC32 checksum = new CRC32();
+            final DataOutputStream dataOutput =
+                new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(fileOutput), checksum));
+
+            raFile.seek(0);
+            raFile.readFully(tableInfo);
+            raFile.seek(endOfRecords);
+            raFile.readFully(tail);
+
+            dataOutput.writeInt(MAGIC);
+            dataOutput.writeLong(fileLength);
+            dataOutput.write(tableInfo);
+            dataOutput.writeLong(endOfRecords);
+            dataOutput.writeInt(tail.length);
+            dataOutput.write(tail);
+            dataOutput.writeInt(headerLength);
+            dataOutput.writeInt(recordLength);
+            dataOutput.writeInt(indexes.length);
+
+            for (final long index : indexes)
+            {
+                raFile.seek(headerLength + (index * recordLength));
+                raFile.readFully(record);
+                dataOutput.writeLong(index);
+                dataOutput.write(record);
+            }
+
+            /*
+             * The checksum is written through the same stream, but after its value was taken.
+             */
+            dataOutput.writeLong(checksum.getValue());
+            dataOutput.flush();
+            fileOutput.getFD().sync();
+        }
+        finally
+        {
+            fileOutput.close();
+        }
+    }
+
+    /**
+     * Returns whether the journal was written completely, and can therefore be used to roll
+     * back.
+     */
+    boolean isComplete()
+                throws IOException
+    {
+        return readContents() != null;
+    }
+
+    /**
+     * Restores the before-images in the journal to <code>raFile</code>, truncates it to its
+     * original length and syncs it. Does nothing if the journal is not complete. The journal itself
+     * is not deleted.
+     *
+     * @return whether the table file was rolled back
+     */
+    boolean rollBack(final RandomAccessFile raFile)
+              throws IOException
+    {
+        final byte[] contents = readContents();
+
+        if (contents == null)
+        {
+            return false;
+        }
+
+        final DataInputStream dataInput = new DataInputStream(new ByteArrayInputStream(contents));
+        dataInput.readInt();
+
+        final long fileLength = dataInput.readLong();
+        final byte[] tableInfo = new byte[DbfHeader.OFFSET_FIELD_DESCRIPTORS];
+        dataInput.readFully(tableInfo);
+
+        final long endOfRecords = dataInput.readLong();
+        final byte[] tail = new byte[dataInput.readInt()];
+        dataInput.readFully(tail);
+
+        final int headerLength = dataInput.readInt();
+        final byte[] record = new byte[dataInput.readInt()];
+        final int nRecords = dataInput.readInt();
+
+        for (int i = 0; i < nRecords; ++i)
+        {
+            final long index = dataInput.readLong();
+            dataInput.readFully(record);
+            raFile.seek(headerLength + (index * record.length));
+            raFile.write(record);
+        }
+
+        raFile.seek(endOfRecords);
+        raFile.write(tail);
+        raFile.setLength(fileLength);
+        raFile.seek(0);
+        raFile.write(tableInfo);
+        raFile.getFD().sync();
+
+        return true;
+    }
+
+    void delete()
+         throws IOException
+    {
+        Files.deleteIfExists(file.toPath());
+    }
+
+    /*
+     * Returns the contents of the journal without the checksum, or null if the journal is
+     * incomplete.
+     */
+    private byte[] readContents()
+                         throws IOException
+    {
+        final byte[] bytes = Files.readAllBytes(file.toPath());
+
+        if (bytes.length < 4 + LENGTH_CHECKSUM)
+        {
+            return null;
+        }
+
+        final int length = bytes.length - LENGTH_CHECKSUM;
+        final CRC32 checksum = new CRC32();
+        checksum.update(bytes, 0, length);
+
+        final DataInputStream dataInput = new DataInputStream(new ByteArrayInputStream(bytes));
+
+        if (dataInput.readInt() != MAGIC)
+        {
+            return null;
+        }
+
+        dataInput.skipBytes(length - 4);
+
+        if (dataInput.readLong() != checksum.getValue())
+        {
+            return null;
+        }
+
+        return Arrays.copyOf(bytes, length);
+    }
+}
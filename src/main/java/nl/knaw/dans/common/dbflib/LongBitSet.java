@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import java.util.Arrays;
+
+/**
+ * A set of bits indexed by a <code>long</code>, as far as needed for tables with more than
+ * <code>Integer.MAX_VALUE</code> records. It has the subset of the operations of
+ * <code>java.util.BitSet</code> that {@link Table} uses, with the same semantics. Like
+ * <code>BitSet</code> it grows as needed.
+ */
+final class LongBitSet
+{
+    private static final int ADDRESS_BITS_PER_WORD = 6;
+    private long[] words;
+
+    LongBitSet(final long nBits)
+    {
+        words = new long[wordIndex(Math.max(nBits - 1, 0)) + 1];
+    }
+
+    boolean get(final long bitIndex)
+    {
+        final int wordIndex = wordIndex(bitIndex);
+
+        return wordIndex < words.length && (words[wordIndex] & (1L << bitIndex)) != 0;
+    }
+
+    void set(final long bitIndex)
+    {
+        final int wordIndex = wordIndex(bitIndex);
+
+        if (wordIndex >= words.length)
+        {
+            words = Arrays.copyOf(words,
+                                  Math.max(2 * words.length, wordIndex + 1));
+        }
+
+        words[wordIndex] |= 1L << bitIndex;
+    }
+
+    void clear(final long bitIndex)
+    {
+        final int wordIndex = wordIndex(bitIndex);
+
+        if (wordIndex < words.length)
+        {
+            words[wordIndex] &= ~(1L << bitIndex);
+        }
+    }
+
+    void clear()
+    {
+        Arrays.fill(words, 0L);
+    }
+
+    /**
+     * Returns the index of the first bit that is not set, from <code>fromIndex</code> on.
+     */
+    long nextClearBit(final long fromIndex)
+    {
+        int wordIndex = wordIndex(fromIndex);
+
+        if (wordIndex >= words.length)
+        {
+            return fromIndex;
+        }
+
+        long word = ~words[wordIndex] & (-1L << fromIndex);
+
+        while (true)
+        {
+            if (word != 0)
+            {
+                return ((long) wordIndex << ADDRESS_BITS_PER_WORD) + Long.numberOfTrailingZeros(word);
+            }
+
+            if (++wordIndex == words.length)
+            {
+                return (long) words.length << ADDRESS_BITS_PER_WORD;
+            }
+
+            word = ~words[wordIndex];
+        }
+    }
+
+    /**
+     * Returns the index of the first bit that is set, from <code>fromIndex</code> on, or -1 if
+     * there is none.
+     */
+    long nextSetBit(final long fromIndex)
+    {
+        int wordIndex = wordIndex(fromIndex);
+
+        if (wordIndex >= words.length)
+        {
+            return -1;
+        }
+
+        long word = words[wordIndex] & (-1L << fromIndex);
+
+        while (true)
+        {
+            if (word != 0)
+            {
+                return ((long) wordIndex << ADDRESS_BITS_PER_WORD) + Long.numberOfTrailingZeros(word);
+            }
+
+            if (++wordIndex == words.length)
+            {
+                return -1;
+            }
+
+            word = words[wordIndex];
+        }
+    }
+
+    private static int wordIndex(final long bitIndex)
+    {
+        if (bitIndex < 0)
+        {
+            throw new IndexOutOfBoundsException("bitIndex < 0: " + bitIndex);
+        }
+
+        return (int) (bitIndex >> ADDRESS_BITS_PER_WORD);
+    }
+}
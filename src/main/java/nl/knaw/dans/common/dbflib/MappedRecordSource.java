@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads records from a memory mapped view of the table file. The record area is mapped in windows
+ * of a configurable size, each containing a whole number of records, so that a record never
+ * straddles two windows. Only one window is mapped at a time; it is replaced when a record outside
+ * of it is requested.
+ */
+class MappedRecordSource
+    implements RecordSource
+{
+    private final FileChannel channel;
+    private final DbfHeader header;
+    private final int windowSize;
+    private MappedByteBuffer window = null;
+    private long startWindowRecord = 0;
+    private int nWindowRecords = 0;
+
+    MappedRecordSource(final FileChannel channel, final DbfHeader header, final int windowSize)
+    {
+        this.channel = channel;
+        this.header = header;
+        this.windowSize = windowSize;
+    }
+
+    public ByteBuffer getRecords(final long startIndex, final int maxRecords)
+                          throws IOException, CorruptedTableException
+    {
+        if (window == null || startIndex < startWindowRecord || startIndex >= startWindowRecord + nWindowRecords)
+        {
+            mapWindow(startIndex);
+        }
+
+        final int recordLength = header.getRecordLength();
+        final int nRecords = (int) Math.min(maxRecords, startWindowRecord + nWindowRecords - startIndex);
+        final int position = (int) (startIndex - startWindowRecord) * recordLength;
+        final ByteBuffer records = window.duplicate();
+
+        records.limit(position + nRecords * recordLength);
+        records.position(position);
+
+        return records;
+    }
+
+    /*
+     * The mapping already reflects writes done through the RandomAccessFile, and writing a record
+     * does not shrink the file.
+     */
+    public void recordWritten(final long index, final int offset, final byte[] bytes, final int length)
+    {
+    }
+
+    /*
+     * The mapping reflects writes done through the RandomAccessFile, but if the file shrinks (as in
+     * pack) accessing the unmapped tail would crash the VM, so the window is always dropped.
+     */
+    public void invalidate()
+    {
+        window = null;
+        nWindowRecords = 0;
+    }
+
+    private void mapWindow(final long startIndex)
+                    throws IOException, CorruptedTableException
+    {
+        final int recordLength = header.getRecordLength();
+        final int recordsPerWindow = Math.max(windowSize / recordLength, 1);
+        final long windowStart = startIndex - (startIndex % recordsPerWindow);
+        final long position = header.getLength() + (windowStart * recordLength);
+        final long recordsInFile = Math.max(channel.size() - position, 0) / recordLength;
+        final int nRecords =
+            (int) Math.min(Math.min(recordsPerWindow, header.getRecordCount() - windowStart),
+                           recordsInFile);
+
+        if (nRecords <= startIndex - windowStart)
+        {
+            throw new CorruptedTableException("Unexpected end of table file reading record " + startIndex);
+        }
+
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, (long) nRecords * recordLength);
+        startWindowRecord = windowStart;
+        nWindowRecords = nRecords;
+    }
+}
@@ -15,11 +15,16 @@
  */
 package nl.knaw.dans.common.dbflib;
 
-import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 
 /**
  * Represents a memo (.DBT) file.
@@ -40,6 +45,7 @@ class Memo
      */
     private static final int DEFAULT_LENGTH_MEMO_BLOCK = 512;
     private static final int LENGTH_FILE_NAME = 8;
+    private static final int LENGTH_READ_CHUNK = 8192;
 
     /*
      * Markers.
@@ -51,9 +57,16 @@ class Memo
      */
     private final File memoFile;
     private RandomAccessFile raf = null;
-    private int nextAvailableBlock = 0;
+    private long nextAvailableBlock = 0;
     private int blockLength = DEFAULT_LENGTH_MEMO_BLOCK;
+    private long fileLength = 0;
     private final Version version;
+    private byte[] readBuffer = null;
+    private MemoCache cache = null;
+    private File cacheKey = null;
+    private int mapWindowSize = 0;
+    private MappedByteBuffer window = null;
+    private long windowStart = 0;
 
     /**
      * Creates a new <code>Memo</code> object.
@@ -75,18 +88,61 @@ class Memo
         this.version = version;
     }
 
+    /**
+     * Sets the cache to read memos through, or <code>null</code> to read them from the file
+     * every time.
+     *
+     * @param cache the cache to use
+     */
+    void setCache(final MemoCache cache)
+    {
+        this.cache = cache;
+        cacheKey = memoFile.getAbsoluteFile();
+    }
+
+    /**
+     * Makes the memo file be read from memory mapped windows of about <code>mapWindowSize</code>
+     * bytes, or from the file if <code>mapWindowSize</code> is zero. A window always holds the
+     * memo that is read, however long.
+     *
+     * @param mapWindowSize the size of the mapped windows in bytes
+     */
+    void setMapWindowSize(final int mapWindowSize)
+    {
+        this.mapWindowSize = mapWindowSize;
+    }
+
     void open(final String mode, final IfNonExistent ifNonExistent)
        throws IOException
     {
+        if (cache != null)
+        {
+            cache.invalidate(cacheKey);
+        }
+
         if (memoFile.exists())
         {
             raf = new RandomAccessFile(memoFile, mode);
 
+            final int nextAvailableBlockField = raf.readInt();
+
             if (version == Version.FOXPRO_26)
             {
-                raf.skipBytes(4);
+                nextAvailableBlock = nextAvailableBlockField & 0xffffffffL;
                 blockLength = raf.readInt();
             }
+            else
+            {
+                nextAvailableBlock = Util.changeEndianness(nextAvailableBlockField) & 0xffffffffL;
+            }
+
+            fileLength = raf.length();
+
+            /*
+             * Not all programs keep the next available block up to date, so never write before the
+             * end of the file.
+             */
+            nextAvailableBlock = Math.max(nextAvailableBlock, (fileLength + blockLength - 1) / blockLength);
         }
         else if (ifNonExistent.isCreate())
         {
@@ -102,6 +158,7 @@ class Memo
             }
 
             writeMemoHeader();
+            fileLength = raf.length();
         }
         else if (ifNonExistent.isError())
         {
@@ -109,6 +166,37 @@ class Memo
         }
     }
 
+    /**
+     * Returns the underlying memo file.
+     *
+     * @return the memo file
+     */
+    File getFile()
+    {
+        return memoFile;
+    }
+
+    /**
+     * Returns the length of the blocks of the memo file.
+     *
+     * @return the block length in bytes
+     */
+    int getBlockLength()
+    {
+        return blockLength;
+    }
+
+    /**
+     * Sets the length of the blocks of a memo file that is yet to be created. The length of an
+     * existing FoxPro memo file is read from its header when it is opened.
+     *
+     * @param blockLength the block length in bytes
+     */
+    void setBlockLength(final int blockLength)
+    {
+        this.blockLength = blockLength;
+    }
+
     /**
      * Closes the memo file for reading and writing.
      *
@@ -122,9 +210,24 @@ class Memo
             return;
         }
 
+        window = null;
         raf.close();
     }
 
+    /**
+     * Forces the changes to the memo file to be written to the storage device.
+     *
+     * @throws IOException if the file cannot be synced
+     */
+    void sync()
+       throws IOException
+    {
+        if (raf != null)
+        {
+            raf.getChannel().force(true);
+        }
+    }
+
     /**
      * Closes and deletes the underlying memo file.
      *
@@ -134,21 +237,86 @@ class Memo
          throws IOException
     {
         close();
+
+        if (cache != null)
+        {
+            cache.invalidate(cacheKey);
+        }
+
         memoFile.delete();
     }
 
     /**
-     * Reads a string of characters from memo file.
+     * Checks that <code>blockIndex</code> points to a block within the memo file, without reading
+     * it.
+     *
+     * @param blockIndex the block number to check
+     * @throws CorruptedTableException if the block lies beyond the end of the memo file
+     */
+    void checkBlockIndex(final long blockIndex)
+                  throws CorruptedTableException
+    {
+        if (blockIndex < 0 || blockIndex * blockLength >= fileLength)
+        {
+            throw new CorruptedTableException("Corrupted memo file, pointer beyond end of file: " + blockIndex);
+        }
+    }
+
+    /**
+     * Reads a string of characters from memo file, or from the cache, if one is set. The memo is
+     * read in chunks of whole blocks rather than byte by byte.
      *
      * @param blockIndex block number where the string of characters starts
      *
      */
-    byte[] readMemo(final int blockIndex)
+    byte[] readMemo(final long blockIndex)
              throws IOException, CorruptedTableException
     {
-        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        int memoLength = 0;
-        int c = 0;
+        if (cache == null)
+        {
+            return readMemoFromFile(blockIndex);
+        }
+
+        byte[] memo = cache.get(cacheKey, blockIndex);
+
+        if (memo == null)
+        {
+            memo = readMemoFromFile(blockIndex);
+            cache.put(cacheKey, blockIndex, memo);
+        }
+
+        return memo;
+    }
+
+    /**
+     * Returns the memo as a read-only buffer. If the memo file is memory mapped the buffer is a
+     * view of the mapping, so the memo is neither copied nor read with a system call. The buffer
+     * must not be used after the memo file is closed.
+     *
+     * @param blockIndex block number where the memo starts
+     */
+    ByteBuffer readMemoBuffer(final long blockIndex)
+                       throws IOException, CorruptedTableException
+    {
+        if (mapWindowSize > 0)
+        {
+            return readMappedMemo(blockIndex);
+        }
+
+        return ByteBuffer.wrap(readMemo(blockIndex)).asReadOnlyBuffer();
+    }
+
+    private byte[] readMemoFromFile(final long blockIndex)
+                             throws IOException, CorruptedTableException
+    {
+        if (mapWindowSize > 0)
+        {
+            final ByteBuffer buffer = readMappedMemo(blockIndex);
+            final byte[] memo = new byte[buffer.remaining()];
+            buffer.get(memo);
+
+            return memo;
+        }
 
         raf.seek(blockIndex * blockLength);
 
@@ -156,63 +324,270 @@ class Memo
         {
             case DBASE_3:
             case CLIPPER_5:
+                return readTerminatedMemo();
 
-                while ((c = raf.read()) != MARKER_MEMO_END)
-                {
-                    if (c == -1)
-                    {
-                        throw new CorruptedTableException("Corrupted memo file, EOF exception");
-                    }
+            case DBASE_4:
+            case DBASE_5:
+            case FOXPRO_26:
+                return readMemoWithLength();
 
-                    bos.write(c);
+            default:
+                assert false : "Programming error, did not handle version " + version.toString();
+        }
+
+        return new byte[0];
+    }
+
+    /*
+     * Reads up to the end marker, scanning one chunk of blocks at a time.
+     */
+    private byte[] readTerminatedMemo()
+                               throws IOException, CorruptedTableException
+    {
+        final byte[] buffer = getReadBuffer();
+        byte[] memo = buffer;
+        int memoLength = 0;
+
+        while (true)
+        {
+            final int nRead = raf.read(buffer, 0, buffer.length);
+
+            if (nRead == -1)
+            {
+                throw new CorruptedTableException("Corrupted memo file, EOF exception");
+            }
+
+            int end = 0;
+
+            while (end < nRead && buffer[end] != MARKER_MEMO_END)
+            {
+                ++end;
+            }
+
+            if (memo == buffer)
+            {
+                /*
+                 * The common case of a memo that ends in the first chunk is copied only once.
+                 */
+                if (end < nRead)
+                {
+                    return Arrays.copyOf(buffer, end);
                 }
 
-                break;
+                memo = new byte[nRead * 2];
+            }
+            else if (memo.length < memoLength + end)
+            {
+                memo = Arrays.copyOf(memo,
+                                     Math.max(memo.length * 2, memoLength + end));
+            }
+
+            System.arraycopy(buffer, 0, memo, memoLength, end);
+            memoLength += end;
+
+            if (end < nRead)
+            {
+                return Arrays.copyOf(memo, memoLength);
+            }
+        }
+    }
+
+    /*
+     * Reads the length from the memo header and then the memo itself with a single read.
+     */
+    private byte[] readMemoWithLength()
+                               throws IOException, CorruptedTableException
+    {
+        /*
+         * at the beginning of each memo there is a header of 8 bytes. 4 first bytes: dBase -
+         * FFFF0800h, FoxPro - type of data (text/general/picture) 4 last bytes: dBase - offset
+         * to the end of memo (length of data + 8) FoxPro - length of data
+         */
+        final byte[] header = new byte[8];
+        readFully(header);
+
+        final int lengthField = ((header[4] & 0xff) << 24) | ((header[5] & 0xff) << 16) | ((header[6] & 0xff) << 8)
+                                | (header[7] & 0xff);
+        final int memoLength;
+
+        if (version == Version.FOXPRO_26)
+        {
+            memoLength = lengthField;
+        }
+        else
+        {
+            memoLength = Util.changeEndianness(lengthField) - version.getMemoDataOffset();
+        }
+
+        if (memoLength < 0 || memoLength > fileLength - raf.getFilePointer())
+        {
+            throw new CorruptedTableException("Corrupted memo file, EOF exception");
+        }
+
+        final byte[] memo = new byte[memoLength];
+        readFully(memo);
+
+        return memo;
+    }
+
+    private ByteBuffer readMappedMemo(final long blockIndex)
+                               throws IOException, CorruptedTableException
+    {
+        final long position = blockIndex * blockLength;
+
+        if (position < 0 || position >= fileLength)
+        {
+            throw new CorruptedTableException("Corrupted memo file, EOF exception");
+        }
+
+        switch (version)
+        {
+            case DBASE_3:
+            case CLIPPER_5:
+                return readMappedTerminatedMemo(position);
 
             case DBASE_4:
             case DBASE_5:
             case FOXPRO_26:
-                /*
-                 * at the beginning of each memo there is a header of 8 bytes. 4 first bytes: dBase -
-                 * FFFF0800h, FoxPro - type of data (text/general/picture) 4 last bytes: dBase - offset
-                 * to the end of memo (length of data + 8) FoxPro - length of data
-                 */
-                raf.skipBytes(4);
+                return readMappedMemoWithLength(position);
 
-                if (version == Version.FOXPRO_26)
-                {
-                    memoLength = raf.readInt();
-                }
-                else
+            default:
+                assert false : "Programming error, did not handle version " + version.toString();
+        }
+
+        return ByteBuffer.allocate(0);
+    }
+
+    /*
+     * Scans the mapping for the end marker, mapping a window twice as large from the start of the
+     * memo if the marker is not found in the current one.
+     */
+    private ByteBuffer readMappedTerminatedMemo(final long position)
+                                         throws IOException, CorruptedTableException
+    {
+        long minLength = blockLength;
+        int scanned = 0;
+
+        while (true)
+        {
+            final ByteBuffer buffer = map(position, minLength);
+            final int start = buffer.position();
+
+            for (int i = start + scanned; i < buffer.limit(); ++i)
+            {
+                if (buffer.get(i) == MARKER_MEMO_END)
                 {
-                    memoLength = Util.changeEndianness(raf.readInt()) - version.getMemoDataOffset();
+                    buffer.limit(i);
+
+                    return buffer.slice();
                 }
+            }
 
-                for (int i = 0; i < memoLength; i++)
-                {
-                    c = raf.read();
+            scanned = buffer.limit() - start;
 
-                    if (c == -1)
-                    {
-                        throw new CorruptedTableException("Corrupted memo file, EOF exception");
-                    }
+            if (position + scanned >= fileLength)
+            {
+                throw new CorruptedTableException("Corrupted memo file, EOF exception");
+            }
 
-                    bos.write(c);
-                }
+            minLength = 2L * scanned;
+        }
+    }
 
-                break;
+    private ByteBuffer readMappedMemoWithLength(final long position)
+                                         throws IOException, CorruptedTableException
+    {
+        ByteBuffer buffer = map(position, 8);
 
-            default:
-                assert false : "Programming error, did not handle version " + version.toString();
+        if (buffer.remaining() < 8)
+        {
+            throw new CorruptedTableException("Corrupted memo file, EOF exception");
+        }
+
+        /*
+         * See readMemoWithLength for the layout of the 8 byte header.
+         */
+        final int memoLength;
+
+        if (version == Version.FOXPRO_26)
+        {
+            memoLength = buffer.order(ByteOrder.BIG_ENDIAN).getInt(buffer.position() + 4);
+        }
+        else
+        {
+            memoLength =
+                buffer.order(ByteOrder.LITTLE_ENDIAN).getInt(buffer.position() + 4) - version.getMemoDataOffset();
+        }
+
+        if (memoLength < 0 || memoLength > fileLength - position - 8)
+        {
+            throw new CorruptedTableException("Corrupted memo file, EOF exception");
+        }
+
+        buffer = map(position, 8L + memoLength);
+        buffer.position(buffer.position() + 8);
+        buffer.limit(buffer.position() + memoLength);
+
+        return buffer.slice();
+    }
+
+    /*
+     * Returns a view of the mapping positioned at the specified position in the file, with at
+     * least minLength bytes remaining, or all bytes up to the end of the file if there are fewer.
+     * The current window is reused if it holds them; otherwise a window is mapped that starts at
+     * the position.
+     */
+    private ByteBuffer map(final long position, final long minLength)
+                    throws IOException, CorruptedTableException
+    {
+        final long length = Math.min(minLength, fileLength - position);
+
+        if (window == null || position < windowStart || position + length > windowStart + window.capacity())
+        {
+            final long size = Math.min(Math.max(mapWindowSize, length), fileLength - position);
+
+            if (size > Integer.MAX_VALUE)
+            {
+                throw new CorruptedTableException("Corrupted memo file, memo too large to map");
+            }
+
+            window = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, position, size);
+            windowStart = position;
         }
 
-        return bos.toByteArray();
+        final ByteBuffer buffer = window.duplicate();
+        buffer.position((int) (position - windowStart));
+
+        return buffer;
+    }
+
+    private void readFully(final byte[] bytes)
+                    throws IOException, CorruptedTableException
+    {
+        try
+        {
+            raf.readFully(bytes);
+        }
+        catch (final EOFException e)
+        {
+            throw new CorruptedTableException("Corrupted memo file, EOF exception");
+        }
+    }
+
+    private byte[] getReadBuffer()
+    {
+        if (readBuffer == null)
+        {
+            readBuffer = new byte[Math.max(LENGTH_READ_CHUNK / blockLength, 1) * blockLength];
+        }
+
+        return readBuffer;
     }
 
     /**
      * Writes a string of characters to memo file.
      */
-    int writeMemo(final byte[] memoBytes)
+    long writeMemo(final byte[] memoBytes)
            throws IOException
     {
         final int nrBytesToWrite =
@@ -229,45 +604,53 @@ class Memo
             --nrBlocksToWrite;
         }
 
-        final int blockIndex = nextAvailableBlock;
+        final long blockIndex = nextAvailableBlock;
 
         /*
-         * Write the string and end of file markers.
+         * The blocks written to are new, so only a memo cached from an earlier version of the file
+         * can start there.
          */
-        raf.seek(blockIndex * blockLength);
+        if (cache != null)
+        {
+            cache.invalidate(cacheKey, blockIndex, nrBlocksToWrite);
+        }
+
+        /*
+         * Assemble the header, the string, the end of file markers and the zero padding of the last
+         * block, so that the memo is written with a single write.
+         */
+        final ByteBuffer blocks = ByteBuffer.allocate(nrBlocksToWrite * blockLength);
 
         if (version == Version.DBASE_4 || version == Version.DBASE_5)
         {
-            raf.writeInt(0xffff0800);
-            raf.writeInt(Util.changeEndianness(memoBytes.length + version.getMemoDataOffset()));
+            blocks.putInt(0xffff0800);
+            blocks.putInt(Util.changeEndianness(memoBytes.length + version.getMemoDataOffset()));
         }
         else if (version == Version.FOXPRO_26)
         {
-            raf.writeInt(1);
-            raf.writeInt(memoBytes.length);
+            blocks.putInt(1);
+            blocks.putInt(memoBytes.length);
         }
 
-        raf.write(memoBytes); // Note: cuts off higher bytes, so assumes ASCII string
+        blocks.put(memoBytes); // Note: cuts off higher bytes, so assumes ASCII string
 
         if (version.getMemoFieldEndMarkerLength() != 0)
         {
             if (version.getMemoFieldEndMarkerLength() == 1)
             {
-                raf.writeByte(version.getMemoFieldEndMarker());
+                blocks.put((byte) version.getMemoFieldEndMarker());
             }
             else
             {
-                raf.writeShort(version.getMemoFieldEndMarker());
+                blocks.putShort((short) version.getMemoFieldEndMarker());
             }
         }
 
-        /*
-         * Pad the last block with zeros.
-         */
-        for (int i = 0; i < nrSpacesToPadLastBlock; ++i)
-        {
-            raf.writeByte(0x00);
-        }
+        raf.seek(blockIndex * blockLength);
+        raf.write(blocks.array());
+
+        fileLength = Math.max(fileLength,
+                              raf.getFilePointer());
 
         /*
          * Update next available block to write.
@@ -277,11 +660,11 @@ class Memo
 
         if (version == Version.FOXPRO_26)
         {
-            raf.writeInt(nextAvailableBlock);
+            raf.writeInt((int) nextAvailableBlock);
         }
         else
         {
-            raf.writeInt(Util.changeEndianness(nextAvailableBlock));
+            raf.writeInt(Util.changeEndianness((int) nextAvailableBlock));
         }
 
         return blockIndex;
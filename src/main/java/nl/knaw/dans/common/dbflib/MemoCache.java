@@ -0,0 +1,241 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of memo field contents, so that memos that are read again and again do not have to be
+ * read from the memo file each time. Memos are cached by memo file and block index, up to a
+ * maximum total number of bytes; when the cache is full the least recently used memos are
+ * evicted. Writing a memo invalidates the cached memo at the blocks it is written to, and opening
+ * a memo file invalidates all cached memos of that file.
+ * <p>
+ * A cache is used by a table if it is specified in the {@link OpenOptions} with which the table is
+ * opened. One cache can be shared by several tables, for instance by all tables of a
+ * {@link Database}:
+ *
+ * <pre>
+ * final MemoCache cache = new MemoCache(32 * 1024 * 1024);
+ * table.open(&quot;r&quot;, IfNonExistent.ERROR, OpenOptions.defaults().setMemoCache(cache));
+ * </pre>
+ *
+ * A <code>MemoCache</code> is thread-safe. Changes made to a memo file by other processes, or by
+ * tables that do not use the same cache, are not noticed while the table is open.
+ *
+ * @see OpenOptions#setMemoCache(MemoCache)
+ * @see Database#setMemoCache(MemoCache)
+ */
+public class MemoCache
+{
+    private final long maxBytes;
+    private final LinkedHashMap<Key, byte[]> memos = new LinkedHashMap<Key, byte[]>(16, 0.75f, true);
+    private final Map<File, Long> generations = new HashMap<File, Long>();
+    private long size = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    /**
+     * Creates a new, empty cache.
+     *
+     * @param maxBytes the maximum total length in bytes of the cached memos
+     * @throws IllegalArgumentException if <code>maxBytes</code> is not positive
+     */
+    public MemoCache(final long maxBytes)
+    {
+        if (maxBytes <= 0)
+        {
+            throw new IllegalArgumentException("Maximum cache size must be positive");
+        }
+
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the maximum total length in bytes of the cached memos.
+     *
+     * @return the maximum size of the cache
+     */
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    /**
+     * Returns the total length in bytes of the memos currently cached. This includes memos of
+     * files that were reopened, which can no longer be found but have not been evicted yet.
+     *
+     * @return the size of the cache
+     */
+    public synchronized long getSize()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the number of memo reads that were served from the cache.
+     *
+     * @return the number of hits
+     */
+    public synchronized long getHitCount()
+    {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of memo reads that had to read the memo file.
+     *
+     * @return the number of misses
+     */
+    public synchronized long getMissCount()
+    {
+        return missCount;
+    }
+
+    /**
+     * Removes all memos from the cache. The hit and miss counts are not reset.
+     */
+    public synchronized void clear()
+    {
+        memos.clear();
+        size = 0;
+    }
+
+    /*
+     * The memo file passed to the following methods must be absolute, so that a memo file opened
+     * through different paths has one set of cached memos.
+     */
+
+    /**
+     * Returns a copy of the cached memo, or <code>null</code> if it is not cached. A copy is
+     * returned so that callers cannot change the cached memo.
+     */
+    synchronized byte[] get(final File memoFile, final long blockIndex)
+    {
+        final byte[] memo = memos.get(new Key(memoFile, getGeneration(memoFile), blockIndex));
+
+        if (memo == null)
+        {
+            ++missCount;
+
+            return null;
+        }
+
+        ++hitCount;
+
+        return Arrays.copyOf(memo, memo.length);
+    }
+
+    /**
+     * Caches a copy of the memo and evicts the least recently used memos until the cache is no
+     * larger than its maximum size. Memos larger than the whole cache are not cached.
+     */
+    synchronized void put(final File memoFile, final long blockIndex, final byte[] memo)
+    {
+        if (memo.length > maxBytes)
+        {
+            return;
+        }
+
+        final byte[] previous = memos.put(new Key(memoFile, getGeneration(memoFile), blockIndex),
+                                          Arrays.copyOf(memo, memo.length));
+        size += memo.length - (previous == null ? 0 : previous.length);
+
+        final Iterator<byte[]> iterator = memos.values().iterator();
+
+        while (size > maxBytes)
+        {
+            size -= iterator.next().length;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Invalidates all cached memos of the memo file. Rather than looking for them, which takes
+     * time in proportion to the size of the whole cache, the generation of the memo file is
+     * increased, so that they are no longer found. They are evicted in due course.
+     */
+    synchronized void invalidate(final File memoFile)
+    {
+        generations.put(memoFile,
+                        getGeneration(memoFile) + 1);
+    }
+
+    /**
+     * Removes the cached memos that start at one of <code>nBlocks</code> blocks from
+     * <code>blockIndex</code> on, because these blocks are overwritten.
+     */
+    synchronized void invalidate(final File memoFile, final long blockIndex, final int nBlocks)
+    {
+        final long generation = getGeneration(memoFile);
+
+        for (long i = blockIndex; i < blockIndex + nBlocks; ++i)
+        {
+            final byte[] memo = memos.remove(new Key(memoFile, generation, i));
+
+            if (memo != null)
+            {
+                size -= memo.length;
+            }
+        }
+    }
+
+    private long getGeneration(final File memoFile)
+    {
+        final Long generation = generations.get(memoFile);
+
+        return generation == null ? 0 : generation;
+    }
+
+    private static final class Key
+    {
+        private final File memoFile;
+        private final long generation;
+        private final long blockIndex;
+
+        Key(final File memoFile, final long generation, final long blockIndex)
+        {
+            this.memoFile = memoFile;
+            this.generation = generation;
+            this.blockIndex = blockIndex;
+        }
+
+        @Override
+        public boolean equals(final Object object)
+        {
+            if (! (object instanceof Key))
+            {
+                return false;
+            }
+
+            final Key other = (Key) object;
+
+            return blockIndex == other.blockIndex && generation == other.generation
+                   && memoFile.equals(other.memoFile);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return (31 * ((31 * memoFile.hashCode()) + (int) generation)) + (int) (blockIndex ^ (blockIndex >>> 32));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Points to the contents of a memo field that have not been read yet. The contents are read from
+ * the memo file of the table on the first call to {@link #getBytes()} and kept after that.
+ * {@link #getBuffer()} gives access to the contents without keeping them. A pointer that was not
+ * read yet becomes invalid when the memo file is packed with {@link Table#packMemo()}, as the
+ * block it points to then holds another memo.
+ */
+final class MemoPointer
+{
+    private final Table table;
+    private final long blockIndex;
+    private final int memoGeneration;
+    private byte[] bytes = null;
+
+    MemoPointer(final Table table, final long blockIndex)
+    {
+        this.table = table;
+        this.blockIndex = blockIndex;
+        memoGeneration = table.getMemoGeneration();
+    }
+
+    /**
+     * Returns the contents of the memo field, reading them if that has not been done yet.
+     *
+     * @throws IllegalStateException if the contents must be read, but the table is closed or the
+     *             memo file was packed since the pointer was read
+     * @throws RuntimeException if the memo file could not be read
+     */
+    byte[] getBytes()
+    {
+        if (bytes == null)
+        {
+            checkMemoGeneration();
+
+            try
+            {
+                bytes = table.readMemo(blockIndex);
+            }
+            catch (final IOException ioException)
+            {
+                throw new RuntimeException(ioException.getMessage(), ioException);
+            }
+            catch (final CorruptedTableException corruptedTableException)
+            {
+                throw new RuntimeException(corruptedTableException.getMessage(), corruptedTableException);
+            }
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Returns the contents of the memo field as a read-only buffer. Unless they were already read,
+     * the contents are not kept, and if the memo file is memory mapped they are not copied either.
+     *
+     * @throws IllegalStateException if the contents must be read, but the table is closed or the
+     *             memo file was packed since the pointer was read
+     * @throws RuntimeException if the memo file could not be read
+     */
+    ByteBuffer getBuffer()
+    {
+        if (bytes != null)
+        {
+            return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+        }
+
+        checkMemoGeneration();
+
+        try
+        {
+            return table.readMemoBuffer(blockIndex);
+        }
+        catch (final IOException ioException)
+        {
+            throw new RuntimeException(ioException.getMessage(), ioException);
+        }
+        catch (final CorruptedTableException corruptedTableException)
+        {
+            throw new RuntimeException(corruptedTableException.getMessage(), corruptedTableException);
+        }
+    }
+
+    private void checkMemoGeneration()
+    {
+        if (table.getMemoGeneration() != memoGeneration)
+        {
+            throw new IllegalStateException("The memo file was packed after this record was read");
+        }
+    }
+}
@@ -0,0 +1,484 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Arrays;
+
+/**
+ * Parses the space padded ASCII numbers stored in NUMBER and FLOAT fields directly from the raw
+ * bytes, and formats them directly into them, without creating intermediate <code>String</code>
+ * objects.
+ */
+final class NumberCodec
+{
+    /*
+     * Powers of ten that are exactly representable as a double.
+     */
+    private static final double[] POWERS_OF_TEN =
+        {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18,
+            1e19, 1e20, 1e21, 1e22
+        };
+
+    /*
+     * A mantissa of at most this many digits is exactly representable as a double.
+     */
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    private NumberCodec()
+    {
+        /*
+         * Disallow instantiation.
+         */
+    }
+
+    /**
+     * Returns whether the number is empty, i.e. consists only of spaces (or null characters), with
+     * possibly a lone decimal point.
+     */
+    static boolean isBlank(final byte[] bytes, final int offset, final int length)
+    {
+        final int start = skipLeading(bytes, offset, offset + length);
+        final int end = skipTrailing(bytes, start, offset + length);
+
+        return start == end || (end - start == 1 && bytes[start] == '.');
+    }
+
+    /**
+     * Parses the integral part of the number. Digits after the decimal point are ignored, i.e. the
+     * value is truncated towards zero.
+     *
+     * @throws NumberFormatException if the bytes do not contain a number or if the number does not
+     *             fit in a <code>long</code>
+     */
+    static long parseLong(final byte[] bytes, final int offset, final int length)
+    {
+        int i = skipLeading(bytes, offset, offset + length);
+        final int end = skipTrailing(bytes, i, offset + length);
+        boolean negative = false;
+
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+'))
+        {
+            negative = bytes[i] == '-';
+            ++i;
+        }
+
+        final int firstDigit = i;
+        long value = 0;
+
+        /*
+         * Accumulate negatively, so that Long.MIN_VALUE can be parsed.
+         */
+        for (; i < end && bytes[i] != '.'; ++i)
+        {
+            final int digit = bytes[i] - '0';
+
+            if (digit < 0 || digit > 9)
+            {
+                throw numberFormatException(bytes, offset, length);
+            }
+
+            if (value < (Long.MIN_VALUE + digit) / 10)
+            {
+                throw numberFormatException(bytes, offset, length);
+            }
+
+            value = value * 10 - digit;
+        }
+
+        boolean hasDigits = i > firstDigit;
+
+        if (i < end)
+        {
+            for (++i; i < end; ++i)
+            {
+                if (bytes[i] < '0' || bytes[i] > '9')
+                {
+                    throw numberFormatException(bytes, offset, length);
+                }
+
+                hasDigits = true;
+            }
+        }
+
+        if (! hasDigits || (! negative && value == Long.MIN_VALUE))
+        {
+            throw numberFormatException(bytes, offset, length);
+        }
+
+        return negative ? value : -value;
+    }
+
+    /**
+     * Parses the number as a <code>double</code>. The result is the same as that of
+     * <code>Double.parseDouble</code> on the trimmed string.
+     *
+     * @throws NumberFormatException if the bytes do not contain a number
+     */
+    static double parseDouble(final byte[] bytes, final int offset, final int length)
+    {
+        int i = skipLeading(bytes, offset, offset + length);
+        final int end = skipTrailing(bytes, i, offset + length);
+        boolean negative = false;
+
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+'))
+        {
+            negative = bytes[i] == '-';
+            ++i;
+        }
+
+        long mantissa = 0;
+        int significantDigits = 0;
+        int digits = 0;
+        int scale = -1;
+
+        for (; i < end; ++i)
+        {
+            final byte b = bytes[i];
+
+            if (b == '.' && scale == -1)
+            {
+                scale = 0;
+
+                continue;
+            }
+
+            if (b < '0' || b > '9')
+            {
+                return parseDoubleSlow(bytes, offset, length);
+            }
+
+            ++digits;
+
+            if (scale != -1)
+            {
+                ++scale;
+            }
+
+            if (mantissa != 0 || b != '0')
+            {
+                if (++significantDigits > MAX_EXACT_DIGITS)
+                {
+                    return parseDoubleSlow(bytes, offset, length);
+                }
+
+                mantissa = mantissa * 10 + (b - '0');
+            }
+        }
+
+        if (digits == 0)
+        {
+            throw numberFormatException(bytes, offset, length);
+        }
+
+        if (scale >= POWERS_OF_TEN.length)
+        {
+            return parseDoubleSlow(bytes, offset, length);
+        }
+
+        /*
+         * Both the mantissa and the power of ten are exact, so the single division is correctly
+         * rounded, just like Double.parseDouble.
+         */
+        final double value = scale > 0 ? mantissa / POWERS_OF_TEN[scale] : mantissa;
+
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses the number as a decimal with <code>scale</code> digits after the decimal point and
+     * returns its unscaled value, i.e. the number multiplied by ten to the power of
+     * <code>scale</code>. The result is the same as that of
+     * <code>new BigDecimal(s).setScale(scale, RoundingMode.UNNECESSARY).unscaledValue().longValueExact()</code>
+     * on the trimmed string <code>s</code>.
+     *
+     * @throws NumberFormatException if the bytes do not contain a number
+     * @throws ArithmeticException if the number has more digits after the decimal point than
+     *             <code>scale</code> (other than trailing zeros), or if the result does not fit in a
+     *             <code>long</code>
+     */
+    static long parseScaled(final byte[] bytes, final int offset, final int length, final int scale)
+    {
+        int i = skipLeading(bytes, offset, offset + length);
+        final int end = skipTrailing(bytes, i, offset + length);
+        boolean negative = false;
+
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+'))
+        {
+            negative = bytes[i] == '-';
+            ++i;
+        }
+
+        long value = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+
+        /*
+         * Accumulate negatively, so that Long.MIN_VALUE can be represented.
+         */
+        for (; i < end; ++i)
+        {
+            final byte b = bytes[i];
+
+            if (b == '.' && fractionDigits == -1)
+            {
+                fractionDigits = 0;
+
+                continue;
+            }
+
+            if (b < '0' || b > '9')
+            {
+                return parseScaledSlow(bytes, offset, length, scale);
+            }
+
+            ++digits;
+
+            if (fractionDigits != -1 && ++fractionDigits > scale)
+            {
+                if (b != '0')
+                {
+                    throw new ArithmeticException("Rounding necessary to scale " + scale + ": '"
+                                                  + new String(bytes, offset, length).trim() + "'");
+                }
+
+                continue;
+            }
+
+            value = multiplyAddExact(value, b - '0');
+        }
+
+        if (digits == 0)
+        {
+            throw numberFormatException(bytes, offset, length);
+        }
+
+        for (int n = Math.max(fractionDigits, 0); n < scale; ++n)
+        {
+            value = multiplyAddExact(value, 0);
+        }
+
+        if (! negative)
+        {
+            if (value == Long.MIN_VALUE)
+            {
+                throw new ArithmeticException("Overflow");
+            }
+
+            return -value;
+        }
+
+        return value;
+    }
+
+    /*
+     * Returns value * 10 - digit, where value is not positive.
+     */
+    private static long multiplyAddExact(final long value, final int digit)
+    {
+        if (value < (Long.MIN_VALUE + digit) / 10)
+        {
+            throw new ArithmeticException("Overflow");
+        }
+
+        return value * 10 - digit;
+    }
+
+    private static long parseScaledSlow(final byte[] bytes, final int offset, final int length, final int scale)
+    {
+        return new BigDecimal(new String(bytes, offset, length).trim()).setScale(scale, RoundingMode.UNNECESSARY)
+                                                                       .unscaledValue().longValueExact();
+    }
+
+    private static double parseDoubleSlow(final byte[] bytes, final int offset, final int length)
+    {
+        return Double.parseDouble(new String(bytes, offset, length).trim());
+    }
+
+    static int skipLeading(final byte[] bytes, final int start, final int end)
+    {
+        int i = start;
+
+        while (i < end && (bytes[i] & 0xff) <= ' ')
+        {
+            ++i;
+        }
+
+        return i;
+    }
+
+    static int skipTrailing(final byte[] bytes, final int start, final int end)
+    {
+        int i = end;
+
+        while (i > start && (bytes[i - 1] & 0xff) <= ' ')
+        {
+            --i;
+        }
+
+        return i;
+    }
+
+    /**
+     * Formats <code>value</code> right-aligned in <code>width</code> bytes, padded on the left with
+     * <code>pad</code>, which must be a space or a zero. The result is the same as that of
+     * <code>String.format("%" + width + "d", value)</code> or
+     * <code>String.format("%0" + width + "d", value)</code> respectively.
+     *
+     * @return <code>false</code> if the number does not fit in <code>width</code> bytes, in which
+     *         case nothing is written
+     */
+    static boolean formatLong(final long value, final int width, final byte pad, final byte[] bytes,
+                              final int offset)
+    {
+        return format(value < 0 ? value : -value, value < 0, 0, width, pad, bytes, offset);
+    }
+
+    /**
+     * Formats <code>value</code> with <code>scale</code> digits after the decimal point,
+     * right-aligned in <code>width</code> bytes and padded on the left with spaces. The result is
+     * the same as that of <code>String.format(Locale.US, "%" + width + "." + scale + "f", value)</code>.
+     * Values that <code>String.format</code> would round differently than the nearest
+     * <code>long</code> arithmetic, i.e. values (almost) exactly halfway between two results, are
+     * not formatted.
+     *
+     * @return <code>false</code> if the number was not formatted, in which case nothing is written
+     */
+    static boolean formatDouble(final double value, final int scale, final int width, final byte[] bytes,
+                                final int offset)
+    {
+        if (Double.isNaN(value) || Double.isInfinite(value) || scale >= POWERS_OF_TEN.length)
+        {
+            return false;
+        }
+
+        final double scaled = Math.abs(value) * POWERS_OF_TEN[scale];
+
+        if (scaled >= 1e15)
+        {
+            return false;
+        }
+
+        /*
+         * String.format rounds the shortest decimal representation of the value half up, which
+         * differs from the value itself by less than an ulp. The multiplication is off by half an
+         * ulp at most, so only values this close to a tie may be rounded differently.
+         */
+        final double floor = Math.floor(scaled);
+        final double fraction = scaled - floor;
+
+        if (Math.abs(fraction - 0.5) <= 4 * Math.ulp(scaled))
+        {
+            return false;
+        }
+
+        final long unscaled = (long) floor + (fraction > 0.5 ? 1 : 0);
+
+        return format(-unscaled, Double.compare(value, 0.0) < 0, scale, width, (byte) ' ', bytes, offset);
+    }
+
+    /**
+     * Formats <code>value</code> with <code>scale</code> digits after the decimal point,
+     * right-aligned in <code>width</code> bytes and padded on the left with spaces. The result is
+     * the same as that of <code>String.format(Locale.US, "%" + width + "." + scale + "f", value)</code>.
+     *
+     * @return <code>false</code> if the number was not formatted, in which case nothing is written
+     */
+    static boolean formatBigDecimal(final BigDecimal value, final int scale, final int width, final byte[] bytes,
+                                    final int offset)
+    {
+        if (value.scale() < 0)
+        {
+            return false;
+        }
+
+        final BigInteger unscaled = value.abs().setScale(scale, RoundingMode.HALF_UP).unscaledValue();
+
+        if (unscaled.bitLength() >= Long.SIZE - 1)
+        {
+            return false;
+        }
+
+        return format(-unscaled.longValue(), value.signum() < 0, scale, width, (byte) ' ', bytes, offset);
+    }
+
+    /*
+     * Writes the digits of the magnitude, which is not positive so that Long.MIN_VALUE can be
+     * formatted, from right to left.
+     */
+    private static boolean format(final long magnitude, final boolean negative, final int scale, final int width,
+                                  final byte pad, final byte[] bytes, final int offset)
+    {
+        int nDigits = 1;
+
+        for (long rest = magnitude / 10; rest != 0; rest /= 10)
+        {
+            ++nDigits;
+        }
+
+        nDigits = Math.max(nDigits, scale + 1);
+
+        final int length = nDigits + (scale > 0 ? 1 : 0) + (negative ? 1 : 0);
+
+        if (length > width)
+        {
+            return false;
+        }
+
+        long rest = magnitude;
+        int i = offset + width;
+
+        for (int n = 0; n < nDigits; ++n)
+        {
+            if (n == scale && scale > 0)
+            {
+                bytes[--i] = '.';
+            }
+
+            bytes[--i] = (byte) ('0' - (rest % 10));
+            rest /= 10;
+        }
+
+        if (pad == '0')
+        {
+            Arrays.fill(bytes, offset, i, (byte) '0');
+
+            if (negative)
+            {
+                bytes[offset] = '-';
+            }
+        }
+        else
+        {
+            if (negative)
+            {
+                bytes[--i] = '-';
+            }
+
+            Arrays.fill(bytes, offset, i, pad);
+        }
+
+        return true;
+    }
+
+    private static NumberFormatException numberFormatException(final byte[] bytes, final int offset, final int length)
+    {
+        return new NumberFormatException("Not a valid number: '" + new String(bytes, offset, length).trim() + "'");
+    }
+}
@@ -19,6 +19,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.math.RoundingMode;
 import java.util.Locale;
 
 /**
@@ -44,6 +45,16 @@ public class NumberValue
      */
     private static final int MAX_LENGTH_LONG = Long.valueOf(Long.MAX_VALUE).toString().length();
 
+    /*
+     * Fractional values shorter than this are represented by a Double, see doGetTypedValue.
+     */
+    private static final int MAX_LENGTH_DOUBLE = 14;
+    private static final int CONVERSION_NONE = 0;
+    private static final int CONVERSION_INTEGRAL = 1;
+    private static final int CONVERSION_FRACTIONAL = 2;
+    private static final int CONVERSION_TYPED = 3;
+    private static final Integer ZERO = 0;
+
     /**
      * Creates a new NumberValue object.
      *
@@ -91,7 +102,7 @@ public class NumberValue
          * Not sure yet what number of digits is safe to parse a value into a double. 14 seems to be
          * reasonably safe, but this needs to be proved.aField
          */
-        if (stringValue.length() < 14)
+        if (stringValue.length() < MAX_LENGTH_DOUBLE)
         {
             return Double.parseDouble(stringValue);
         }
@@ -102,10 +113,172 @@ public class NumberValue
         return new BigDecimal(stringValue);
     }
 
+    /*
+     * The primitive accessors below parse the raw value directly into a primitive, without creating
+     * the typed value. They choose the same conversion as doGetTypedValue, so that they return
+     * exactly what the corresponding method of the typed value would return. Values that would
+     * become a BigInteger or BigDecimal fall back to the typed value. Empty values are returned as
+     * zero.
+     */
+
+    @Override
+    boolean isNull()
+    {
+        final byte[] raw = getOriginalRaw();
+
+        if (raw == null)
+        {
+            return typed == null;
+        }
+
+        return NumberCodec.isBlank(raw, 0, raw.length);
+    }
+
+    int intValue()
+    {
+        final byte[] raw = getOriginalRaw();
+
+        switch (getConversion(raw))
+        {
+            case CONVERSION_NONE:
+                return 0;
+
+            case CONVERSION_INTEGRAL:
+                return (int) NumberCodec.parseLong(raw, 0, raw.length);
+
+            case CONVERSION_FRACTIONAL:
+                return (int) NumberCodec.parseDouble(raw, 0, raw.length);
+
+            default:
+                return getNumber().intValue();
+        }
+    }
+
+    long longValue()
+    {
+        final byte[] raw = getOriginalRaw();
+
+        switch (getConversion(raw))
+        {
+            case CONVERSION_NONE:
+                return 0L;
+
+            case CONVERSION_INTEGRAL:
+                return NumberCodec.parseLong(raw, 0, raw.length);
+
+            case CONVERSION_FRACTIONAL:
+                return (long) NumberCodec.parseDouble(raw, 0, raw.length);
+
+            default:
+                return getNumber().longValue();
+        }
+    }
+
+    double doubleValue()
+    {
+        final byte[] raw = getOriginalRaw();
+
+        switch (getConversion(raw))
+        {
+            case CONVERSION_NONE:
+                return 0.0;
+
+            case CONVERSION_INTEGRAL:
+                return NumberCodec.parseLong(raw, 0, raw.length);
+
+            case CONVERSION_FRACTIONAL:
+                return NumberCodec.parseDouble(raw, 0, raw.length);
+
+            default:
+                return getNumber().doubleValue();
+        }
+    }
+
+    /*
+     * Returns the value multiplied by 10^scale as a long. Parsing the raw value is exact, so
+     * unlike the other accessors this does not go through a double for fractional values.
+     */
+    long scaledValue(final int scale)
+    {
+        final byte[] raw = getOriginalRaw();
+
+        switch (getConversion(raw))
+        {
+            case CONVERSION_NONE:
+                return 0L;
+
+            case CONVERSION_INTEGRAL:
+            case CONVERSION_FRACTIONAL:
+                return NumberCodec.parseScaled(raw, 0, raw.length, scale);
+
+            default:
+
+                final Number number = getNumber();
+
+                if (number == null)
+                {
+                    return 0L;
+                }
+
+                final BigDecimal decimal =
+                    number instanceof BigDecimal ? (BigDecimal) number : new BigDecimal(number.toString());
+
+                return decimal.setScale(scale, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+        }
+    }
+
+    private Number getNumber()
+    {
+        final Number number = (Number) getTypedValue();
+
+        return number == null ? ZERO : number;
+    }
+
+    /*
+     * Mirrors the choices made by doGetTypedValue.
+     */
+    private static int getConversion(final byte[] raw)
+    {
+        if (raw == null)
+        {
+            return CONVERSION_TYPED;
+        }
+
+        final int start = NumberCodec.skipLeading(raw, 0, raw.length);
+        final int end = NumberCodec.skipTrailing(raw, start, raw.length);
+        final int length = end - start;
+
+        if (length == 0 || (length == 1 && raw[start] == '.'))
+        {
+            return CONVERSION_NONE;
+        }
+
+        for (int i = start; i < end; ++i)
+        {
+            if (raw[i] == '.')
+            {
+                return length < MAX_LENGTH_DOUBLE ? CONVERSION_FRACTIONAL : CONVERSION_TYPED;
+            }
+        }
+
+        return length < MAX_LENGTH_LONG ? CONVERSION_INTEGRAL : CONVERSION_TYPED;
+    }
+
     @Override
     protected byte[] doGetRawValue(final Field field)
     {
         final Number number = (Number) typed;
+
+        if (field.getType() == Type.NUMBER || field.getType() == Type.FLOAT)
+        {
+            final byte[] bytes = new byte[field.getLength()];
+
+            if (formatNumber(number, field, bytes, 0))
+            {
+                return bytes;
+            }
+        }
+
         final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
 
         try
@@ -155,6 +328,55 @@ public class NumberValue
                || number instanceof BigInteger;
     }
 
+    @Override
+    void doEncode(final Field field, final byte[] bytes, final int offset)
+           throws ValueTooLargeException
+    {
+        if ((field.getType() == Type.NUMBER || field.getType() == Type.FLOAT)
+                && formatNumber((Number) typed, field, bytes, offset))
+        {
+            return;
+        }
+
+        super.doEncode(field, bytes, offset);
+    }
+
+    /*
+     * Formats the number right-aligned in the field without going through String.format. The
+     * conversions and the result are the same as those of formatNumber(Number, Field). Returns
+     * false for the few numbers that are not formatted, leaving them to String.format.
+     */
+    private static boolean formatNumber(final Number number, final Field field, final byte[] bytes, final int offset)
+    {
+        final int width = field.getLength();
+        final int scale = field.getDecimalCount();
+
+        if (scale == 0)
+        {
+            if (number instanceof BigInteger)
+            {
+                return ((BigInteger) number).bitLength() < Long.SIZE
+                       && NumberCodec.formatLong(number.longValue(), width, (byte) ' ', bytes, offset);
+            }
+
+            final long value = isIntegralNumber(number) ? number.longValue() : Math.round(number.doubleValue());
+
+            return NumberCodec.formatLong(value, width, (byte) ' ', bytes, offset);
+        }
+
+        if (number instanceof BigDecimal)
+        {
+            return NumberCodec.formatBigDecimal((BigDecimal) number, scale, width, bytes, offset);
+        }
+
+        if (number instanceof BigInteger)
+        {
+            return NumberCodec.formatBigDecimal(new BigDecimal((BigInteger) number), scale, width, bytes, offset);
+        }
+
+        return NumberCodec.formatDouble(number.doubleValue(), scale, width, bytes, offset);
+    }
+
     private static String formatNumber(final Number number, final Field field)
     {
         final String formatString =
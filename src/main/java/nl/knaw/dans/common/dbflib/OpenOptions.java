@@ -0,0 +1,269 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+
+/**
+ * Specifies how a {@link Table} accesses its files once opened. The defaults give the same
+ * behavior as {@link Table#open()}. The setters return the <code>OpenOptions</code> object itself,
+ * so that calls can be chained:
+ *
+ * <pre>
+ * table.open(&quot;r&quot;, IfNonExistent.ERROR, OpenOptions.mmap().setMapWindowSize(16 * 1024 * 1024));
+ * </pre>
+ *
+ * Changing the options of a table that is already open has no effect until it is reopened.
+ */
+public class OpenOptions
+{
+    static final int DEFAULT_MAP_WINDOW_SIZE = 64 * 1024 * 1024;
+    private boolean memoryMapped = false;
+    private int mapWindowSize = DEFAULT_MAP_WINDOW_SIZE;
+    private boolean lazyMemo = false;
+    private int readAheadSize = Table.DEFAULT_BUFFER_SIZE;
+    private MemoCache memoCache = null;
+    private DurabilityPolicy durabilityPolicy = null;
+    private boolean reuseDeletedRecords = false;
+
+    /**
+     * Returns options with all settings at their defaults.
+     *
+     * @return a new <code>OpenOptions</code> object
+     */
+    public static OpenOptions defaults()
+    {
+        return new OpenOptions();
+    }
+
+    /**
+     * Returns options that make the table read its records from a memory mapped view of the
+     * <code>.DBF</code> file, and its memos from a memory mapped view of the memo file.
+     *
+     * @return a new <code>OpenOptions</code> object
+     * @see #setMemoryMapped(boolean)
+     */
+    public static OpenOptions mmap()
+    {
+        return new OpenOptions().setMemoryMapped(true);
+    }
+
+    /**
+     * Specifies whether records are read from a memory mapped view of the <code>.DBF</code> file,
+     * rather than with a seek and a read system call for each block of records. This makes scanning
+     * large tables considerably faster. Writing to a table opened in this mode is still possible,
+     * but it makes the table remap the file on the next read. The memo file is memory mapped as
+     * well, so that memo fields are read without system calls and, when they are converted to
+     * strings, without first copying them to the heap.
+     *
+     * @param memoryMapped whether to memory map the table file
+     * @return this object
+     */
+    public OpenOptions setMemoryMapped(final boolean memoryMapped)
+    {
+        this.memoryMapped = memoryMapped;
+
+        return this;
+    }
+
+    /**
+     * Returns whether records are read from a memory mapped view of the table file.
+     *
+     * @return <code>true</code> if the table file is memory mapped
+     */
+    public boolean isMemoryMapped()
+    {
+        return memoryMapped;
+    }
+
+    /**
+     * Sets the size in bytes of the part of the table file that is mapped into memory at the same
+     * time. The window is rounded down to a whole number of records, but always holds at least
+     * one. The memo file is mapped in windows of the same size, which are enlarged as needed to
+     * hold a whole memo. The default is 64 MB.
+     *
+     * @param mapWindowSize the size of the mapped window in bytes
+     * @return this object
+     * @throws IllegalArgumentException if <code>mapWindowSize</code> is not positive
+     */
+    public OpenOptions setMapWindowSize(final int mapWindowSize)
+    {
+        if (mapWindowSize <= 0)
+        {
+            throw new IllegalArgumentException("Map window size must be positive");
+        }
+
+        this.mapWindowSize = mapWindowSize;
+
+        return this;
+    }
+
+    /**
+     * Returns the size in bytes of the part of the table file that is mapped at the same time.
+     *
+     * @return the map window size
+     */
+    public int getMapWindowSize()
+    {
+        return mapWindowSize;
+    }
+
+    /**
+     * Specifies whether the contents of memo fields are read only when they are first asked for.
+     * A record then only holds the block pointer of each memo field, which saves reading the memo
+     * file for records of which the memo fields are never used. A pointer that lies beyond the end
+     * of the memo file is still reported when the record is read, but other memo file errors are
+     * only detected on first access, in the form of a <code>RuntimeException</code>. Lazily read
+     * memo values can only be resolved while the table is open. The default is <code>false</code>,
+     * i.e. all memo fields are read together with the record.
+     *
+     * @param lazyMemo whether to read memo fields on first access
+     * @return this object
+     */
+    public OpenOptions setLazyMemo(final boolean lazyMemo)
+    {
+        this.lazyMemo = lazyMemo;
+
+        return this;
+    }
+
+    /**
+     * Returns whether memo fields are read on first access.
+     *
+     * @return <code>true</code> if memo fields are read on first access
+     */
+    public boolean isLazyMemo()
+    {
+        return lazyMemo;
+    }
+
+    /**
+     * Sets the number of bytes that record iterators read from the table file at once. A record
+     * iterator reads this many bytes of records ahead and serves the following records from
+     * memory, so that iterating has the same throughput as reading the records in bulk with
+     * {@link Table#getRecordsAt(int, int)}. The size is rounded down to a whole number of records,
+     * but always holds at least one. The default is 1,000,000 bytes. This setting has no effect
+     * on tables that are memory mapped.
+     *
+     * @param readAheadSize the number of bytes to read ahead
+     * @return this object
+     * @throws IllegalArgumentException if <code>readAheadSize</code> is not positive
+     */
+    public OpenOptions setReadAheadSize(final int readAheadSize)
+    {
+        if (readAheadSize <= 0)
+        {
+            throw new IllegalArgumentException("Read-ahead size must be positive");
+        }
+
+        this.readAheadSize = readAheadSize;
+
+        return this;
+    }
+
+    /**
+     * Returns the number of bytes that record iterators read from the table file at once.
+     *
+     * @return the read-ahead size
+     */
+    public int getReadAheadSize()
+    {
+        return readAheadSize;
+    }
+
+    /**
+     * Sets the cache that memo fields are read through. Memos that are read again, for instance
+     * because the same records are looked up repeatedly, are then served from memory. The cache
+     * can be shared with other tables. The default is <code>null</code>, i.e. no cache, unless the
+     * table belongs to a {@link Database} that has a cache.
+     *
+     * @param memoCache the cache to use, or <code>null</code>
+     * @return this object
+     * @see Database#setMemoCache(MemoCache)
+     */
+    public OpenOptions setMemoCache(final MemoCache memoCache)
+    {
+        this.memoCache = memoCache;
+
+        return this;
+    }
+
+    /**
+     * Returns the cache that memo fields are read through.
+     *
+     * @return the memo cache, or <code>null</code>
+     */
+    public MemoCache getMemoCache()
+    {
+        return memoCache;
+    }
+
+    /**
+     * Sets the policy that determines when the table syncs its files to the storage device. The
+     * default is <code>null</code>, which means the policy of the {@link Database} the table
+     * belongs to, or else {@link DurabilityPolicy#none()}.
+     *
+     * @param durabilityPolicy the policy to use, or <code>null</code>
+     * @return this object
+     * @see Database#setDurabilityPolicy(DurabilityPolicy)
+     */
+    public OpenOptions setDurabilityPolicy(final DurabilityPolicy durabilityPolicy)
+    {
+        this.durabilityPolicy = durabilityPolicy;
+
+        return this;
+    }
+
+    /**
+     * Returns the policy that determines when the table syncs its files.
+     *
+     * @return the durability policy, or <code>null</code>
+     */
+    public DurabilityPolicy getDurabilityPolicy()
+    {
+        return durabilityPolicy;
+    }
+
+    /**
+     * Specifies whether {@link Table#addRecord(Record)} puts new records in the slots of records
+     * flagged as "deleted", instead of always adding them to the end of the table. The lowest free
+     * slot is used first, and a record is only added to the end if there are none. This keeps the
+     * size of tables in which records are deleted and added all the time stable without packing
+     * them. The free slots are found with one pass over the table on the first add. A "deleted"
+     * record is overwritten when its slot is reused, so it can no longer be read with the
+     * "include deleted" options, and its memos are no longer referenced; see
+     * {@link Table#packMemo()}. Appenders and batches always add records to the end of the table.
+     * The default is <code>false</code>.
+     *
+     * @param reuseDeletedRecords whether to reuse the slots of deleted records
+     * @return this object
+     */
+    public OpenOptions setReuseDeletedRecords(final boolean reuseDeletedRecords)
+    {
+        this.reuseDeletedRecords = reuseDeletedRecords;
+
+        return this;
+    }
+
+    /**
+     * Returns whether new records are put in the slots of deleted records.
+     *
+     * @return <code>true</code> if the slots of deleted records are reused
+     */
+    public boolean isReuseDeletedRecords()
+    {
+        return reuseDeletedRecords;
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+/**
+ * Enumerates the ways in which {@link Table#pack(PackMode)} can remove the records flagged as
+ * "deleted".
+ */
+public enum PackMode
+{
+    /**
+     * Moves the remaining records to the front of the table file, writing them one by one.
+     * Their memos are written anew at the end of the memo file. If packing is interrupted the
+     * table is left half packed.
+     */
+    IN_PLACE,
+    /**
+     * Copies the remaining records, as they are, to a new table file that then replaces the table
+     * file with an atomic rename. The table is read once and written once, sequentially and in
+     * large chunks. If packing is interrupted the table is left as it was. The memo file is not
+     * changed, as the copied records still point to the same memos; see {@link Table#packMemo()}.
+     * The directory of the table must be writable, and have room for a copy of the table.
+     */
+    NEW_FILE;
+}
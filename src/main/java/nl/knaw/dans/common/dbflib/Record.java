@@ -15,6 +15,9 @@
  */
 package nl.knaw.dans.common.dbflib;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
 import java.util.Date;
 import java.util.Map;
 
@@ -132,6 +135,35 @@ public class Record
         this.valueMap = valueMap;
     }
 
+    /**
+     * Constructor for subclasses that store their values in another way than in a map.
+     */
+    Record(final boolean deleted)
+    {
+        this(deleted, null);
+    }
+
+    /**
+     * Returns the schema of the table this record was read from. Only records read from a table
+     * have a schema; a record created with {@link #Record(Map)} does not.
+     *
+     * @return the schema, or <code>null</code>
+     */
+    public Schema getSchema()
+    {
+        return null;
+    }
+
+    Value getValue(final String fieldName)
+    {
+        return valueMap.get(fieldName);
+    }
+
+    Value getValue(final int ordinal)
+    {
+        throw new UnsupportedOperationException("Only records read from a table can be accessed by ordinal");
+    }
+
     /**
      * Returns the raw field value. The raw field value is the bytes as stored in the DBF file. If
      * the value is empty <code>null</code> or a series of ASCII spaces may be returned.
@@ -145,7 +177,7 @@ public class Record
     public byte[] getRawValue(final Field field)
                        throws DbfLibException
     {
-        final Value v = valueMap.get(field.getName());
+        final Value v = getValue(field.getName());
 
         if (v == null)
         {
@@ -155,6 +187,26 @@ public class Record
         return v.getRawValue(field);
     }
 
+    /**
+     * Writes the raw field value into <code>bytes</code> at <code>offset</code>, as
+     * {@link #getRawValue(Field)} would return it, padded with zeros to the length of the field.
+     * Returns <code>false</code> and writes nothing if the record has no value for the field.
+     */
+    boolean encodeValue(final Field field, final byte[] bytes, final int offset)
+                 throws DbfLibException
+    {
+        final Value v = getValue(field.getName());
+
+        if (v == null)
+        {
+            return false;
+        }
+
+        v.encode(field, bytes, offset);
+
+        return true;
+    }
+
     /**
      * Returns the value as a Java object. The type of Java object returned depends on the field
      * type in the xBase database. See {@link Type} for the mapping between the two.
@@ -165,7 +217,33 @@ public class Record
      */
     public Object getTypedValue(final String fieldName)
     {
-        final Value v = valueMap.get(fieldName);
+        final Value v = getValue(fieldName);
+
+        if (v == null)
+        {
+            return null;
+        }
+
+        return v.getTypedValue();
+    }
+
+    /**
+     * Returns the value of the field with the specified ordinal as a Java object. The ordinal of a
+     * field is its index in the {@link Schema} of the table the record was read from. Looking up a
+     * value by ordinal is faster than looking it up by name.
+     *
+     * @param ordinal the zero-based index of the field
+     *
+     * @return a Java object
+     *
+     * @throws UnsupportedOperationException if this record was not read from a table
+     * @throws IndexOutOfBoundsException if there is no field with that ordinal
+     *
+     * @see Schema#getOrdinal(String)
+     */
+    public Object getTypedValue(final int ordinal)
+    {
+        final Value v = getValue(ordinal);
 
         if (v == null)
         {
@@ -268,6 +346,290 @@ public class Record
         return (Date) getTypedValue(fieldName);
     }
 
+    /**
+     * Returns the value of the field with the specified ordinal as a {@link Number}.
+     *
+     * @param ordinal the zero-based index of the field
+     *
+     * @return a {@link Number} object
+     *
+     * @see #getNumberValue(String)
+     * @see #getTypedValue(int)
+     */
+    public Number getNumberValue(final int ordinal)
+    {
+        return (Number) getTypedValue(ordinal);
+    }
+
+    /**
+     * Returns the value of the field with the specified ordinal as a <code>String</code>.
+     *
+     * @param ordinal the zero-based index of the field
+     *
+     * @return a {@link String} object
+     *
+     * @see #getTypedValue(int)
+     */
+    public String getStringValue(final int ordinal)
+    {
+        return (String) getTypedValue(ordinal);
+    }
+
+    /**
+     * Returns the value of the field with the specified ordinal as a {@link Boolean}.
+     *
+     * @param ordinal the zero-based index of the field
+     *
+     * @return a {@link Boolean} object
+     *
+     * @see #getTypedValue(int)
+     */
+    public Boolean getBooleanValue(final int ordinal)
+    {
+        return (Boolean) getTypedValue(ordinal);
+    }
+
+    /**
+     * Returns the value of the field with the specified ordinal as a {@link Date}.
+     *
+     * @param ordinal the zero-based index of the field
+     *
+     * @return a {@link Date} object
+     *
+     * @see #getTypedValue(int)
+     */
+    public Date getDateValue(final int ordinal)
+    {
+        return (Date) getTypedValue(ordinal);
+    }
+
+    /**
+     * Returns whether the specified field is empty, i.e. whether {@link #getTypedValue(String)}
+     * would return <code>null</code>. For numeric fields this does not require the value to be
+     * converted.
+     *
+     * @param fieldName the name of the field
+     *
+     * @return <code>true</code> if the field is empty
+     */
+    public boolean isNull(final String fieldName)
+    {
+        final Value v = getValue(fieldName);
+
+        return v == null || v.isNull();
+    }
+
+    /**
+     * Returns whether the field with the specified ordinal is empty.
+     *
+     * @param ordinal the zero-based index of the field
+     *
+     * @return <code>true</code> if the field is empty
+     *
+     * @see #isNull(String)
+     * @see #getTypedValue(int)
+     */
+    public boolean isNull(final int ordinal)
+    {
+        final Value v = getValue(ordinal);
+
+        return v == null || v.isNull();
+    }
+
+    /**
+     * Returns the value of the specified numeric field as an <code>int</code>. The result is the
+     * same as that of <code>getNumberValue(fieldName).intValue()</code>, but the value is parsed
+     * directly from the bytes in the record, without creating a {@link Number} object. An empty
+     * field is returned as zero; use {@link #isNull(String)} to tell it apart from an actual zero.
+     *
+     * @param fieldName the name of the field with numerical data
+     *
+     * @return the value as an <code>int</code>
+     */
+    public int getInt(final String fieldName)
+    {
+        return intValue(getValue(fieldName));
+    }
+
+    /**
+     * Returns the value of the field with the specified ordinal as an <code>int</code>.
+     *
+     * @param ordinal the zero-based index of the field
+     *
+     * @return the value as an <code>int</code>
+     *
+     * @see #getInt(String)
+     * @see #getTypedValue(int)
+     */
+    public int getInt(final int ordinal)
+    {
+        return intValue(getValue(ordinal));
+    }
+
+    /**
+     * Returns the value of the specified numeric field as a <code>long</code>. The result is the
+     * same as that of <code>getNumberValue(fieldName).longValue()</code>, i.e. digits after the
+     * decimal point are truncated. An empty field is returned as zero.
+     *
+     * @param fieldName the name of the field with numerical data
+     *
+     * @return the value as a <code>long</code>
+     *
+     * @see #getInt(String)
+     */
+    public long getLong(final String fieldName)
+    {
+        return longValue(getValue(fieldName));
+    }
+
+    /**
+     * Returns the value of the field with the specified ordinal as a <code>long</code>.
+     *
+     * @param ordinal the zero-based index of the field
+     *
+     * @return the value as a <code>long</code>
+     *
+     * @see #getLong(String)
+     * @see #getTypedValue(int)
+     */
+    public long getLong(final int ordinal)
+    {
+        return longValue(getValue(ordinal));
+    }
+
+    /**
+     * Returns the value of the specified numeric field as a <code>double</code>. The result is the
+     * same as that of <code>getNumberValue(fieldName).doubleValue()</code>. An empty field is
+     * returned as zero.
+     *
+     * @param fieldName the name of the field with numerical data
+     *
+     * @return the value as a <code>double</code>
+     *
+     * @see #getInt(String)
+     */
+    public double getDouble(final String fieldName)
+    {
+        return doubleValue(getValue(fieldName));
+    }
+
+    /**
+     * Returns the value of the field with the specified ordinal as a <code>double</code>.
+     *
+     * @param ordinal the zero-based index of the field
+     *
+     * @return the value as a <code>double</code>
+     *
+     * @see #getDouble(String)
+     * @see #getTypedValue(int)
+     */
+    public double getDouble(final int ordinal)
+    {
+        return doubleValue(getValue(ordinal));
+    }
+
+    /**
+     * Returns the value of the specified numeric field as a fixed point decimal, i.e. the value
+     * multiplied by ten to the power of <code>scale</code>. For instance, with a scale of 2 the
+     * value 1234.56 is returned as 123456. Unlike {@link #getDouble(String)} this is exact. The
+     * scale will usually be the decimal count of the field. An empty field is returned as zero.
+     *
+     * @param fieldName the name of the field with numerical data
+     * @param scale the number of digits after the decimal point
+     *
+     * @return the unscaled value as a <code>long</code>
+     *
+     * @throws ArithmeticException if the value has more digits after the decimal point than
+     *             <code>scale</code>, or if the result does not fit in a <code>long</code>
+     */
+    public long getScaledLong(final String fieldName, final int scale)
+    {
+        return scaledValue(getValue(fieldName), scale);
+    }
+
+    /**
+     * Returns the value of the field with the specified ordinal as a fixed point decimal.
+     *
+     * @param ordinal the zero-based index of the field
+     * @param scale the number of digits after the decimal point
+     *
+     * @return the unscaled value as a <code>long</code>
+     *
+     * @throws ArithmeticException if the value has more digits after the decimal point than
+     *             <code>scale</code>, or if the result does not fit in a <code>long</code>
+     *
+     * @see #getScaledLong(String, int)
+     * @see #getTypedValue(int)
+     */
+    public long getScaledLong(final int ordinal, final int scale)
+    {
+        return scaledValue(getValue(ordinal), scale);
+    }
+
+    /**
+     * Returns the value of the specified date field as the number of days since 1970-01-01. The
+     * date is parsed directly from the bytes in the record, in the proleptic Gregorian calendar, so
+     * for dates before the Gregorian calendar reform this differs from the date returned by
+     * {@link #getDateValue(String)}, which uses the Julian calendar for those dates. An empty field
+     * is returned as zero; use {@link #isNull(String)} to tell it apart from 1970-01-01.
+     *
+     * @param fieldName the name of the field with date data
+     *
+     * @return the epoch day
+     *
+     * @throws NumberFormatException if the field does not contain a valid date
+     */
+    public int getEpochDay(final String fieldName)
+    {
+        return epochDay(getValue(fieldName));
+    }
+
+    /**
+     * Returns the value of the field with the specified ordinal as the number of days since
+     * 1970-01-01.
+     *
+     * @param ordinal the zero-based index of the field
+     *
+     * @return the epoch day
+     *
+     * @see #getEpochDay(String)
+     * @see #getTypedValue(int)
+     */
+    public int getEpochDay(final int ordinal)
+    {
+        return epochDay(getValue(ordinal));
+    }
+
+    /**
+     * Returns the value of the specified date field as a {@link LocalDate}. Unlike
+     * {@link #getDateValue(String)} this does not depend on the default time zone.
+     *
+     * @param fieldName the name of the field with date data
+     *
+     * @return a {@link LocalDate} object, or <code>null</code> if the field is empty
+     *
+     * @see #getEpochDay(String)
+     */
+    public LocalDate getLocalDate(final String fieldName)
+    {
+        return localDate(getValue(fieldName));
+    }
+
+    /**
+     * Returns the value of the field with the specified ordinal as a {@link LocalDate}.
+     *
+     * @param ordinal the zero-based index of the field
+     *
+     * @return a {@link LocalDate} object, or <code>null</code> if the field is empty
+     *
+     * @see #getLocalDate(String)
+     * @see #getTypedValue(int)
+     */
+    public LocalDate getLocalDate(final int ordinal)
+    {
+        return localDate(getValue(ordinal));
+    }
+
     /**
      * Returns whether the record is marked deleted in the database.  In the original dBase program
      * this meant that the record was still visible but had a "deleted" flag.
@@ -278,4 +640,68 @@ public class Record
     {
         return deleted;
     }
+
+    private static int intValue(final Value v)
+    {
+        if (v instanceof NumberValue)
+        {
+            return ((NumberValue) v).intValue();
+        }
+
+        final Number number = v == null ? null : (Number) v.getTypedValue();
+
+        return number == null ? 0 : number.intValue();
+    }
+
+    private static long longValue(final Value v)
+    {
+        if (v instanceof NumberValue)
+        {
+            return ((NumberValue) v).longValue();
+        }
+
+        final Number number = v == null ? null : (Number) v.getTypedValue();
+
+        return number == null ? 0L : number.longValue();
+    }
+
+    private static double doubleValue(final Value v)
+    {
+        if (v instanceof NumberValue)
+        {
+            return ((NumberValue) v).doubleValue();
+        }
+
+        final Number number = v == null ? null : (Number) v.getTypedValue();
+
+        return number == null ? 0.0 : number.doubleValue();
+    }
+
+    private static long scaledValue(final Value v, final int scale)
+    {
+        if (v instanceof NumberValue)
+        {
+            return ((NumberValue) v).scaledValue(scale);
+        }
+
+        final Number number = v == null ? null : (Number) v.getTypedValue();
+
+        return number == null ? 0L : new BigDecimal(number.toString()).setScale(scale, RoundingMode.UNNECESSARY)
+                                                                     .unscaledValue().longValueExact();
+    }
+
+    private static int epochDay(final Value v)
+    {
+        return v == null ? 0 : ((DateValue) v).epochDay();
+    }
+
+    private static LocalDate localDate(final Value v)
+    {
+        if (v == null || v.isNull())
+        {
+            return null;
+        }
+
+        return LocalDate.ofEpochDay(((DateValue) v).epochDay());
+    }
 }
@@ -0,0 +1,515 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A forward-only cursor over the records of a table. Unlike the {@link Record} objects returned by
+ * {@link Table#recordIterator()}, the cursor does not decode the record into value objects. It
+ * keeps the raw bytes of the current record in a single buffer that is reused for every record,
+ * and decodes field values only when they are requested, straight from those bytes. Scanning a
+ * table with a cursor therefore allocates no objects per record, unless <code>String</code>s or
+ * memo values are requested.
+ * <p>
+ * Fields are addressed by their zero-based index in {@link Table#getFields()}. The primitive
+ * accessors return zero (or <code>false</code>) for empty values; use {@link #isNull(int)} to tell
+ * an empty value from a zero.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * final RecordCursor cursor = table.recordCursor();
+ * final int yearIndex = cursor.getFieldIndex(&quot;YEAR&quot;);
+ * long total = 0;
+ *
+ * while (cursor.next())
+ * {
+ *     total += cursor.getInt(yearIndex);
+ * }
+ * </pre>
+ *
+ * Writes to the table while a cursor is in use are not necessarily seen by the cursor.
+ */
+public class RecordCursor
+{
+    private final Table table;
+    private final RecordSource recordSource;
+    private final boolean includeDeleted;
+    private final RecordMatcher matcher;
+    private final Schema schema;
+    private final Field[] fields;
+    private final int[] offsets;
+    private final byte[] record;
+    private final int maxBufferedRecords;
+    private final ByteBuffer recordView;
+    private final CharsetDecoder decoder;
+    private final CodePage codePage;
+    private final CharBuffer chars;
+    private byte[] softReturnScratch = null;
+    private ByteBuffer buffer = null;
+    private long recordIndex = -1;
+    private boolean positioned = false;
+
+    RecordCursor(final Table table, final RecordSource recordSource, final Schema schema,
+                 final int recordLength, final String charsetName, final boolean includeDeleted,
+                 final RecordMatcher matcher)
+    {
+        this.table = table;
+        this.recordSource = recordSource;
+        this.includeDeleted = includeDeleted;
+        this.matcher = matcher;
+        this.schema = schema;
+        fields = new Field[schema.getFieldCount()];
+        offsets = new int[fields.length];
+        record = new byte[recordLength];
+        maxBufferedRecords = Math.max(Table.DEFAULT_BUFFER_SIZE / recordLength, 1);
+        recordView = ByteBuffer.wrap(record);
+
+        int maxLength = 0;
+
+        for (int i = 0; i < fields.length; ++i)
+        {
+            fields[i] = schema.getField(i);
+            offsets[i] = schema.getOffset(i);
+            maxLength = Math.max(maxLength,
+                                 fields[i].getLength());
+        }
+
+        codePage = CodePage.forName(charsetName);
+        decoder =
+            Charset.forName(charsetName).newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+                   .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        chars = CharBuffer.allocate((int) Math.ceil(maxLength * (double) decoder.maxCharsPerByte()));
+    }
+
+    /**
+     * Moves the cursor to the next record. Initially the cursor is positioned before the first
+     * record, so the first call moves it to the first record. Unless the cursor was created to
+     * include them, records flagged as "deleted" are skipped, as are the records that do not match
+     * the predicate of the cursor, if any.
+     *
+     * @return <code>true</code> if the cursor is positioned on a record, <code>false</code> if
+     *         there are no more records
+     * @throws IOException if the table file could not be read
+     * @throws CorruptedTableException if the table file is corrupt
+     */
+    public boolean next()
+                 throws IOException, CorruptedTableException
+    {
+        final long recordCount = table.getLargeRecordCount();
+
+        while (recordIndex + 1 < recordCount)
+        {
+            ++recordIndex;
+
+            if (buffer == null || ! buffer.hasRemaining())
+            {
+                buffer = recordSource.getRecords(recordIndex,
+                                                 (int) Math.min(maxBufferedRecords, recordCount - recordIndex));
+            }
+
+            buffer.get(record);
+
+            if ((includeDeleted || record[0] != Table.MARKER_RECORD_DELETED)
+                    && (matcher == null || matcher.matches(recordView, 0)))
+            {
+                positioned = true;
+
+                return true;
+            }
+        }
+
+        positioned = false;
+
+        return false;
+    }
+
+    /**
+     * Returns the index in the table of the current record.
+     *
+     * @return the zero-based record index
+     */
+    public long getRecordIndex()
+    {
+        checkPositioned();
+
+        return recordIndex;
+    }
+
+    /**
+     * Returns whether the current record is flagged as "deleted".
+     *
+     * @return deleted status
+     */
+    public boolean isMarkedDeleted()
+    {
+        checkPositioned();
+
+        return record[0] == Table.MARKER_RECORD_DELETED;
+    }
+
+    /**
+     * Returns the number of fields in each record.
+     *
+     * @return the field count
+     */
+    public int getFieldCount()
+    {
+        return fields.length;
+    }
+
+    /**
+     * Returns the index of the field with the specified name, for use with the accessor methods of
+     * this cursor.
+     *
+     * @param fieldName the name of the field
+     * @return the zero-based field index
+     * @throws IllegalArgumentException if the table has no field with that name
+     */
+    public int getFieldIndex(final String fieldName)
+    {
+        final int ordinal = schema.getOrdinal(fieldName);
+
+        if (ordinal == -1)
+        {
+            throw new IllegalArgumentException("No such field: " + fieldName);
+        }
+
+        return ordinal;
+    }
+
+    /**
+     * Returns whether the specified field of the current record is empty. These are the fields
+     * for which {@link Record#getTypedValue(String)} returns <code>null</code>.
+     *
+     * @param fieldIndex the index of the field
+     * @return <code>true</code> if the field is empty
+     */
+    public boolean isNull(final int fieldIndex)
+    {
+        final Field field = getField(fieldIndex);
+        final int offset = offsets[fieldIndex];
+
+        switch (field.getType())
+        {
+            case NUMBER:
+            case FLOAT:
+                return NumberCodec.isBlank(record, offset,
+                                           valueLength(fieldIndex));
+
+            case LOGICAL:
+                return record[offset] == ' ';
+
+            case DATE:
+                return DateCodec.isBlank(record, offset);
+
+            case MEMO:
+            case GENERAL:
+            case BINARY:
+            case PICTURE:
+                return NumberCodec.isBlank(record, offset,
+                                           field.getLength());
+
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns the value of the specified numeric field as an <code>int</code>. Digits after the
+     * decimal point are truncated.
+     *
+     * @param fieldIndex the index of the field
+     * @return the value, or zero if the field is empty
+     * @throws NumberFormatException if the field does not contain a number or the number does not
+     *             fit in an <code>int</code>
+     */
+    public int getInt(final int fieldIndex)
+    {
+        final long value = getLong(fieldIndex);
+
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+        {
+            throw new NumberFormatException("Value out of range for int: " + value);
+        }
+
+        return (int) value;
+    }
+
+    /**
+     * Returns the value of the specified numeric field as a <code>long</code>. Digits after the
+     * decimal point are truncated.
+     *
+     * @param fieldIndex the index of the field
+     * @return the value, or zero if the field is empty
+     * @throws NumberFormatException if the field does not contain a number or the number does not
+     *             fit in a <code>long</code>
+     */
+    public long getLong(final int fieldIndex)
+    {
+        getField(fieldIndex);
+
+        final int length = valueLength(fieldIndex);
+
+        if (NumberCodec.isBlank(record, offsets[fieldIndex], length))
+        {
+            return 0;
+        }
+
+        return NumberCodec.parseLong(record, offsets[fieldIndex], length);
+    }
+
+    /**
+     * Returns the value of the specified numeric field as a <code>double</code>.
+     *
+     * @param fieldIndex the index of the field
+     * @return the value, or zero if the field is empty
+     * @throws NumberFormatException if the field does not contain a number
+     */
+    public double getDouble(final int fieldIndex)
+    {
+        getField(fieldIndex);
+
+        final int length = valueLength(fieldIndex);
+
+        if (NumberCodec.isBlank(record, offsets[fieldIndex], length))
+        {
+            return 0;
+        }
+
+        return NumberCodec.parseDouble(record, offsets[fieldIndex], length);
+    }
+
+    /**
+     * Returns the value of the specified logical field.
+     *
+     * @param fieldIndex the index of the field
+     * @return the value, <code>false</code> if the field is empty
+     */
+    public boolean getBoolean(final int fieldIndex)
+    {
+        getField(fieldIndex);
+
+        final byte b = record[offsets[fieldIndex]];
+
+        return b == 'Y' || b == 'y' || b == 'T' || b == 't';
+    }
+
+    /**
+     * Returns the value of the specified date field as the number of days since 1970-01-01 in the
+     * proleptic Gregorian calendar. Note that for dates before the Gregorian calendar reform this
+     * differs from the date returned by {@link Record#getDateValue(String)}, which uses the Julian
+     * calendar for those dates.
+     *
+     * @param fieldIndex the index of the field
+     * @return the epoch day, or zero if the field is empty
+     * @throws NumberFormatException if the field does not contain a valid date
+     */
+    public int getEpochDay(final int fieldIndex)
+    {
+        getField(fieldIndex);
+
+        if (DateCodec.isBlank(record, offsets[fieldIndex]))
+        {
+            return 0;
+        }
+
+        return DateCodec.parseEpochDay(record, offsets[fieldIndex]);
+    }
+
+    /**
+     * Returns the value of the specified character or memo field as a <code>String</code>.
+     *
+     * @param fieldIndex the index of the field
+     * @return the value, or <code>null</code> if it is an empty memo
+     */
+    public String getString(final int fieldIndex)
+    {
+        if (getField(fieldIndex).getType() == Type.MEMO)
+        {
+            return readMemo(fieldIndex);
+        }
+
+        return decode(fieldIndex).toString();
+    }
+
+    /**
+     * Returns the value of the specified character or memo field as a
+     * <code>CharSequence</code>. For character fields the characters are decoded into a buffer
+     * owned by the cursor, so no objects are created; the returned sequence is only valid until
+     * the next call to this method or to {@link #next()}.
+     *
+     * @param fieldIndex the index of the field
+     * @return the value, or <code>null</code> if it is an empty memo
+     */
+    public CharSequence getCharSequence(final int fieldIndex)
+    {
+        if (getField(fieldIndex).getType() == Type.MEMO)
+        {
+            return readMemo(fieldIndex);
+        }
+
+        return decode(fieldIndex);
+    }
+
+    private CharBuffer decode(final int fieldIndex)
+    {
+        final int offset = offsets[fieldIndex];
+        int length = valueLength(fieldIndex);
+
+        /*
+         * As in Util.readStringBytes, an empty field yields a single null character.
+         */
+        if (length == 0)
+        {
+            length = 1;
+        }
+
+        chars.clear();
+
+        if (codePage != null)
+        {
+            chars.limit(codePage.decode(record, offset, length,
+                                        chars.array()));
+
+            return chars;
+        }
+
+        recordView.limit(offset + length);
+        recordView.position(offset);
+
+        ByteBuffer in = recordView;
+
+        if (containsSoftReturn(offset, length))
+        {
+            in = removeSoftReturns(offset, length);
+        }
+
+        decoder.reset();
+        decoder.decode(in, chars, true);
+        decoder.flush(chars);
+        chars.flip();
+
+        return chars;
+    }
+
+    private boolean containsSoftReturn(final int offset, final int length)
+    {
+        for (int i = offset; i < offset + length - 1; ++i)
+        {
+            if (record[i] == (byte) 0x8d && record[i + 1] == (byte) 0x0a)
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private ByteBuffer removeSoftReturns(final int offset, final int length)
+    {
+        if (softReturnScratch == null || softReturnScratch.length < length)
+        {
+            softReturnScratch = new byte[record.length];
+        }
+
+        int n = 0;
+
+        for (int i = offset; i < offset + length; ++i)
+        {
+            if (i < offset + length - 1 && record[i] == (byte) 0x8d && record[i + 1] == (byte) 0x0a)
+            {
+                ++i;
+
+                continue;
+            }
+
+            softReturnScratch[n++] = record[i];
+        }
+
+        return ByteBuffer.wrap(softReturnScratch, 0, n);
+    }
+
+    private String readMemo(final int fieldIndex)
+    {
+        final Field field = fields[fieldIndex];
+
+        try
+        {
+            final byte[] memoBytes = table.readMemo(new String(record,
+                                                               offsets[fieldIndex],
+                                                               field.getLength()));
+
+            if (memoBytes == null)
+            {
+                return null;
+            }
+
+            return (String) new StringValue(field, memoBytes, table.getCharsetName(), codePage).getTypedValue();
+        }
+        catch (final IOException ioException)
+        {
+            throw new RuntimeException(ioException.getMessage(), ioException);
+        }
+        catch (final CorruptedTableException corruptedTableException)
+        {
+            throw new RuntimeException(corruptedTableException.getMessage(), corruptedTableException);
+        }
+    }
+
+    /*
+     * The length of the value up to the first null character.
+     */
+    private int valueLength(final int fieldIndex)
+    {
+        final int offset = offsets[fieldIndex];
+        final int length = fields[fieldIndex].getLength();
+        int i = 0;
+
+        while (i < length && record[offset + i] != 0)
+        {
+            ++i;
+        }
+
+        return i;
+    }
+
+    private Field getField(final int fieldIndex)
+    {
+        checkPositioned();
+
+        if (fieldIndex < 0 || fieldIndex >= fields.length)
+        {
+            throw new IndexOutOfBoundsException("Invalid field index: " + fieldIndex);
+        }
+
+        return fields[fieldIndex];
+    }
+
+    private void checkPositioned()
+    {
+        if (! positioned)
+        {
+            throw new IllegalStateException("Cursor is not positioned on a record");
+        }
+    }
+}
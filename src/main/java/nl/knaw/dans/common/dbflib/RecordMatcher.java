@@ -0,0 +1,35 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link RecordPredicate} bound to the fields of a table. A matcher may keep scratch space, so
+ * it must not be used by more than one thread at the same time.
+ */
+interface RecordMatcher
+{
+    /**
+     * Tests the raw record that starts at <code>recordStart</code> in <code>records</code>. The
+     * position of <code>records</code> is not changed.
+     *
+     * @param records a buffer containing the raw record
+     * @param recordStart the index in the buffer of the first byte of the record
+     * @return <code>true</code> if the record matches
+     */
+    boolean matches(ByteBuffer records, int recordStart);
+}
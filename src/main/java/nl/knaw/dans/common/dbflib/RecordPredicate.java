@@ -0,0 +1,634 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import java.nio.ByteBuffer;
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * A condition on the values of a record that is tested against the raw bytes of the record, before
+ * the record is decoded. Reading a table with a predicate, e.g. with
+ * {@link Table#recordIterator(RecordPredicate)}, therefore only decodes the records that match.
+ * <p>
+ * Predicates are created with the static factory methods of this class and combined with
+ * {@link #and(RecordPredicate)}, {@link #or(RecordPredicate)} and {@link #negate()}. Values are
+ * compared as follows, depending on the type of the field:
+ * <ul>
+ * <li>CHARACTER: the value must be a <code>String</code>. It is encoded in the character set of the
+ * table and compared byte by byte, ignoring trailing spaces and null characters on both sides.
+ * Ranges use the unsigned byte order, which for ASCII is the alphabetical order.</li>
+ * <li>NUMBER and FLOAT: the value must be a <code>Number</code>. Both sides are compared as
+ * <code>double</code>s.</li>
+ * <li>DATE: the value must be a <code>Date</code>. Only the day is compared, in the default time
+ * zone, like {@link DateValue} does.</li>
+ * <li>LOGICAL: the value must be a <code>Boolean</code>. Ranges are not supported.</li>
+ * </ul>
+ * An empty field value never matches a comparison; use {@link #isBlank(String)} to find empty
+ * values. The only condition supported on memo fields is {@link #isBlank(String)}.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * final RecordPredicate sixties = RecordPredicate.between(&quot;YEAR&quot;, 1960, 1969);
+ * final Iterator&lt;Record&gt; iterator =
+ *     table.recordIterator(sixties.and(RecordPredicate.startsWith(&quot;NAME&quot;, &quot;Ford&quot;)));
+ * </pre>
+ */
+public abstract class RecordPredicate
+{
+    RecordPredicate()
+    {
+        /*
+         * Only the factory methods create predicates.
+         */
+    }
+
+    /**
+     * Returns a predicate that matches records of which the specified field equals
+     * <code>value</code>.
+     *
+     * @param fieldName the name of the field
+     * @param value the value to compare with
+     * @return a new predicate
+     */
+    public static RecordPredicate equalTo(final String fieldName, final Object value)
+    {
+        return in(fieldName, value);
+    }
+
+    /**
+     * Returns a predicate that matches records of which the specified field equals one of
+     * <code>values</code>.
+     *
+     * @param fieldName the name of the field
+     * @param values the values to compare with
+     * @return a new predicate
+     */
+    public static RecordPredicate in(final String fieldName, final Object... values)
+    {
+        checkFieldName(fieldName);
+
+        for (final Object value : values)
+        {
+            if (value == null)
+            {
+                throw new IllegalArgumentException("Values must not be null");
+            }
+        }
+
+        final Object[] copy = values.clone();
+
+        return new RecordPredicate()
+            {
+                RecordMatcher bind(final Schema schema, final String charsetName)
+                {
+                    final FieldRef ref = new FieldRef(schema, fieldName);
+                    final Comparison[] comparisons = new Comparison[copy.length];
+
+                    for (int i = 0; i < copy.length; ++i)
+                    {
+                        comparisons[i] = ref.compareTo(copy[i], charsetName);
+                    }
+
+                    return new FieldMatcher(ref)
+                        {
+                            boolean test(final byte[] bytes, final int offset)
+                            {
+                                for (final Comparison comparison : comparisons)
+                                {
+                                    if (comparison.compare(bytes, offset) == 0)
+                                    {
+                                        return true;
+                                    }
+                                }
+
+                                return false;
+                            }
+                        };
+                }
+            };
+    }
+
+    /**
+     * Returns a predicate that matches records of which the specified field lies between
+     * <code>lowest</code> and <code>highest</code>, inclusive. One of the bounds may be
+     * <code>null</code>, meaning that the range is open on that side.
+     *
+     * @param fieldName the name of the field
+     * @param lowest the lowest value to match, or <code>null</code>
+     * @param highest the highest value to match, or <code>null</code>
+     * @return a new predicate
+     */
+    public static RecordPredicate between(final String fieldName, final Object lowest, final Object highest)
+    {
+        checkFieldName(fieldName);
+
+        if (lowest == null && highest == null)
+        {
+            throw new IllegalArgumentException("At least one bound must be specified");
+        }
+
+        return new RecordPredicate()
+            {
+                RecordMatcher bind(final Schema schema, final String charsetName)
+                {
+                    final FieldRef ref = new FieldRef(schema, fieldName);
+
+                    if (ref.field.getType() == Type.LOGICAL)
+                    {
+                        throw new IllegalArgumentException("Field " + fieldName + " does not support ranges");
+                    }
+
+                    final Comparison low = lowest == null ? null : ref.compareTo(lowest, charsetName);
+                    final Comparison high = highest == null ? null : ref.compareTo(highest, charsetName);
+
+                    return new FieldMatcher(ref)
+                        {
+                            boolean test(final byte[] bytes, final int offset)
+                            {
+                                if (low != null)
+                                {
+                                    final int c = low.compare(bytes, offset);
+
+                                    if (c == Comparison.EMPTY || c < 0)
+                                    {
+                                        return false;
+                                    }
+                                }
+
+                                if (high != null)
+                                {
+                                    final int c = high.compare(bytes, offset);
+
+                                    if (c == Comparison.EMPTY || c > 0)
+                                    {
+                                        return false;
+                                    }
+                                }
+
+                                return true;
+                            }
+                        };
+                }
+            };
+    }
+
+    /**
+     * Returns a predicate that matches records of which the specified CHARACTER field starts with
+     * <code>prefix</code>.
+     *
+     * @param fieldName the name of the field
+     * @param prefix the prefix to match
+     * @return a new predicate
+     */
+    public static RecordPredicate startsWith(final String fieldName, final String prefix)
+    {
+        checkFieldName(fieldName);
+
+        if (prefix == null)
+        {
+            throw new IllegalArgumentException("Prefix must not be null");
+        }
+
+        return new RecordPredicate()
+            {
+                RecordMatcher bind(final Schema schema, final String charsetName)
+                {
+                    final FieldRef ref = new FieldRef(schema, fieldName);
+
+                    if (ref.field.getType() != Type.CHARACTER)
+                    {
+                        throw new IllegalArgumentException("Field " + fieldName + " is not a CHARACTER field");
+                    }
+
+                    final byte[] prefixBytes = Util.getStringBytes(prefix, charsetName);
+
+                    return new FieldMatcher(ref)
+                        {
+                            boolean test(final byte[] bytes, final int offset)
+                            {
+                                if (prefixBytes.length > ref.field.getLength())
+                                {
+                                    return false;
+                                }
+
+                                for (int i = 0; i < prefixBytes.length; ++i)
+                                {
+                                    if (bytes[offset + i] != prefixBytes[i])
+                                    {
+                                        return false;
+                                    }
+                                }
+
+                                return true;
+                            }
+                        };
+                }
+            };
+    }
+
+    /**
+     * Returns a predicate that matches records of which the specified field is empty, i.e.
+     * consists only of spaces or null characters. For memo fields this means that the record has
+     * no memo.
+     *
+     * @param fieldName the name of the field
+     * @return a new predicate
+     */
+    public static RecordPredicate isBlank(final String fieldName)
+    {
+        checkFieldName(fieldName);
+
+        return new RecordPredicate()
+            {
+                RecordMatcher bind(final Schema schema, final String charsetName)
+                {
+                    final FieldRef ref = new FieldRef(schema, fieldName);
+
+                    return new FieldMatcher(ref)
+                        {
+                            boolean test(final byte[] bytes, final int offset)
+                            {
+                                return isBlankValue(bytes, offset, ref.field.getLength());
+                            }
+                        };
+                }
+            };
+    }
+
+    /**
+     * Returns a predicate that matches records that match both this predicate and
+     * <code>other</code>. If this predicate does not match, <code>other</code> is not tested.
+     *
+     * @param other the other predicate
+     * @return a new predicate
+     */
+    public RecordPredicate and(final RecordPredicate other)
+    {
+        final RecordPredicate first = this;
+
+        return new RecordPredicate()
+            {
+                RecordMatcher bind(final Schema schema, final String charsetName)
+                {
+                    final RecordMatcher a = first.bind(schema, charsetName);
+                    final RecordMatcher b = other.bind(schema, charsetName);
+
+                    return new RecordMatcher()
+                        {
+                            public boolean matches(final ByteBuffer records, final int recordStart)
+                            {
+                                return a.matches(records, recordStart) && b.matches(records, recordStart);
+                            }
+                        };
+                }
+            };
+    }
+
+    /**
+     * Returns a predicate that matches records that match this predicate or <code>other</code>.
+     * If this predicate matches, <code>other</code> is not tested.
+     *
+     * @param other the other predicate
+     * @return a new predicate
+     */
+    public RecordPredicate or(final RecordPredicate other)
+    {
+        final RecordPredicate first = this;
+
+        return new RecordPredicate()
+            {
+                RecordMatcher bind(final Schema schema, final String charsetName)
+                {
+                    final RecordMatcher a = first.bind(schema, charsetName);
+                    final RecordMatcher b = other.bind(schema, charsetName);
+
+                    return new RecordMatcher()
+                        {
+                            public boolean matches(final ByteBuffer records, final int recordStart)
+                            {
+                                return a.matches(records, recordStart) || b.matches(records, recordStart);
+                            }
+                        };
+                }
+            };
+    }
+
+    /**
+     * Returns a predicate that matches the records that this predicate does not match.
+     *
+     * @return a new predicate
+     */
+    public RecordPredicate negate()
+    {
+        final RecordPredicate original = this;
+
+        return new RecordPredicate()
+            {
+                RecordMatcher bind(final Schema schema, final String charsetName)
+                {
+                    final RecordMatcher matcher = original.bind(schema, charsetName);
+
+                    return new RecordMatcher()
+                        {
+                            public boolean matches(final ByteBuffer records, final int recordStart)
+                            {
+                                return ! matcher.matches(records, recordStart);
+                            }
+                        };
+                }
+            };
+    }
+
+    /**
+     * Binds this predicate to the fields of a table. Every reader binds its own matcher.
+     *
+     * @throws IllegalArgumentException if a field does not exist, or does not support the
+     *             condition or the type of the value
+     */
+    abstract RecordMatcher bind(Schema schema, String charsetName);
+
+    private static void checkFieldName(final String fieldName)
+    {
+        if (fieldName == null)
+        {
+            throw new IllegalArgumentException("Field name must not be null");
+        }
+    }
+
+    private static boolean isBlankValue(final byte[] bytes, final int offset, final int length)
+    {
+        for (int i = offset; i < offset + length; ++i)
+        {
+            if (bytes[i] != ' ' && bytes[i] != 0)
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /*
+     * Returns the length of the value without trailing spaces and null characters.
+     */
+    private static int significantLength(final byte[] bytes, final int offset, final int length)
+    {
+        int end = offset + length;
+
+        while (end > offset && (bytes[end - 1] == ' ' || bytes[end - 1] == 0))
+        {
+            --end;
+        }
+
+        return end - offset;
+    }
+
+    /*
+     * A field of the table, with the offset of its value in the raw record.
+     */
+    private static class FieldRef
+    {
+        final Field field;
+        final int offset;
+
+        FieldRef(final Schema schema, final String fieldName)
+        {
+            final int ordinal = schema.getOrdinal(fieldName);
+
+            if (ordinal == -1)
+            {
+                throw new IllegalArgumentException("Field " + fieldName + " does not exist in this table");
+            }
+
+            field = schema.getField(ordinal);
+            offset = schema.getOffset(ordinal);
+        }
+
+        Comparison compareTo(final Object value, final String charsetName)
+        {
+            switch (field.getType())
+            {
+                case CHARACTER:
+                    checkValueType(value, String.class);
+
+                    return new BytesComparison(field,
+                                               Util.getStringBytes((String) value, charsetName));
+
+                case NUMBER:
+                case FLOAT:
+                    checkValueType(value, Number.class);
+
+                    return new NumberComparison(field,
+                                                ((Number) value).doubleValue());
+
+                case DATE:
+                    checkValueType(value, Date.class);
+
+                    return new BytesComparison(field,
+                                               formatDate((Date) value));
+
+                case LOGICAL:
+                    checkValueType(value, Boolean.class);
+
+                    return new BooleanComparison((Boolean) value);
+
+                default:
+                    throw new IllegalArgumentException("Field " + field.getName() + " of type " + field.getType()
+                                                       + " can only be tested for blank values");
+            }
+        }
+
+        private void checkValueType(final Object value, final Class<?> type)
+        {
+            if (! type.isInstance(value))
+            {
+                throw new IllegalArgumentException("Field " + field.getName() + " requires a " + type.getSimpleName()
+                                                   + " value, not " + value.getClass().getSimpleName());
+            }
+        }
+
+        /*
+         * Formats the date with the same calendar and codec as DateValue, so that the bytes are
+         * exactly those written for the date, in ASCII digits whatever the default locale.
+         */
+        private static byte[] formatDate(final Date date)
+        {
+            final Calendar cal = Calendar.getInstance();
+            cal.setTime(date);
+
+            final byte[] bytes = new byte[DateValue.RECORD_DATE_LENGTH];
+            DateCodec.format(cal.get(Calendar.YEAR),
+                             cal.get(Calendar.MONTH) + 1,
+                             cal.get(Calendar.DAY_OF_MONTH),
+                             bytes,
+                             0);
+
+            return bytes;
+        }
+    }
+
+    /*
+     * Tests a single field. If the record buffer is not backed by an array, the field value is
+     * copied to a scratch array first.
+     */
+    private abstract static class FieldMatcher
+        implements RecordMatcher
+    {
+        private final FieldRef ref;
+        private final byte[] scratch;
+
+        FieldMatcher(final FieldRef ref)
+        {
+            this.ref = ref;
+            scratch = new byte[ref.field.getLength()];
+        }
+
+        public boolean matches(final ByteBuffer records, final int recordStart)
+        {
+            final int start = recordStart + ref.offset;
+
+            if (records.hasArray())
+            {
+                return test(records.array(),
+                            records.arrayOffset() + start);
+            }
+
+            for (int i = 0; i < scratch.length; ++i)
+            {
+                scratch[i] = records.get(start + i);
+            }
+
+            return test(scratch, 0);
+        }
+
+        abstract boolean test(byte[] bytes, int offset);
+    }
+
+    /*
+     * Compares a field value with a constant.
+     */
+    private abstract static class Comparison
+    {
+        /*
+         * Returned by compare if the field value is empty.
+         */
+        static final int EMPTY = Integer.MIN_VALUE;
+
+        /*
+         * Returns a negative number, zero or a positive number if the field value is less than,
+         * equal to or greater than the constant, or EMPTY if the field value is empty.
+         */
+        abstract int compare(byte[] bytes, int offset);
+    }
+
+    private static class BytesComparison
+        extends Comparison
+    {
+        private final int length;
+        private final byte[] constant;
+        private final int constantLength;
+
+        BytesComparison(final Field field, final byte[] constant)
+        {
+            length = field.getLength();
+            this.constant = constant;
+            constantLength = significantLength(constant, 0, constant.length);
+        }
+
+        int compare(final byte[] bytes, final int offset)
+        {
+            final int valueLength = significantLength(bytes, offset, length);
+
+            if (valueLength == 0)
+            {
+                return EMPTY;
+            }
+
+            final int n = Math.min(valueLength, constantLength);
+
+            for (int i = 0; i < n; ++i)
+            {
+                final int c = (bytes[offset + i] & 0xff) - (constant[i] & 0xff);
+
+                if (c != 0)
+                {
+                    return c;
+                }
+            }
+
+            return valueLength - constantLength;
+        }
+    }
+
+    private static class NumberComparison
+        extends Comparison
+    {
+        private final int length;
+        private final double constant;
+
+        NumberComparison(final Field field, final double constant)
+        {
+            length = field.getLength();
+            this.constant = constant;
+        }
+
+        int compare(final byte[] bytes, final int offset)
+        {
+            if (NumberCodec.isBlank(bytes, offset, length))
+            {
+                return EMPTY;
+            }
+
+            final double value = NumberCodec.parseDouble(bytes, offset, length);
+
+            return value < constant ? -1 : (value > constant ? 1 : 0);
+        }
+    }
+
+    private static class BooleanComparison
+        extends Comparison
+    {
+        private final boolean constant;
+
+        BooleanComparison(final boolean constant)
+        {
+            this.constant = constant;
+        }
+
+        int compare(final byte[] bytes, final int offset)
+        {
+            /*
+             * Like BooleanValue, anything else than a space or one of the true values is false.
+             */
+            switch (bytes[offset])
+            {
+                case ' ':
+                    return EMPTY;
+
+                case 'T':
+                case 't':
+                case 'Y':
+                case 'y':
+                    return constant ? 0 : 1;
+
+                default:
+                    return constant ? -1 : 0;
+            }
+        }
+    }
+}
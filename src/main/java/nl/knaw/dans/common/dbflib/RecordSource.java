@@ -0,0 +1,62 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Provides the raw bytes of the records in a table file. All record reads of {@link Table} go
+ * through a <code>RecordSource</code>, so that the way the bytes are fetched from disk (buffered
+ * reads, memory mapping) can be chosen when the table is opened.
+ */
+interface RecordSource
+{
+    /**
+     * Returns a buffer containing the raw bytes of one or more consecutive records, starting with
+     * the record at <code>startIndex</code>. The position of the buffer is set to the first byte of
+     * that record and its limit to the end of the last complete record returned. At most
+     * <code>maxRecords</code> records are returned, but possibly fewer. The contents of the buffer
+     * are only guaranteed to be valid until the next call to this source.
+     *
+     * @param startIndex the index of the first record
+     * @param maxRecords the maximum number of records to return
+     * @return a buffer positioned at the first record
+     * @throws IOException if the table file could not be read
+     * @throws CorruptedTableException if the table file contains fewer records than its header
+     *             states
+     */
+    ByteBuffer getRecords(long startIndex, int maxRecords)
+                   throws IOException, CorruptedTableException;
+
+    /**
+     * Brings any buffered data of the record at <code>index</code> up to date after the first
+     * <code>length</code> bytes of <code>bytes</code> have been written to that record in the table
+     * file, starting at byte <code>offset</code> of the record.
+     *
+     * @param index the index of the record written to
+     * @param offset the offset in the record of the bytes written
+     * @param bytes the bytes written
+     * @param length the number of bytes written
+     */
+    void recordWritten(long index, int offset, byte[] bytes, int length);
+
+    /**
+     * Discards any record data buffered by this source. Must be called after the table file has
+     * been written to in another way than through whole records, e.g. when it was truncated.
+     */
+    void invalidate();
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Splits the records of a table into ranges of record indices. Because all records have the same
+ * length, every range maps to an exact part of the table file. Each range reads its records with
+ * its own {@link RecordSource}, which does not use the file pointer of the table file, so that the
+ * ranges can be traversed in parallel.
+ */
+class RecordSpliterator
+    implements Spliterator<Record>
+{
+    /*
+     * Ranges smaller than this number of bytes are not split any further.
+     */
+    private static final int MIN_SPLIT_SIZE = 64 * 1024;
+    private final Table table;
+    private final int recordLength;
+    private final boolean includeDeleted;
+    private final boolean[] projection;
+    private final RecordPredicate predicate;
+    private RecordMatcher matcher = null;
+    private long index;
+    private final long endIndex;
+    private RecordSource recordSource = null;
+    private ByteBuffer buffer = null;
+
+    RecordSpliterator(final Table table, final int recordLength, final long startIndex, final long endIndex,
+                      final boolean includeDeleted, final boolean[] projection, final RecordPredicate predicate)
+    {
+        this.table = table;
+        this.recordLength = recordLength;
+        this.index = startIndex;
+        this.endIndex = endIndex;
+        this.includeDeleted = includeDeleted;
+        this.projection = projection;
+        this.predicate = predicate;
+    }
+
+    public boolean tryAdvance(final Consumer<? super Record> action)
+    {
+        try
+        {
+            while (index < endIndex)
+            {
+                final Record record = readNext();
+
+                if (record != null)
+                {
+                    action.accept(record);
+
+                    return true;
+                }
+            }
+
+            return false;
+        }
+        catch (final IOException ioException)
+        {
+            throw new RuntimeException(ioException.getMessage(), ioException);
+        }
+        catch (final CorruptedTableException corruptedTableException)
+        {
+            throw new RuntimeException(corruptedTableException.getMessage(), corruptedTableException);
+        }
+    }
+
+    /*
+     * Reads the record at index and advances to the next one. Returns null if the record is
+     * skipped, because it is deleted or does not match the predicate.
+     */
+    private Record readNext()
+                     throws IOException, CorruptedTableException
+    {
+        if (buffer == null || ! buffer.hasRemaining())
+        {
+            if (recordSource == null)
+            {
+                recordSource = table.createPositionalRecordSource();
+                matcher = predicate == null ? null : table.bind(predicate);
+            }
+
+            buffer = recordSource.getRecords(index,
+                                             (int) Math.min(endIndex - index, Integer.MAX_VALUE));
+        }
+
+        final int recordStart = buffer.position();
+        ++index;
+
+        if ((! includeDeleted && buffer.get(recordStart) == Table.MARKER_RECORD_DELETED)
+                || (matcher != null && ! matcher.matches(buffer, recordStart)))
+        {
+            buffer.position(recordStart + recordLength);
+
+            return null;
+        }
+
+        final Record record = table.getRecord(buffer, projection);
+        buffer.position(recordStart + recordLength);
+
+        return record;
+    }
+
+    public Spliterator<Record> trySplit()
+    {
+        final int minSplitRecords = Math.max(MIN_SPLIT_SIZE / recordLength, 1);
+
+        /*
+         * Once traversal has started, the range is no longer split.
+         */
+        if (buffer != null || endIndex - index < 2 * minSplitRecords)
+        {
+            return null;
+        }
+
+        final long middle = index + (endIndex - index) / 2;
+        final Spliterator<Record> prefix =
+            new RecordSpliterator(table, recordLength, index, middle, includeDeleted, projection, predicate);
+        index = middle;
+
+        return prefix;
+    }
+
+    public long estimateSize()
+    {
+        return endIndex - index;
+    }
+
+    public int characteristics()
+    {
+        /*
+         * Only if no records are skipped is the number of records known exactly.
+         */
+        return ORDERED | NONNULL | (includeDeleted && predicate == null ? SIZED | SUBSIZED : 0);
+    }
+}
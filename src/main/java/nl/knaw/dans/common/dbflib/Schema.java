@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Describes the layout of the records of a table: its fields, their ordinal numbers and the
+ * offsets of their values in the raw record. A <code>Schema</code> is immutable. The ordinal of a
+ * field is its zero-based index in {@link Table#getFields()}; it can be used with the ordinal
+ * based accessors of {@link Record}, which avoid looking up the field by name for every value:
+ *
+ * <pre>
+ * final int year = table.getSchema().getOrdinal(&quot;YEAR&quot;);
+ *
+ * while (iterator.hasNext())
+ * {
+ *     total += iterator.next().getNumberValue(year).intValue();
+ * }
+ * </pre>
+ */
+public final class Schema
+{
+    private final Field[] fields;
+    private final int[] offsets;
+    private final Map<String, Integer> ordinals;
+
+    Schema(final List<Field> fieldList)
+    {
+        fields = fieldList.toArray(new Field[fieldList.size()]);
+        offsets = new int[fields.length];
+        ordinals = new HashMap<String, Integer>(fields.length * 2);
+
+        int offset = 1; // skip the deleted flag
+
+        for (int i = 0; i < fields.length; ++i)
+        {
+            offsets[i] = offset;
+            offset += fields[i].getLength();
+
+            /*
+             * Should a name occur twice, the last field wins, as it did when records were maps.
+             */
+            ordinals.put(fields[i].getName(), i);
+        }
+    }
+
+    /**
+     * Returns the number of fields.
+     *
+     * @return the field count
+     */
+    public int getFieldCount()
+    {
+        return fields.length;
+    }
+
+    /**
+     * Returns the field with the specified ordinal.
+     *
+     * @param ordinal the zero-based index of the field
+     * @return the field
+     * @throws IndexOutOfBoundsException if there is no field with that ordinal
+     */
+    public Field getField(final int ordinal)
+    {
+        return fields[ordinal];
+    }
+
+    /**
+     * Returns the fields in the order in which they are stored.
+     *
+     * @return an unmodifiable list of fields
+     */
+    public List<Field> getFields()
+    {
+        return Collections.unmodifiableList(Arrays.asList(fields));
+    }
+
+    /**
+     * Returns the ordinal of the field with the specified name.
+     *
+     * @param fieldName the name of the field
+     * @return the zero-based index of the field, or -1 if there is no such field
+     */
+    public int getOrdinal(final String fieldName)
+    {
+        final Integer ordinal = ordinals.get(fieldName);
+
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    /**
+     * Returns the offset of the value of a field in the raw record. The first byte of a raw record
+     * is the "deleted" flag, so the first field has offset 1.
+     *
+     * @param ordinal the zero-based index of the field
+     * @return the offset of the field value
+     * @throws IndexOutOfBoundsException if there is no field with that ordinal
+     */
+    public int getOffset(final int ordinal)
+    {
+        return offsets[ordinal];
+    }
+}
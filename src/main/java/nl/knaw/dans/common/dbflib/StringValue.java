@@ -28,6 +28,8 @@ public class StringValue
     extends Value
 {
     private final String charsetName;
+    private final CodePage codePage;
+    private final MemoPointer memoPointer;
     static final int MAX_CHARFIELD_LENGTH_DBASE = 253;
 
     /**
@@ -37,11 +39,30 @@ public class StringValue
      * @param charsetName the character set to use when encoding and decoding this string value
      */
     public StringValue(final String stringValue, final String charsetName)
+    {
+        this(stringValue,
+             charsetName,
+             lookUpCodePage(charsetName));
+    }
+
+    /**
+     * Creates a string value with the code page of <code>charsetName</code> already looked up, or
+     * <code>null</code> if the character set has none, so that values created for a table do not
+     * each look it up again.
+     */
+    StringValue(final String stringValue, final String charsetName, final CodePage codePage)
     {
         super(stringValue);
         this.charsetName = charsetName;
+        this.codePage = codePage;
+        memoPointer = null;
+    }
 
+    private static CodePage lookUpCodePage(final String charsetName)
+    {
         Charset.forName(charsetName);
+
+        return CodePage.forName(charsetName);
     }
 
     /**
@@ -55,15 +76,62 @@ public class StringValue
              Charset.defaultCharset().name());
     }
 
-    StringValue(final Field field, final byte[] rawValue, final String charsetName)
+    StringValue(final Field field, final byte[] rawValue, final String charsetName, final CodePage codePage)
+    {
+        this(field, rawValue, null, charsetName, codePage);
+    }
+
+    /**
+     * Creates a string value for a memo field of which the contents are read on first access.
+     */
+    StringValue(final Field field, final MemoPointer memoPointer, final String charsetName, final CodePage codePage)
+    {
+        this(field, null, memoPointer, charsetName, codePage);
+    }
+
+    private StringValue(final Field field, final byte[] rawValue, final MemoPointer memoPointer,
+                        final String charsetName, final CodePage codePage)
     {
         super(field, rawValue);
-        this.charsetName = charsetName == null ? Charset.defaultCharset().name() : charsetName;
+        this.memoPointer = memoPointer;
+        this.charsetName = charsetName;
+        this.codePage = codePage;
+    }
+
+    @Override
+    byte[] getOriginalRaw()
+    {
+        if (memoPointer != null)
+        {
+            return memoPointer.getBytes();
+        }
+
+        return super.getOriginalRaw();
+    }
+
+    /*
+     * A memo is decoded straight from the memo file buffer, which for a memory mapped memo file
+     * saves copying it to the heap first.
+     */
+    @Override
+    Object decodeOriginal()
+    {
+        if (memoPointer == null || codePage == null)
+        {
+            return super.decodeOriginal();
+        }
+
+        return codePage.decode(memoPointer.getBuffer());
     }
 
     @Override
     protected Object doGetTypedValue(final byte[] rawValue)
     {
+        if (codePage != null)
+        {
+            return codePage.decode(rawValue, 0, rawValue.length);
+        }
+
         final ByteArrayOutputStream bos = new ByteArrayOutputStream(rawValue.length);
 
         for (int i = 0; i < rawValue.length; ++i)
@@ -92,7 +160,8 @@ public class StringValue
                             throws ValueTooLargeException
     {
         final int fieldLength = field.getLength();
-        final byte[] stringBytes = Util.getStringBytes((String) typed, charsetName);
+        final byte[] stringBytes =
+            codePage == null ? Util.getStringBytes((String) typed, charsetName) : codePage.encode((String) typed);
 
         final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(fieldLength);
 
@@ -15,21 +15,28 @@
  */
 package nl.knaw.dans.common.dbflib;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInput;
-import java.io.DataInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Represents a single table in a xBase database. A table is represented by a single
@@ -40,59 +47,105 @@ import java.util.NoSuchElementException;
  */
 public class Table
 {
-    private static final int MARKER_RECORD_DELETED = 0x2A;
+    static final int MARKER_RECORD_DELETED = 0x2A;
     private static final int MARKER_EOF = 0x1A;
     private static final int MARKER_RECORD_VALID = 0x20;
-    private static final int DEFAULT_BUFFER_SIZE = 1000000;
+    static final int DEFAULT_BUFFER_SIZE = 1000000;
     private static final int DEFAULT_RECORD_ARRAY_LIST_SIZE = 10000;
-    private byte[] buffer = null;
-    private int startBufferedRecord = 0;
-    private int nBufferedRecord = 0;
+    private static final long MAX_RECORD_COUNT = 0xffffffffL;
 
     private class RecordIterator
         implements Iterator<Record>
     {
         private final boolean includeDeleted;
-        private int recordCounter = -1;
+        private final boolean[] projection;
+        private final RecordMatcher matcher;
+        private long recordCounter = -1;
         private boolean currentElementDeleted = false;
 
-        RecordIterator(final boolean includeDeleted)
+        /*
+         * The index of the next matching record, as found by the last call to nextRecordIndex,
+         * and the value of recordCounter at that time.
+         */
+        private long nextMatch = -1;
+        private long nextMatchFrom = -2;
+
+        RecordIterator(final boolean includeDeleted, final boolean[] projection)
+        {
+            this(includeDeleted, projection, null);
+        }
+
+        RecordIterator(final boolean includeDeleted, final boolean[] projection, final RecordMatcher matcher)
         {
             this.includeDeleted = includeDeleted;
+            this.projection = projection;
+            this.matcher = matcher;
         }
 
         public boolean hasNext()
         {
             try
             {
-                return recordCounter + 1 < header.getRecordCount()
-                       && (includeDeleted || ! followingRecordsAreAllDeleted());
+                return nextRecordIndex() < header.getRecordCount();
             }
             catch (final IOException e)
             {
                 throw new RuntimeException(e);
             }
+            catch (final CorruptedTableException e)
+            {
+                throw new RuntimeException(e);
+            }
         }
 
-        private boolean followingRecordsAreAllDeleted()
-                                               throws IOException
+        private long nextRecordIndex()
+                             throws IOException, CorruptedTableException
         {
-            int index = recordCounter + 1;
-            byte b;
+            if (matcher == null)
+            {
+                return nextCandidate(recordCounter + 1);
+            }
+
+            if (nextMatchFrom == recordCounter)
+            {
+                return nextMatch;
+            }
 
-            do
+            long index = nextCandidate(recordCounter + 1);
+
+            while (index < header.getRecordCount())
             {
-                jumpToRecordAt(index++);
-                b = raFile.readByte();
+                final ByteBuffer records = recordSource.getRecords(index,
+                                                                   getReadAheadRecords());
 
-                if (b == MARKER_RECORD_VALID)
+                if (matcher.matches(records,
+                                    records.position()))
                 {
-                    return false;
+                    break;
                 }
+
+                index = nextCandidate(index + 1);
+            }
+
+            nextMatch = index;
+            nextMatchFrom = recordCounter;
+
+            return index;
+        }
+
+        /*
+         * Returns the index of the first record from index on that is not skipped for being
+         * deleted.
+         */
+        private long nextCandidate(final long index)
+                           throws IOException, CorruptedTableException
+        {
+            if (includeDeleted || index >= header.getRecordCount())
+            {
+                return index;
             }
-             while (index < header.getRecordCount() && b == MARKER_RECORD_DELETED);
 
-            return true;
+            return getDeletedRecords().nextClearBit(index);
         }
 
         public Record next()
@@ -106,14 +159,11 @@ public class Table
 
             try
             {
-                Record record;
-
-                do
-                {
-                    record = getRecordAt(++recordCounter);
-                }
-                 while (! includeDeleted && record.isMarkedDeleted());
+                recordCounter = nextRecordIndex();
 
+                final Record record = getRecordAt(recordCounter,
+                                                  projection,
+                                                  getReadAheadRecords());
                 currentElementDeleted = false;
 
                 return record;
@@ -155,8 +205,20 @@ public class Table
     private final File tableFile;
     private final DbfHeader header = new DbfHeader();
     private final String charsetName;
+    private final CodePage codePage;
     private Memo memo = null;
     private RandomAccessFile raFile = null;
+    private RecordSource recordSource = null;
+    private OpenOptions openOptions = null;
+    private MemoCache databaseMemoCache = null;
+    private DurabilityPolicy databaseDurabilityPolicy = null;
+    private DurabilityPolicy durabilityPolicy = null;
+    private long unsyncedRecords = 0;
+    private long lastSyncTime = 0;
+    private int memoGeneration = 0;
+    private Schema schema = null;
+    private LongBitSet deletedRecords = null;
+    private TableAppender appender = null;
     private String accessMode;
 
     /**
@@ -202,6 +264,7 @@ public class Table
         this.charsetName = charsetName == null ? Charset.defaultCharset().name() : charsetName;
 
         Charset.forName(this.charsetName);
+        codePage = CodePage.forName(this.charsetName);
     }
 
     /**
@@ -292,12 +355,47 @@ public class Table
      */
     public void open(final String mode, final IfNonExistent ifNonExistent)
               throws IOException, CorruptedTableException
+    {
+        open(mode,
+             ifNonExistent,
+             OpenOptions.defaults());
+    }
+
+    /**
+     * Opens the table for reading and writing with the specified options. The table file must
+     * exist.
+     *
+     * @param options the options specifying how to access the table files
+     *
+     * @throws IOException if the table does not exist or could be opened
+     * @throws CorruptedTableException if the header of the table file was corrupt
+     */
+    public void open(final OpenOptions options)
+              throws IOException, CorruptedTableException
+    {
+        open("rw", IfNonExistent.ERROR, options);
+    }
+
+    /**
+     * Opens the table with given file access mode and options.
+     *
+     * @param mode file access mode, either "r" or "rw"
+     * @param ifNonExistent what to do if the table file does not exist yet
+     * @param options the options specifying how to access the table files
+     *
+     * @throws IOException if the table does not exist or could be opened
+     * @throws CorruptedTableException if the header of the table file was corrupt
+     */
+    public void open(final String mode, final IfNonExistent ifNonExistent, final OpenOptions options)
+              throws IOException, CorruptedTableException
     {
         if (tableFile.exists())
         {
             raFile = new RandomAccessFile(tableFile, mode);
             accessMode = mode;
+            rollBackInterruptedBatch();
             header.readAll(raFile);
+            finishInterruptedMemoPack();
         }
         else if (ifNonExistent.isCreate())
         {
@@ -309,6 +407,140 @@ public class Table
         {
             throw new FileNotFoundException("Input file " + tableFile + " not found");
         }
+        else
+        {
+            return;
+        }
+
+        openOptions = options;
+        schema = new Schema(header.getFields());
+        recordSource = createRecordSource();
+        durabilityPolicy = createDurabilityPolicy();
+        unsyncedRecords = 0;
+        lastSyncTime = System.nanoTime();
+    }
+
+    private DurabilityPolicy createDurabilityPolicy()
+    {
+        if (openOptions.getDurabilityPolicy() != null)
+        {
+            return openOptions.getDurabilityPolicy();
+        }
+
+        if (databaseDurabilityPolicy != null)
+        {
+            return databaseDurabilityPolicy;
+        }
+
+        return DurabilityPolicy.none();
+    }
+
+    /*
+     * Rolls back the batch that was being committed when the program stopped, if any. See
+     * TableBatch.
+     */
+    private void rollBackInterruptedBatch()
+                                   throws IOException, CorruptedTableException
+    {
+        final Journal journal = createJournal();
+
+        if (! journal.exists())
+        {
+            return;
+        }
+
+        if (accessMode.equals("r"))
+        {
+            if (journal.isComplete())
+            {
+                throw new CorruptedTableException("Table file " + tableFile
+                                                  + " holds a batch that was not committed, open it for writing to"
+                                                  + " roll the batch back");
+            }
+
+            return;
+        }
+
+        journal.rollBack(raFile);
+        journal.delete();
+        raFile.seek(0);
+    }
+
+    private Journal createJournal()
+    {
+        return new Journal(new File(tableFile.getPath() + ".jnl"));
+    }
+
+    /**
+     * Returns a read-only view of this table that can be used by several threads at once, so that
+     * one open table can serve concurrent lookups and scans. The view reads the table file with
+     * positional reads, each into a buffer of its own, and does not use or move the file pointer of
+     * the table, so it can also be used alongside the other read methods of this table. The view is
+     * valid until the table is closed.
+     *
+     * @return a <code>TableReader</code>
+     * @throws IllegalStateException if the table is not open
+     * @see TableReader
+     */
+    public TableReader reader()
+    {
+        checkOpen();
+
+        return new TableReader(this);
+    }
+
+    /**
+     * Reads the record at <code>index</code> with a positional read into a buffer of its own, so
+     * that it can be called from several threads at once.
+     */
+    Record readRecordAt(final long index, final boolean[] projection)
+                 throws IOException, CorruptedTableException
+    {
+        checkOpen();
+
+        if (index < 0 || index >= header.getRecordCount())
+        {
+            throw new NoSuchElementException(String.format("Invalid index: %d", index));
+        }
+
+        final RecordSource source = new ChannelRecordSource(raFile.getChannel(),
+                                                            header,
+                                                            header.getRecordLength());
+
+        return getRecord(source.getRecords(index, 1),
+                         projection);
+    }
+
+    /**
+     * Creates a record source that does not use the file pointer of the table file, so that it can
+     * read records concurrently with other sources.
+     */
+    RecordSource createPositionalRecordSource()
+    {
+        checkOpen();
+
+        if (openOptions.isMemoryMapped())
+        {
+            return new MappedRecordSource(raFile.getChannel(),
+                                          header,
+                                          openOptions.getMapWindowSize());
+        }
+
+        return new ChannelRecordSource(raFile.getChannel(),
+                                       header,
+                                       openOptions.getReadAheadSize());
+    }
+
+    private RecordSource createRecordSource()
+    {
+        if (openOptions.isMemoryMapped())
+        {
+            return new MappedRecordSource(raFile.getChannel(),
+                                          header,
+                                          openOptions.getMapWindowSize());
+        }
+
+        return new FileRecordSource(raFile, header);
     }
 
     /**
@@ -321,14 +553,32 @@ public class Table
     {
         try
         {
-            if (raFile != null)
+            try
+            {
+                if (appender != null)
+                {
+                    appender.close();
+                }
+
+                if (raFile != null && unsyncedRecords > 0 && durabilityPolicy.isSyncOnClose())
+                {
+                    sync();
+                }
+            }
+            finally
             {
-                raFile.close();
+                if (raFile != null)
+                {
+                    raFile.close();
+                }
             }
         }
         finally
         {
+            appender = null;
             raFile = null;
+            recordSource = null;
+            deletedRecords = null;
             ensureMemoClosed();
         }
     }
@@ -343,6 +593,7 @@ public class Table
     {
         close();
         tableFile.delete();
+        createJournal().delete();
 
         if (memo != null)
         {
@@ -388,6 +639,19 @@ public class Table
         return header.getFields();
     }
 
+    /**
+     * Returns the {@link Schema} of this table, which describes the fields and their ordinal
+     * numbers. The records read from this table can be accessed by these ordinals.
+     *
+     * @return the schema
+     */
+    public Schema getSchema()
+    {
+        checkOpen();
+
+        return schema;
+    }
+
     /**
      * Returns a {@link Record} iterator. Note that, to use the iterator the table must be opened.
      * This iterator skips the records flagged as "deleted".
@@ -412,151 +676,884 @@ public class Table
      */
     public Iterator<Record> recordIterator(final boolean includeDeleted)
     {
-        return new RecordIterator(includeDeleted);
+        return new RecordIterator(includeDeleted, null);
     }
 
     /**
-     * Constructs and adds a record. The fields values for the record must be provided as parameters
-     * in the same order that the fields are provided in the field list.
+     * Returns a {@link Record} iterator that only reads the specified fields. The bytes of the
+     * other fields are skipped without being decoded, and their memo files are never accessed, so
+     * the cost of the iteration depends on the fields requested rather than on the width of the
+     * table. In the returned records, fields that were not requested have the value
+     * <code>null</code>. This iterator skips the records flagged as "deleted".
      *
-     * @throws IOException if the record could not be written to the database file
-     * @throws CorruptedTableException if the table was corrupt
-     * @throws ValueTooLargeException if a field value exceeds the length of its corresponding field
-     * @throws RecordTooLargeException if more field values are provided than there are field in
-     *             this table
+     * @param fieldNames the names of the fields to read
+     * @return a <code>Record</code> iterator
+     * @throws IllegalArgumentException if one of the field names does not exist in this table
      */
-    public void addRecord(final Object... fieldValues)
-                   throws IOException, DbfLibException
+    public Iterator<Record> recordIterator(final Set<String> fieldNames)
     {
-        if (fieldValues.length > header.getFields().size())
-        {
-            throw new RecordTooLargeException("Trying to add " + fieldValues.length + " fields while there are only "
-                                              + header.getFields().size() + " defined in the table file");
-        }
-
-        final Map<String, Value> map = new HashMap<String, Value>();
-        final Iterator<Field> fieldIterator = header.getFields().iterator();
-
-        for (final Object fieldValue : fieldValues)
-        {
-            final Field field = fieldIterator.next();
-
-            map.put(field.getName(),
-                    createValueObject(fieldValue));
-        }
-
-        addRecord(new Record(map));
+        return recordIterator(false, fieldNames);
     }
 
-    private Value createValueObject(final Object value)
+    /**
+     * As {@link #recordIterator(Set)}, but also allows to include the records flagged as
+     * "deleted".
+     *
+     * @param includeDeleted if <code>true</code> deleted records are returned, otherwise not
+     * @param fieldNames the names of the fields to read
+     * @return a <code>Record</code> iterator
+     * @throws IllegalArgumentException if one of the field names does not exist in this table
+     */
+    public Iterator<Record> recordIterator(final boolean includeDeleted, final Set<String> fieldNames)
     {
-        if (value instanceof Number)
-        {
-            return new NumberValue((Number) value);
-        }
-        else if (value instanceof String)
-        {
-            return new StringValue((String) value, charsetName);
-        }
-        else if (value instanceof Boolean)
-        {
-            return new BooleanValue((Boolean) value);
-        }
-        else if (value instanceof Date)
-        {
-            return new DateValue((Date) value);
-        }
-        else if (value instanceof byte[])
-        {
-            return new ByteArrayValue((byte[]) value);
-        }
-
-        return null;
+        return new RecordIterator(includeDeleted,
+                                  createProjection(fieldNames));
     }
 
     /**
-     * Adds a record to this table.
-     *
-     * @param record the record to add.
+     * Returns a {@link Record} iterator over the records that match <code>predicate</code>. The
+     * predicate is tested against the raw bytes of each record, so records that do not match are
+     * never decoded. This iterator skips the records flagged as "deleted".
      *
-     * @throws IOException if the record could not be written to the database file
-     * @throws CorruptedTableException if the table was corrupt
-     * @throws ValueTooLargeException if a field value exceeds the length of its corresponding field
+     * @param predicate the condition the records must meet
+     * @return a <code>Record</code> iterator
+     * @throws IllegalArgumentException if the predicate refers to a field that does not exist in
+     *             this table, or does not fit its type
+     */
+    public Iterator<Record> recordIterator(final RecordPredicate predicate)
+    {
+        return recordIterator(false, null, predicate);
+    }
+
+    /**
+     * As {@link #recordIterator(RecordPredicate)}, but also allows to include the records flagged
+     * as "deleted" and to read only some of the fields, as {@link #recordIterator(boolean, Set)}.
      *
-     * @see Record
+     * @param includeDeleted if <code>true</code> deleted records are returned, otherwise not
+     * @param fieldNames the names of the fields to read, or <code>null</code> to read all fields
+     * @param predicate the condition the records must meet
+     * @return a <code>Record</code> iterator
+     * @throws IllegalArgumentException if one of the field names does not exist in this table, or
+     *             if the predicate does not fit the fields of this table
      */
-    public void addRecord(final Record record)
-                   throws IOException, DbfLibException
+    public Iterator<Record> recordIterator(final boolean includeDeleted, final Set<String> fieldNames,
+                                           final RecordPredicate predicate)
     {
-        updateRecordAt(header.getRecordCount(),
-                       record);
-        raFile.writeByte(MARKER_EOF);
-        writeRecordCount(header.getRecordCount() + 1);
+        return new RecordIterator(includeDeleted,
+                                  fieldNames == null ? null : createProjection(fieldNames),
+                                  bind(predicate));
     }
 
-    public void updateRecordAt(final int index, final Record record)
-                        throws IOException, DbfLibException
+    /**
+     * Binds <code>predicate</code> to the fields of this table. Every reader needs its own
+     * matcher.
+     */
+    RecordMatcher bind(final RecordPredicate predicate)
     {
-        checkOpen();
-        jumpToRecordAt(index);
-        raFile.writeByte(MARKER_RECORD_VALID);
+        return predicate.bind(schema, charsetName);
+    }
 
-        for (final Field field : header.getFields())
-        {
-            byte[] raw = record.getRawValue(field);
+    private int getReadAheadRecords()
+    {
+        return Math.max(openOptions.getReadAheadSize() / header.getRecordLength(), 1);
+    }
 
-            if (raw == null)
-            {
-                raw = Util.repeat((byte) ' ',
-                                  field.getLength());
-            }
-            else if (field.getType() == Type.MEMO || field.getType() == Type.BINARY || field.getType() == Type.GENERAL)
-            {
-                final int i = writeMemo(raw);
+    /*
+     * Translates a set of field names into a flag per field, telling whether to decode it.
+     */
+    boolean[] createProjection(final Set<String> fieldNames)
+    {
+        checkOpen();
 
-                if (header.getVersion() == Version.DBASE_4 || header.getVersion() == Version.DBASE_5)
-                {
-                    raw = String.format("%0" + field.getLength() + "d", i).getBytes();
-                }
-                else
-                {
-                    raw = String.format("%" + field.getLength() + "d", i).getBytes();
-                }
-            }
+        final boolean[] projection = new boolean[schema.getFieldCount()];
 
-            raFile.write(raw);
+        for (final String fieldName : fieldNames)
+        {
+            final int ordinal = schema.getOrdinal(fieldName);
 
-            if (raw.length < field.getLength())
+            if (ordinal == -1)
             {
-                raFile.write(Util.repeat((byte) 0x00, field.getLength() - raw.length));
+                throw new IllegalArgumentException("No such field: " + fieldName);
             }
+
+            projection[ordinal] = true;
         }
+
+        return projection;
     }
 
     /**
-     * Flags the record at <code>index</code> as "deleted". To physically remove "deleted" records,
-     * a call to {@link #pack()} is necessary.
+     * Returns a sequential stream of the records in this table, skipping the records flagged as
+     * "deleted".
      *
-     * @param index the index of the record to delete
-     * @throws IOException
+     * @return a <code>Stream</code> of records
+     *
+     * @see #stream(boolean, Set)
      */
-    public void deleteRecordAt(final int index)
-                        throws IOException
+    public Stream<Record> stream()
     {
-        checkOpen();
-        jumpToRecordAt(index);
-        raFile.writeByte(MARKER_RECORD_DELETED);
+        return stream(false, null);
     }
 
-    private int writeMemo(final byte[] memoText)
-                   throws IOException, CorruptedTableException
+    /**
+     * Returns a parallel stream of the records in this table, skipping the records flagged as
+     * "deleted".
+     *
+     * @return a parallel <code>Stream</code> of records
+     *
+     * @see #stream(boolean, Set)
+     */
+    public Stream<Record> parallelStream()
     {
-        ensureMemoOpened(accessMode, IfNonExistent.CREATE);
-
-        return memo.writeMemo(memoText);
+        return stream(false, null).parallel();
     }
 
-    private void writeRecordCount(final int recordCount)
+    /**
+     * Returns a sequential stream of the records in this table. The stream can be made parallel
+     * with {@link Stream#parallel()}, in which case the table is split into ranges of records that
+     * are read and decoded concurrently. Each range reads the table file with positional reads, so
+     * ranges do not interfere with each other or with other reads from this table. The records
+     * in the table when this method is called are streamed; the table must stay open until the
+     * stream has been consumed.
+     *
+     * @param includeDeleted if <code>true</code>, the records flagged as "deleted" are included
+     * @param fieldNames names of the fields to read, or <code>null</code> to read all fields
+     * @return a <code>Stream</code> of records
+     * @throws IllegalArgumentException if one of the field names does not exist in this table
+     */
+    public Stream<Record> stream(final boolean includeDeleted, final Set<String> fieldNames)
+    {
+        return stream(includeDeleted, fieldNames, null);
+    }
+
+    /**
+     * As {@link #stream(boolean, Set)}, but only streams the records that match
+     * <code>predicate</code>. The predicate is tested against the raw bytes of each record, so
+     * records that do not match are never decoded.
+     *
+     * @param includeDeleted if <code>true</code>, the records flagged as "deleted" are included
+     * @param fieldNames names of the fields to read, or <code>null</code> to read all fields
+     * @param predicate the condition the records must meet, or <code>null</code> to stream all
+     *            records
+     * @return a <code>Stream</code> of records
+     * @throws IllegalArgumentException if one of the field names does not exist in this table, or
+     *             if the predicate does not fit the fields of this table
+     */
+    public Stream<Record> stream(final boolean includeDeleted, final Set<String> fieldNames,
+                                 final RecordPredicate predicate)
+    {
+        return StreamSupport.stream(spliterator(includeDeleted, fieldNames, predicate),
+                                    false);
+    }
+
+    /**
+     * Creates a spliterator over all records, that reads with its own positional record sources.
+     */
+    RecordSpliterator spliterator(final boolean includeDeleted, final Set<String> fieldNames,
+                                  final RecordPredicate predicate)
+    {
+        checkOpen();
+
+        final boolean[] projection = fieldNames == null ? null : createProjection(fieldNames);
+
+        if (predicate != null)
+        {
+            /*
+             * Bind once here to report errors early; each range binds its own matcher.
+             */
+            bind(predicate);
+        }
+
+        return spliterator(0, header.getRecordCount(), includeDeleted, projection, predicate);
+    }
+
+    /**
+     * Creates a spliterator over the records from <code>startIndex</code> up to
+     * <code>endIndex</code>.
+     */
+    RecordSpliterator spliterator(final long startIndex, final long endIndex, final boolean includeDeleted,
+                                  final boolean[] projection, final RecordPredicate predicate)
+    {
+        return new RecordSpliterator(this,
+                                     header.getRecordLength(),
+                                     startIndex,
+                                     endIndex,
+                                     includeDeleted,
+                                     projection,
+                                     predicate);
+    }
+
+    /**
+     * Returns a {@link RecordCursor} positioned before the first record. The cursor skips the
+     * records flagged as "deleted".
+     *
+     * @return a <code>RecordCursor</code>
+     *
+     * @see #recordCursor(boolean)
+     */
+    public RecordCursor recordCursor()
+    {
+        return recordCursor(false);
+    }
+
+    /**
+     * Returns a {@link RecordCursor} positioned before the first record. A cursor is a faster
+     * alternative to the record iterator for scanning large tables, as it avoids creating objects
+     * for each record. If <code>includeDeleted</code> is <code>true</code>, records flagged as
+     * "deleted" are included.
+     *
+     * @param includeDeleted if <code>true</code> deleted records are visited, otherwise not
+     * @return a <code>RecordCursor</code>
+     */
+    public RecordCursor recordCursor(final boolean includeDeleted)
+    {
+        return recordCursor(includeDeleted, null);
+    }
+
+    /**
+     * Returns a {@link RecordCursor} positioned before the first record, that only visits the
+     * records that match <code>predicate</code>.
+     *
+     * @param includeDeleted if <code>true</code> deleted records are visited, otherwise not
+     * @param predicate the condition the records must meet, or <code>null</code> to visit all
+     *            records
+     * @return a <code>RecordCursor</code>
+     * @throws IllegalArgumentException if the predicate does not fit the fields of this table
+     */
+    public RecordCursor recordCursor(final boolean includeDeleted, final RecordPredicate predicate)
+    {
+        checkOpen();
+
+        return recordCursor(createRecordSource(), includeDeleted, predicate);
+    }
+
+    RecordCursor recordCursor(final RecordSource source, final boolean includeDeleted, final RecordPredicate predicate)
+    {
+        return new RecordCursor(this,
+                                source,
+                                schema,
+                                header.getRecordLength(),
+                                charsetName,
+                                includeDeleted,
+                                predicate == null ? null : bind(predicate));
+    }
+
+    /**
+     * Constructs and adds a record. The fields values for the record must be provided as parameters
+     * in the same order that the fields are provided in the field list.
+     *
+     * @throws IOException if the record could not be written to the database file
+     * @throws CorruptedTableException if the table was corrupt
+     * @throws ValueTooLargeException if a field value exceeds the length of its corresponding field
+     * @throws RecordTooLargeException if more field values are provided than there are field in
+     *             this table
+     */
+    public void addRecord(final Object... fieldValues)
+                   throws IOException, DbfLibException
+    {
+        addRecord(createRecord(fieldValues));
+    }
+
+    /**
+     * Creates a record from field values in the order of the fields of this table.
+     */
+    Record createRecord(final Object... fieldValues)
+                 throws RecordTooLargeException
+    {
+        if (fieldValues.length > header.getFields().size())
+        {
+            throw new RecordTooLargeException("Trying to add " + fieldValues.length + " fields while there are only "
+                                              + header.getFields().size() + " defined in the table file");
+        }
+
+        final Map<String, Value> map = new HashMap<String, Value>();
+        final Iterator<Field> fieldIterator = header.getFields().iterator();
+
+        for (final Object fieldValue : fieldValues)
+        {
+            final Field field = fieldIterator.next();
+
+            map.put(field.getName(),
+                    createValueObject(fieldValue));
+        }
+
+        return new Record(map);
+    }
+
+    private Value createValueObject(final Object value)
+    {
+        if (value instanceof Number)
+        {
+            return new NumberValue((Number) value);
+        }
+        else if (value instanceof String)
+        {
+            return new StringValue((String) value, charsetName, codePage);
+        }
+        else if (value instanceof Boolean)
+        {
+            return new BooleanValue((Boolean) value);
+        }
+        else if (value instanceof Date)
+        {
+            return new DateValue((Date) value);
+        }
+        else if (value instanceof byte[])
+        {
+            return new ByteArrayValue((byte[]) value);
+        }
+
+        return null;
+    }
+
+    /**
+     * Adds a record to this table. The record is added to the end of the table, unless the table
+     * was opened with {@link OpenOptions#setReuseDeletedRecords(boolean)} and has records flagged
+     * as "deleted", in which case it takes the place of the first of those.
+     *
+     * @param record the record to add.
+     *
+     * @throws IOException if the record could not be written to the database file
+     * @throws CorruptedTableException if the table was corrupt
+     * @throws ValueTooLargeException if a field value exceeds the length of its corresponding field
+     *
+     * @see Record
+     */
+    public void addRecord(final Record record)
+                   throws IOException, DbfLibException
+    {
+        checkOpen();
+
+        if (openOptions.isReuseDeletedRecords())
+        {
+            final long freeSlot = getDeletedRecords().nextSetBit(0);
+
+            if (freeSlot != -1)
+            {
+                updateRecordAt(freeSlot, record);
+                recordsWritten(1);
+
+                return;
+            }
+        }
+
+        if (header.getRecordCount() == MAX_RECORD_COUNT)
+        {
+            throw new IOException("Table is full, it already has the maximum of " + MAX_RECORD_COUNT + " records");
+        }
+
+        updateRecordAt(header.getRecordCount(),
+                       record);
+        raFile.writeByte(MARKER_EOF);
+        writeRecordCount(header.getRecordCount() + 1);
+        recordsWritten(1);
+    }
+
+    public void updateRecordAt(final int index, final Record record)
+                        throws IOException, DbfLibException
+    {
+        updateRecordAt((long) index, record);
+        recordsWritten(1);
+    }
+
+    private void updateRecordAt(final long index, final Record record)
+                         throws IOException, DbfLibException
+    {
+        checkOpen();
+
+        final byte[] recordBytes = new byte[header.getRecordLength()];
+        final int length = encodeRecord(record, recordBytes, 0);
+
+        jumpToRecordAt(index);
+        raFile.write(recordBytes, 0, length);
+        recordSource.recordWritten(index, 0, recordBytes, length);
+
+        if (deletedRecords != null)
+        {
+            deletedRecords.clear(index);
+        }
+    }
+
+    /**
+     * Encodes <code>record</code> into <code>bytes</code> at <code>offset</code>, as a record that
+     * is not flagged as "deleted". The values of memo fields are written to the memo file right
+     * away. Returns the number of bytes encoded, which is the record length.
+     */
+    int encodeRecord(final Record record, final byte[] bytes, final int offset)
+              throws IOException, DbfLibException
+    {
+        int position = offset;
+        bytes[position++] = MARKER_RECORD_VALID;
+
+        for (final Field field : header.getFields())
+        {
+            encodeField(record, field, bytes, position);
+            position += field.getLength();
+        }
+
+        return position - offset;
+    }
+
+    private void encodeField(final Record record, final Field field, final byte[] bytes, final int offset)
+                      throws IOException, DbfLibException
+    {
+        if (field.getType() == Type.MEMO || field.getType() == Type.BINARY || field.getType() == Type.GENERAL)
+        {
+            encodeMemoPointer(field,
+                              record.getRawValue(field),
+                              bytes,
+                              offset);
+        }
+        else if (! record.encodeValue(field, bytes, offset))
+        {
+            Arrays.fill(bytes, offset, offset + field.getLength(), (byte) ' ');
+        }
+    }
+
+    /**
+     * Sets one field of the record at <code>index</code> to <code>value</code>. Only the bytes of
+     * that field are written to the table file; the other fields of the record are left as they
+     * are. The memo file is only written to if the field itself is a memo field, in which case the
+     * new value is written as a new memo, as with {@link #updateRecordAt(int, Record)}.
+     *
+     * @param index the index of the record to update
+     * @param fieldName the name of the field to update
+     * @param value the new value, of one of the types accepted by {@link #addRecord(Object...)}, or
+     *            <code>null</code> to make the field empty
+     * @throws IOException if the table file could not be written to
+     * @throws DbfLibException if the value cannot be stored in the field
+     * @throws IllegalArgumentException if the table has no field with that name
+     * @throws NoSuchElementException if there is no record at <code>index</code>
+     */
+    public void updateField(final int index, final String fieldName, final Object value)
+                     throws IOException, DbfLibException
+    {
+        updateField(new int[] { index },
+                    fieldName,
+                    value);
+    }
+
+    /**
+     * Sets one field of each of the records at <code>indexes</code> to the same value, as with
+     * {@link #updateField(int, String, Object)}. The value is encoded only once and the records are
+     * written in the order of their indexes. A new value of a memo field is written to the memo
+     * file only once as well, and all records point to it. Nothing is written if any of the indexes
+     * is invalid.
+     *
+     * @param indexes the indexes of the records to update
+     * @param fieldName the name of the field to update
+     * @param value the new value, or <code>null</code> to make the field empty
+     * @throws IOException if the table file could not be written to
+     * @throws DbfLibException if the value cannot be stored in the field
+     * @throws IllegalArgumentException if the table has no field with that name
+     * @throws NoSuchElementException if there is no record at one of the indexes
+     */
+    public void updateField(final int[] indexes, final String fieldName, final Object value)
+                     throws IOException, DbfLibException
+    {
+        checkOpen();
+
+        final int ordinal = schema.getOrdinal(fieldName);
+
+        if (ordinal == -1)
+        {
+            throw new IllegalArgumentException("No such field: " + fieldName);
+        }
+
+        final int[] sortedIndexes = indexes.clone();
+        Arrays.sort(sortedIndexes);
+
+        for (final int index : sortedIndexes)
+        {
+            if (index < 0 || index >= header.getRecordCount())
+            {
+                throw new NoSuchElementException(String.format("Invalid index: %d", index));
+            }
+        }
+
+        final Field field = schema.getField(ordinal);
+        final int offset = schema.getOffset(ordinal);
+        final byte[] bytes = new byte[field.getLength()];
+        final Map<String, Value> map = new HashMap<String, Value>();
+        map.put(fieldName,
+                createValueObject(value));
+        encodeField(new Record(map),
+                    field,
+                    bytes,
+                    0);
+
+        for (final int index : sortedIndexes)
+        {
+            raFile.seek(header.getLength() + ((long) index * header.getRecordLength()) + offset);
+            raFile.write(bytes);
+            recordSource.recordWritten(index, offset, bytes, bytes.length);
+        }
+
+        recordsWritten(sortedIndexes.length);
+    }
+
+    /*
+     * Writes the memo text to the memo file and the index of its first block into the field.
+     */
+    private void encodeMemoPointer(final Field field, final byte[] memoText, final byte[] bytes, final int offset)
+                            throws IOException, DbfLibException
+    {
+        if (memoText == null)
+        {
+            Arrays.fill(bytes, offset, offset + field.getLength(), (byte) ' ');
+
+            return;
+        }
+
+        formatMemoPointer(field,
+                          writeMemo(memoText),
+                          bytes,
+                          offset);
+    }
+
+    private void formatMemoPointer(final Field field, final long blockIndex, final byte[] bytes, final int offset)
+                            throws ValueTooLargeException
+    {
+        final byte pad =
+            header.getVersion() == Version.DBASE_4 || header.getVersion() == Version.DBASE_5 ? (byte) '0' : (byte) ' ';
+
+        if (! NumberCodec.formatLong(blockIndex, field.getLength(), pad, bytes, offset))
+        {
+            throw new ValueTooLargeException("Memo block index " + blockIndex + " does not fit in field "
+                                             + field.getName());
+        }
+    }
+
+    /**
+     * Returns an appender that adds records to the end of this table in bulk, using a buffer of
+     * about {@link #DEFAULT_BUFFER_SIZE} bytes.
+     *
+     * @return a <code>TableAppender</code>
+     * @throws IllegalStateException if the table is not open, or if another appender is still
+     *             open
+     * @see #appender(int)
+     */
+    public TableAppender appender()
+    {
+        return appender(DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Returns an appender that adds records to the end of this table in bulk. The appender encodes
+     * the records into a buffer of about <code>bufferSize</code> bytes and writes it to the table
+     * file each time it is full. The header and the end-of-file marker are only brought up to date
+     * when the appender is flushed or closed, instead of after every record as with
+     * {@link #addRecord(Record)}. Only one appender can be open at a time. Closing the table closes
+     * the appender.
+     *
+     * @param bufferSize the size of the buffer in bytes; it always holds at least one record
+     * @return a <code>TableAppender</code>
+     * @throws IllegalStateException if the table is not open, or if another appender is still
+     *             open
+     * @see TableAppender
+     */
+    public TableAppender appender(final int bufferSize)
+    {
+        checkOpen();
+
+        if (appender != null)
+        {
+            throw new IllegalStateException("Another appender is still open");
+        }
+
+        appender =
+            new TableAppender(this,
+                              header.getRecordLength(),
+                              Math.max(bufferSize / header.getRecordLength(), 1));
+
+        return appender;
+    }
+
+    /**
+     * Writes <code>length</code> bytes of whole records to the end of the table. The record count
+     * is updated in memory only; {@link #finishAppend()} writes it to the header.
+     */
+    void appendRecords(final byte[] bytes, final int length)
+                throws IOException
+    {
+        checkOpen();
+
+        final long recordCount = header.getRecordCount();
+        final long nRecords = length / header.getRecordLength();
+
+        if (recordCount + nRecords > MAX_RECORD_COUNT)
+        {
+            throw new IOException("Table is full, it can have at most " + MAX_RECORD_COUNT + " records");
+        }
+
+        jumpToRecordAt(recordCount);
+        raFile.write(bytes, 0, length);
+        header.setRecordCount(recordCount + nRecords);
+
+        /*
+         * The durability policy is applied once the header is up to date, in finishAppend().
+         */
+        unsyncedRecords += nRecords;
+    }
+
+    /**
+     * Writes the end-of-file marker after the last record, and the modified date and record count
+     * to the header.
+     */
+    void finishAppend()
+               throws IOException
+    {
+        checkOpen();
+        jumpToRecordAt(header.getRecordCount());
+        raFile.writeByte(MARKER_EOF);
+        writeModifiedDateAndRecordCount();
+        recordsWritten(0);
+    }
+
+    private void writeModifiedDateAndRecordCount()
+                                          throws IOException
+    {
+        /*
+         * The record count follows the modified date in the header, so both go in one write.
+         */
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream dataOutput = new DataOutputStream(bytes);
+        header.writeModifiedDate(dataOutput);
+        header.writeRecordCount(dataOutput);
+        dataOutput.flush();
+        raFile.seek(DbfHeader.OFFSET_MODIFIED_DATE);
+        raFile.write(bytes.toByteArray());
+    }
+
+    void appenderClosed()
+    {
+        appender = null;
+    }
+
+    /**
+     * Returns a batch that collects changes to this table and applies them all at once, so that
+     * after a crash either all or none of them are in the table file. Several batches can be used
+     * at the same time, but they are committed one after the other.
+     *
+     * @return a <code>TableBatch</code>
+     * @throws IllegalStateException if the table is not open
+     * @see TableBatch
+     */
+    public TableBatch batch()
+    {
+        checkOpen();
+
+        return new TableBatch(this,
+                              header.getRecordLength());
+    }
+
+    /**
+     * Writes the records in <code>writes</code>, by index, and appends the records in
+     * <code>additions</code>, under the protection of a journal. See {@link TableBatch}. A record
+     * in <code>writes</code> that is only one byte long is a "deleted" flag.
+     */
+    void commitBatch(final SortedMap<Long, byte[]> writes, final byte[] additions)
+              throws IOException
+    {
+        checkOpen();
+
+        final long recordCount = header.getRecordCount();
+        final long nAdditions = additions.length / header.getRecordLength();
+
+        if (writes.isEmpty() && nAdditions == 0)
+        {
+            return;
+        }
+
+        if (accessMode.equals("r"))
+        {
+            throw new IOException("Table file " + tableFile + " is opened for reading only");
+        }
+
+        if (! writes.isEmpty() && writes.lastKey() >= recordCount)
+        {
+            throw new NoSuchElementException(String.format("Invalid index: %d", writes.lastKey()));
+        }
+
+        if (recordCount + nAdditions > MAX_RECORD_COUNT)
+        {
+            throw new IOException("Table is full, it can have at most " + MAX_RECORD_COUNT + " records");
+        }
+
+        final long[] indexes = new long[writes.size()];
+        int i = 0;
+
+        for (final Long index : writes.keySet())
+        {
+            indexes[i++] = index;
+        }
+
+        final Journal journal = createJournal();
+        journal.write(raFile, header, indexes);
+
+        boolean committed = false;
+
+        try
+        {
+            writeIncompleteTransaction(true);
+
+            for (final Map.Entry<Long, byte[]> write : writes.entrySet())
+            {
+                final long index = write.getKey();
+                final byte[] bytes = write.getValue();
+                jumpToRecordAt(index);
+                raFile.write(bytes);
+                recordSource.recordWritten(index, 0, bytes, bytes.length);
+
+                if (deletedRecords != null && bytes[0] == MARKER_RECORD_DELETED)
+                {
+                    deletedRecords.set(index);
+                }
+                else if (deletedRecords != null)
+                {
+                    deletedRecords.clear(index);
+                }
+            }
+
+            if (nAdditions > 0)
+            {
+                jumpToRecordAt(recordCount);
+                raFile.write(additions);
+                raFile.writeByte(MARKER_EOF);
+                header.setRecordCount(recordCount + nAdditions);
+                writeModifiedDateAndRecordCount();
+            }
+
+            writeIncompleteTransaction(false);
+
+            /*
+             * The commit is complete once the journal is deleted, so the files only have to be
+             * synced before that, once for the whole batch.
+             */
+            sync();
+            committed = true;
+        }
+        finally
+        {
+            if (! committed)
+            {
+                rollBackBatch(journal, recordCount);
+            }
+        }
+
+        journal.delete();
+    }
+
+    private void rollBackBatch(final Journal journal, final long recordCount)
+    {
+        header.setRecordCount(recordCount);
+        header.setIncompleteTransaction(false);
+        recordSource.invalidate();
+        deletedRecords = null;
+
+        try
+        {
+            journal.rollBack(raFile);
+            journal.delete();
+        }
+        catch (final IOException e)
+        {
+            /*
+             * The journal is left in place, so the batch is rolled back when the table is opened
+             * again. The original exception is more informative than this one.
+             */
+        }
+    }
+
+    private void writeIncompleteTransaction(final boolean incompleteTransaction)
+                                     throws IOException
+    {
+        header.setIncompleteTransaction(incompleteTransaction);
+        raFile.seek(DbfHeader.OFFSET_INCOMPLETE_TRANSATION);
+        header.writeIncompleteTransaction(raFile);
+    }
+
+    /**
+     * Flags the record at <code>index</code> as "deleted". To physically remove "deleted" records,
+     * a call to {@link #pack()} is necessary.
+     *
+     * @param index the index of the record to delete
+     * @throws IOException
+     */
+    public void deleteRecordAt(final int index)
+                        throws IOException
+    {
+        deleteRecordAt((long) index);
+        recordsWritten(1);
+    }
+
+    private void deleteRecordAt(final long index)
+                         throws IOException
+    {
+        checkOpen();
+        jumpToRecordAt(index);
+        raFile.writeByte(MARKER_RECORD_DELETED);
+        recordSource.recordWritten(index,
+                                   0,
+                                   new byte[] { MARKER_RECORD_DELETED },
+                                   1);
+
+        if (deletedRecords != null)
+        {
+            deletedRecords.set(index);
+        }
+    }
+
+    /**
+     * Returns the indices of the records flagged as "deleted". The set is built with one
+     * sequential pass over the table on first use and is kept up to date by the methods that write
+     * records, so that iterators can jump straight to the next record that is not deleted.
+     */
+    private LongBitSet getDeletedRecords()
+                                  throws IOException, CorruptedTableException
+    {
+        if (deletedRecords != null)
+        {
+            return deletedRecords;
+        }
+
+        final long recordCount = header.getRecordCount();
+        final int recordLength = header.getRecordLength();
+        final int maxBufferedRecords = Math.max(DEFAULT_BUFFER_SIZE / recordLength, 1);
+        final LongBitSet deleted = new LongBitSet(recordCount);
+        long index = 0;
+
+        while (index < recordCount)
+        {
+            final ByteBuffer buffer =
+                recordSource.getRecords(index,
+                                        (int) Math.min(maxBufferedRecords, recordCount - index));
+
+            for (int position = buffer.position(); position < buffer.limit(); position += recordLength)
+            {
+                if (buffer.get(position) == MARKER_RECORD_DELETED)
+                {
+                    deleted.set(index);
+                }
+
+                ++index;
+            }
+        }
+
+        deletedRecords = deleted;
+
+        return deletedRecords;
+    }
+
+    private synchronized long writeMemo(final byte[] memoText)
+                   throws IOException, CorruptedTableException
+    {
+        ensureMemoOpened(accessMode, IfNonExistent.CREATE);
+
+        return memo.writeMemo(memoText);
+    }
+
+    private void writeRecordCount(final long recordCount)
                            throws IOException
     {
         raFile.seek(DbfHeader.OFFSET_RECORD_COUNT);
@@ -564,6 +1561,39 @@ public class Table
         header.writeRecordCount(raFile);
     }
 
+    /*
+     * Counts records written to the table and syncs the files if the durability policy says so.
+     */
+    private void recordsWritten(final long nRecords)
+                         throws IOException
+    {
+        unsyncedRecords += nRecords;
+
+        if (durabilityPolicy.isSyncDue(unsyncedRecords, System.nanoTime() - lastSyncTime))
+        {
+            sync();
+        }
+    }
+
+    /*
+     * Forces the changes to the memo file and the table file to the storage device.
+     */
+    private void sync()
+               throws IOException
+    {
+        final long start = System.nanoTime();
+
+        if (memo != null)
+        {
+            memo.sync();
+        }
+
+        raFile.getChannel().force(true);
+        lastSyncTime = System.nanoTime();
+        unsyncedRecords = 0;
+        durabilityPolicy.synced(lastSyncTime - start);
+    }
+
     private void checkOpen()
     {
         if (raFile == null)
@@ -572,7 +1602,11 @@ public class Table
         }
     }
 
-    private byte[] readMemo(final String memoIndex)
+    /*
+     * The memo file is accessed through one file pointer, but records streamed in parallel read
+     * their memos from several threads, so memo access is synchronized.
+     */
+    synchronized byte[] readMemo(final String memoIndex)
                      throws IOException, CorruptedTableException
     {
         ensureMemoOpened(accessMode, IfNonExistent.ERROR);
@@ -582,7 +1616,59 @@ public class Table
             return null;
         }
 
-        return memo.readMemo(Integer.parseInt(memoIndex.trim()));
+        return memo.readMemo(Long.parseLong(memoIndex.trim()));
+    }
+
+    synchronized byte[] readMemo(final long blockIndex)
+             throws IOException, CorruptedTableException
+    {
+        checkOpen();
+        ensureMemoOpened(accessMode, IfNonExistent.ERROR);
+
+        return memo.readMemo(blockIndex);
+    }
+
+    /**
+     * Returns the memo with the specified index as a read-only buffer, which is a view of the
+     * mapped memo file if the table was opened with memory mapping.
+     */
+    synchronized ByteBuffer readMemoBuffer(final long blockIndex)
+                                    throws IOException, CorruptedTableException
+    {
+        checkOpen();
+        ensureMemoOpened(accessMode, IfNonExistent.ERROR);
+
+        return memo.readMemoBuffer(blockIndex);
+    }
+
+    /**
+     * Returns the number of times the memo file was replaced by {@link #packMemo()}. A memo
+     * pointer read before the last replacement no longer points to the right memo.
+     */
+    synchronized int getMemoGeneration()
+    {
+        return memoGeneration;
+    }
+
+    /**
+     * Creates a pointer to the memo with the specified index, or returns <code>null</code> if the
+     * index is blank. The memo itself is not read yet, but the memo file must exist and the index
+     * must lie within it.
+     */
+    private synchronized MemoPointer createMemoPointer(final String memoIndex)
+                                   throws IOException, CorruptedTableException
+    {
+        ensureMemoOpened(accessMode, IfNonExistent.ERROR);
+
+        if (memoIndex.trim().isEmpty())
+        {
+            return null;
+        }
+
+        final long blockIndex = Long.parseLong(memoIndex.trim());
+        memo.checkBlockIndex(blockIndex);
+
+        return new MemoPointer(this, blockIndex);
     }
 
     private void ensureMemoOpened(final String mode, final IfNonExistent ifNonExistent)
@@ -650,74 +1736,88 @@ public class Table
         memo =
             new Memo(memoFile,
                      header.getVersion());
+
+        if (openOptions != null && openOptions.getMemoCache() != null)
+        {
+            memo.setCache(openOptions.getMemoCache());
+        }
+        else
+        {
+            memo.setCache(databaseMemoCache);
+        }
+
+        if (openOptions != null && openOptions.isMemoryMapped())
+        {
+            memo.setMapWindowSize(openOptions.getMapWindowSize());
+        }
+
         memo.open(mode, ifNonExistent);
     }
 
     /**
-     * Read raw data for a number of rows that can fit into the buffer
-     * @param startIndex Index of first record
-     * @param bufferSize Buffer size to be used to store the raw data
+     * Get a specified number of records starting at a given index.
+     * @param startIndex Index of the first record to be read
+     * @param nRecords Number of records to be read
+     * @param bufferSize Buffer size to be used to read each batch of records
+     * @param includeDeleted Include deleted records
+     * @return List of Record objects
      * @throws IOException
+     * @throws CorruptedTableException
      */
-    private void bufferRecords(final int startIndex, final int bufferSize)
-                        throws IOException
+    public List<Record> getRecordsAt(final int startIndex, final int nRecords, final int bufferSize,
+                                     final boolean includeDeleted)
+                              throws IOException, CorruptedTableException
     {
-        if (buffer == null || startIndex < startBufferedRecord || startIndex >= startBufferedRecord + nBufferedRecord)
-        {
-            startBufferedRecord = startIndex;
-            nBufferedRecord =
-                Math.max(Math.min(bufferSize / header.getRecordLength(), header.getRecordCount() - startIndex + 1),
-                         1);
-
-            final int allocatedBufferSize = nBufferedRecord * header.getRecordLength();
-            buffer = new byte[allocatedBufferSize];
-            jumpToRecordAt(startIndex);
-            raFile.read(buffer);
-        }
+        return getRecordsAt(startIndex, nRecords, bufferSize, includeDeleted, null);
     }
 
     /**
-     * Get a specified number of records starting at a given index.
+     * Get a specified number of records starting at a given index, reading only the specified
+     * fields. Fields that were not requested have the value <code>null</code> in the returned
+     * records.
      * @param startIndex Index of the first record to be read
      * @param nRecords Number of records to be read
      * @param bufferSize Buffer size to be used to read each batch of records
      * @param includeDeleted Include deleted records
+     * @param fieldNames Names of the fields to read, or <code>null</code> to read all fields
      * @return List of Record objects
      * @throws IOException
      * @throws CorruptedTableException
+     * @throws IllegalArgumentException if one of the field names does not exist in this table
      */
     public List<Record> getRecordsAt(final int startIndex, final int nRecords, final int bufferSize,
-                                     final boolean includeDeleted)
+                                     final boolean includeDeleted, final Set<String> fieldNames)
                               throws IOException, CorruptedTableException
     {
         checkOpen();
 
-        final ArrayList<Record> records = new ArrayList<Record>(DEFAULT_RECORD_ARRAY_LIST_SIZE);
+        final boolean[] projection = fieldNames == null ? null : createProjection(fieldNames);
 
+        final ArrayList<Record> records = new ArrayList<Record>(DEFAULT_RECORD_ARRAY_LIST_SIZE);
+        final int recordLength = header.getRecordLength();
+        final int maxBufferedRecords = Math.max(bufferSize / recordLength, 1);
+        final int endIndex = (int) Math.min(header.getRecordCount(), (long) startIndex + nRecords);
         int currentRecord = startIndex;
-        DataInput dataInput = null;
 
-        while (currentRecord < header.getRecordCount() && currentRecord < startIndex + nRecords)
+        while (currentRecord < endIndex)
         {
-            if (currentRecord < startBufferedRecord || currentRecord >= startBufferedRecord + nBufferedRecord)
-            {
-                bufferRecords(currentRecord, bufferSize);
-                dataInput = null;
-            }
+            final ByteBuffer buffer =
+                recordSource.getRecords(currentRecord,
+                                        Math.min(maxBufferedRecords, endIndex - currentRecord));
 
-            if (dataInput == null)
+            while (buffer.hasRemaining())
             {
-                dataInput = new DataInputStream(new ByteArrayInputStream(buffer));
-            }
+                final int recordStart = buffer.position();
+                final Record record = getRecord(buffer, projection);
+                buffer.position(recordStart + recordLength);
 
-            final Record record = getRecord(dataInput);
+                if (includeDeleted || ! record.isMarkedDeleted())
+                {
+                    records.add(record);
+                }
 
-            if (includeDeleted || ! record.isMarkedDeleted())
-            {
-                records.add(record);
+                currentRecord++;
             }
-
-            currentRecord++;
         }
 
         return records;
@@ -738,6 +1838,25 @@ public class Table
         return getRecordsAt(startIndex, nRecords, DEFAULT_BUFFER_SIZE, includeDeleted);
     }
 
+    /**
+     * Get a specified number of records starting at a given index, reading only the specified
+     * fields.
+     * @param startIndex Index of the first record to be read
+     * @param nRecords Number of records to be read
+     * @param includeDeleted Include deleted records
+     * @param fieldNames Names of the fields to read
+     * @return List of Record objects
+     * @throws IOException
+     * @throws CorruptedTableException
+     * @see #getRecordsAt(int, int, int, boolean, Set)
+     */
+    public List<Record> getRecordsAt(final int startIndex, final int nRecords, final boolean includeDeleted,
+                                     final Set<String> fieldNames)
+                              throws IOException, CorruptedTableException
+    {
+        return getRecordsAt(startIndex, nRecords, DEFAULT_BUFFER_SIZE, includeDeleted, fieldNames);
+    }
+
     /**
      * Get a specified number of records starting at a given index. Deleted records are excluded.
      * @param startIndex Index of the first record to be read
@@ -766,7 +1885,7 @@ public class Table
         checkOpen();
 
         return getRecordsAt(0,
-                            header.getRecordCount(),
+                            getRecordCount(),
                             bufferSize,
                             includeDeleted);
     }
@@ -784,7 +1903,7 @@ public class Table
         checkOpen();
 
         return getRecordsAt(0,
-                            header.getRecordCount(),
+                            getRecordCount(),
                             bufferSize,
                             false);
     }
@@ -801,11 +1920,32 @@ public class Table
         checkOpen();
 
         return getRecordsAt(0,
-                            header.getRecordCount(),
+                            getRecordCount(),
                             DEFAULT_BUFFER_SIZE,
                             false);
     }
 
+    /**
+     * Get all records, reading only the specified fields.
+     * @param includeDeleted Include deleted records
+     * @param fieldNames Names of the fields to read
+     * @return List of Record objects
+     * @throws IOException
+     * @throws CorruptedTableException
+     * @see #getRecordsAt(int, int, int, boolean, Set)
+     */
+    public List<Record> getAllRecords(final boolean includeDeleted, final Set<String> fieldNames)
+                               throws IOException, CorruptedTableException
+    {
+        checkOpen();
+
+        return getRecordsAt(0,
+                            getRecordCount(),
+                            DEFAULT_BUFFER_SIZE,
+                            includeDeleted,
+                            fieldNames);
+    }
+
     /**
      * Returns the record at index. If the index points to a record beyond the last a
      * {@link NoSuchElementException} is thrown. Attention: records marked as deleted <em>are</em>
@@ -818,6 +1958,23 @@ public class Table
      */
     public Record getRecordAt(final int index)
                        throws IOException, CorruptedTableException
+    {
+        return getRecordAt(index, null);
+    }
+
+    private Record getRecordAt(final int index, final boolean[] projection)
+                        throws IOException, CorruptedTableException
+    {
+        return getRecordAt(index, projection, 1);
+    }
+
+    /**
+     * Reads the record at <code>index</code>, letting the record source read up to
+     * <code>readAhead</code> records at once, so that reading the following records is served from
+     * its buffer.
+     */
+    private Record getRecordAt(final long index, final boolean[] projection, final int readAhead)
+                        throws IOException, CorruptedTableException
     {
         checkOpen();
 
@@ -826,18 +1983,10 @@ public class Table
             throw new NoSuchElementException(String.format("Invalid index: %d", index));
         }
 
-        jumpToRecordAt(index);
-
-        /* Read one record worth of raw data and construct a
-           ByteArrayInputStream backed by a byte array */
-        byte[] buffer = new byte[header.getRecordLength()];
-        raFile.read(buffer);
-
-        DataInput dataInput = new DataInputStream(new ByteArrayInputStream(buffer));
-
         try
         {
-            return getRecord(dataInput);
+            return getRecord(recordSource.getRecords(index, readAhead),
+                             projection);
         }
         catch (NoSuchElementException ex)
         {
@@ -845,10 +1994,15 @@ public class Table
         }
     }
 
-    Record getRecord(DataInput dataInput)
+    /**
+     * Decodes the record starting at the current position of <code>buffer</code>. The position is
+     * advanced past the fields read, but not necessarily to the end of the record. If
+     * <code>projection</code> is not <code>null</code> only the fields flagged in it are decoded.
+     */
+    Record getRecord(final ByteBuffer buffer, final boolean[] projection)
               throws IOException, CorruptedTableException
     {
-        final byte firstByteOfRecord = dataInput.readByte();
+        final byte firstByteOfRecord = buffer.get();
 
         /*
          * This should actually not be possible, as we already checked the index against the record
@@ -859,53 +2013,76 @@ public class Table
             throw new NoSuchElementException();
         }
 
-        final Map<String, Value> recordValues = new HashMap<String, Value>();
+        final Value[] recordValues = new Value[schema.getFieldCount()];
 
-        for (final Field field : header.getFields())
+        for (int i = 0; i < recordValues.length; ++i)
         {
-            final byte[] rawData = Util.readStringBytes(dataInput,
+            final Field field = schema.getField(i);
+
+            if (projection != null && ! projection[i])
+            {
+                buffer.position(buffer.position() + field.getLength());
+
+                continue;
+            }
+
+            final byte[] rawData = Util.readStringBytes(buffer,
                                                         field.getLength());
 
             switch (field.getType())
             {
                 case NUMBER:
                 case FLOAT:
-                    recordValues.put(field.getName(),
-                                     new NumberValue(field, rawData));
+                    recordValues[i] = new NumberValue(field, rawData);
 
                     break;
 
                 case CHARACTER:
-                    recordValues.put(field.getName(),
-                                     new StringValue(field, rawData, charsetName));
+                    recordValues[i] = new StringValue(field, rawData, charsetName, codePage);
 
                     break;
 
                 case LOGICAL:
-                    recordValues.put(field.getName(),
-                                     new BooleanValue(field, rawData));
+                    recordValues[i] = new BooleanValue(field, rawData);
 
                     break;
 
                 case DATE:
-                    recordValues.put(field.getName(),
-                                     new DateValue(field, rawData));
+                    recordValues[i] = new DateValue(field, rawData);
 
                     break;
 
                 case MEMO:
 
+                    if (openOptions.isLazyMemo())
+                    {
+                        final MemoPointer memoPointer = createMemoPointer(new String(rawData));
+                        recordValues[i] =
+                            memoPointer == null ? null : new StringValue(field, memoPointer, charsetName, codePage);
+
+                        break;
+                    }
+
                     final byte[] memoTextBytes = readMemo(new String(rawData));
-                    recordValues.put(field.getName(),
-                                     memoTextBytes == null ? null : new StringValue(field, memoTextBytes, charsetName));
+                    recordValues[i] =
+                        memoTextBytes == null ? null : new StringValue(field, memoTextBytes, charsetName, codePage);
 
                     break;
 
                 case GENERAL:
                 case BINARY:
                 case PICTURE:
-                    recordValues.put(field.getName(),
-                                     new ByteArrayValue(readMemo(new String(rawData))));
+
+                    if (openOptions.isLazyMemo())
+                    {
+                        final MemoPointer memoPointer = createMemoPointer(new String(rawData));
+                        recordValues[i] =
+                            memoPointer == null ? new ByteArrayValue(null) : new ByteArrayValue(field, memoPointer);
+
+                        break;
+                    }
+
+                    recordValues[i] = new ByteArrayValue(readMemo(new String(rawData)));
 
                     break;
 
@@ -914,7 +2091,386 @@ public class Table
             }
         }
 
-        return new Record(firstByteOfRecord == MARKER_RECORD_DELETED, recordValues);
+        return new ArrayRecord(firstByteOfRecord == MARKER_RECORD_DELETED, schema, recordValues);
+    }
+
+    /**
+     * Removes the memos that are no longer referred to from the memo file. Memos are never
+     * overwritten: updating a memo field, or packing the table with {@link #pack()}, writes the
+     * memo anew at the end of the memo file, so the memo file only grows. This method copies the
+     * memos that the records of the table point to, in record order, to a new memo file, and the
+     * records, with their pointers updated, to a new table file. A memo that several records point
+     * to is copied once, and they all point to the copy. Records and memos are read and
+     * written in a single pass. Records flagged as "deleted" keep their memos; call
+     * <code>pack()</code> first to drop those as well.
+     * <p>
+     * Both new files are synced and then renamed over the originals, first the table file and then
+     * the memo file. If an error occurs before the table file is replaced, the table is left as it
+     * was. If the program stops between the two renames, the memo file is renamed when the table
+     * is opened for writing again. The directory of the table must be writable, and have room for
+     * a copy of the table and of the memos in use. As with {@link PackMode#NEW_FILE}, iterators,
+     * cursors, streams and readers created before packing must not be used afterwards. Memo
+     * values of records read before packing that were not accessed yet can no longer be read;
+     * trying to do so throws an <code>IllegalStateException</code>.
+     *
+     * @throws IOException if an I/O error occurs, or if the table is opened for reading only
+     * @throws DbfLibException if a memo pointer is corrupt
+     */
+    public synchronized void packMemo()
+                               throws IOException, DbfLibException
+    {
+        checkOpen();
+
+        final List<Integer> memoOrdinals = new ArrayList<Integer>();
+
+        for (int i = 0; i < schema.getFieldCount(); ++i)
+        {
+            if (isMemoType(schema.getField(i).getType()))
+            {
+                memoOrdinals.add(i);
+            }
+        }
+
+        if (memoOrdinals.isEmpty() || (memo == null && Util.getMemoFile(tableFile, header.getVersion()) == null))
+        {
+            return;
+        }
+
+        if (accessMode.equals("r"))
+        {
+            throw new IOException("Table file " + tableFile + " is opened for reading only");
+        }
+
+        ensureMemoOpened(accessMode, IfNonExistent.ERROR);
+
+        final File memoFile = memo.getFile();
+        final File packedMemoFile = new File(memoFile.getPath() + ".pack");
+        final File packedFile = new File(tableFile.getPath() + ".pack");
+
+        /*
+         * A packed memo file without a packed table file means that the table file was already
+         * replaced (see finishInterruptedMemoPack), so the packed memo file is deleted first and
+         * created last.
+         */
+        Files.deleteIfExists(packedMemoFile.toPath());
+        Files.deleteIfExists(packedFile.toPath());
+
+        final RandomAccessFile packedRaFile = new RandomAccessFile(packedFile, "rw");
+        final Memo packedMemo = new Memo(packedMemoFile,
+                                         header.getVersion());
+        packedMemo.setBlockLength(memo.getBlockLength());
+
+        boolean packed = false;
+
+        try
+        {
+            packedMemo.open("rw", IfNonExistent.CREATE);
+
+            final int recordLength = header.getRecordLength();
+            final int maxRecords = Math.max(DEFAULT_BUFFER_SIZE / recordLength, 1);
+            final byte[] headerBytes = new byte[header.getLength()];
+            final byte[] records = new byte[maxRecords * recordLength];
+            final long recordCount = header.getRecordCount();
+
+            /*
+             * Several records can point to the same memo, e.g. after updateField(int[], ...), so
+             * each memo is copied once and the later pointers to it get the same new index.
+             */
+            final Map<Long, Long> packedBlockIndexes = new HashMap<Long, Long>();
+
+            raFile.seek(0);
+            raFile.readFully(headerBytes);
+            packedRaFile.write(headerBytes);
+
+            for (long start = 0; start < recordCount; start += maxRecords)
+            {
+                final int length = (int) Math.min(maxRecords, recordCount - start) * recordLength;
+                jumpToRecordAt(start);
+                raFile.readFully(records, 0, length);
+
+                for (int record = 0; record < length; record += recordLength)
+                {
+                    for (final int ordinal : memoOrdinals)
+                    {
+                        final Field field = schema.getField(ordinal);
+                        final int offset = record + schema.getOffset(ordinal);
+
+                        if (NumberCodec.isBlank(records, offset, field.getLength()))
+                        {
+                            continue;
+                        }
+
+                        final long blockIndex = NumberCodec.parseLong(records, offset, field.getLength());
+                        Long packedBlockIndex = packedBlockIndexes.get(blockIndex);
+
+                        if (packedBlockIndex == null)
+                        {
+                            memo.checkBlockIndex(blockIndex);
+                            packedBlockIndex = packedMemo.writeMemo(memo.readMemo(blockIndex));
+                            packedBlockIndexes.put(blockIndex, packedBlockIndex);
+                        }
+
+                        formatMemoPointer(field,
+                                          packedBlockIndex,
+                                          records,
+                                          offset);
+                    }
+                }
+
+                packedRaFile.write(records, 0, length);
+            }
+
+            packedRaFile.writeByte(MARKER_EOF);
+
+            final long syncStart = System.nanoTime();
+            packedMemo.sync();
+            packedRaFile.getChannel().force(true);
+            durabilityPolicy.synced(System.nanoTime() - syncStart);
+            packed = true;
+        }
+        finally
+        {
+            try
+            {
+                packedMemo.close();
+            }
+            finally
+            {
+                packedRaFile.close();
+            }
+
+            if (! packed)
+            {
+                packedMemoFile.delete();
+                packedFile.delete();
+            }
+        }
+
+        ensureMemoClosed();
+
+        try
+        {
+            moveOverTableFile(packedFile);
+        }
+        catch (final IOException e)
+        {
+            packedMemoFile.delete();
+            reopenTableFile();
+
+            throw e;
+        }
+
+        /*
+         * From here on the table file points into the packed memo file, so that must not be
+         * deleted. Records read before this point no longer match the memo file.
+         */
+        ++memoGeneration;
+
+        try
+        {
+            reopenTableFile();
+            Files.move(packedMemoFile.toPath(),
+                       memoFile.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (final IOException e)
+        {
+            /*
+             * The table cannot be used with the old memo file. It is completed when it is opened
+             * again.
+             */
+            close();
+
+            throw e;
+        }
+    }
+
+    /*
+     * Renames the packed memo file over the memo file if packMemo() was interrupted after it
+     * replaced the table file. If the table file was not replaced yet, the packed files are
+     * left-overs and are deleted.
+     */
+    private void finishInterruptedMemoPack()
+                                    throws IOException, CorruptedTableException
+    {
+        final File memoFile = Util.getMemoFile(tableFile,
+                                               header.getVersion());
+
+        if (memoFile == null)
+        {
+            return;
+        }
+
+        final File packedMemoFile = new File(memoFile.getPath() + ".pack");
+
+        if (! packedMemoFile.exists())
+        {
+            return;
+        }
+
+        final boolean tableFileReplaced = ! new File(tableFile.getPath() + ".pack").exists();
+
+        if (accessMode.equals("r"))
+        {
+            if (tableFileReplaced)
+            {
+                throw new CorruptedTableException("Packing the memo file of table file " + tableFile
+                                                  + " was interrupted, open it for writing to complete it");
+            }
+
+            return;
+        }
+
+        if (! tableFileReplaced)
+        {
+            Files.delete(packedMemoFile.toPath());
+
+            return;
+        }
+
+        Files.move(packedMemoFile.toPath(),
+                   memoFile.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /*
+     * Copies the raw bytes of the records that are not deleted to a new file and renames it over the
+     * table file. The new file is synced before the rename, so that after a crash the table file is
+     * either the old or the new one, and complete.
+     */
+    private void packIntoNewFile()
+                          throws IOException
+    {
+        if (accessMode.equals("r"))
+        {
+            throw new IOException("Table file " + tableFile + " is opened for reading only");
+        }
+
+        final File packedFile = new File(tableFile.getPath() + ".pack");
+        final int headerLength = header.getLength();
+        final int recordLength = header.getRecordLength();
+        final int maxRecords = Math.max(DEFAULT_BUFFER_SIZE / recordLength, 1);
+        final byte[] headerBytes = new byte[headerLength];
+        final byte[] input = new byte[maxRecords * recordLength];
+        final byte[] output = new byte[maxRecords * recordLength];
+        final long recordCount = header.getRecordCount();
+        long packedRecordCount = 0;
+        boolean packed = false;
+
+        raFile.seek(0);
+        raFile.readFully(headerBytes);
+
+        final RandomAccessFile packedRaFile = new RandomAccessFile(packedFile, "rw");
+
+        try
+        {
+            packedRaFile.setLength(0);
+            packedRaFile.write(headerBytes);
+
+            for (long start = 0; start < recordCount; start += maxRecords)
+            {
+                final int length = (int) Math.min(maxRecords, recordCount - start) * recordLength;
+                int outputLength = 0;
+
+                raFile.readFully(input, 0, length);
+
+                for (int record = 0; record < length; record += recordLength)
+                {
+                    if (input[record] != MARKER_RECORD_DELETED)
+                    {
+                        System.arraycopy(input, record, output, outputLength, recordLength);
+                        outputLength += recordLength;
+                    }
+                }
+
+                packedRaFile.write(output, 0, outputLength);
+                packedRecordCount += outputLength / recordLength;
+            }
+
+            packedRaFile.writeByte(MARKER_EOF);
+
+            /*
+             * The record count follows the modified date in the header, so both go in one write.
+             */
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream dataOutput = new DataOutputStream(bytes);
+            header.setRecordCount(packedRecordCount);
+            header.writeModifiedDate(dataOutput);
+            header.writeRecordCount(dataOutput);
+            header.setRecordCount(recordCount);
+            dataOutput.flush();
+            packedRaFile.seek(DbfHeader.OFFSET_MODIFIED_DATE);
+            packedRaFile.write(bytes.toByteArray());
+
+            final long syncStart = System.nanoTime();
+            packedRaFile.getChannel().force(true);
+            durabilityPolicy.synced(System.nanoTime() - syncStart);
+            packed = true;
+        }
+        finally
+        {
+            packedRaFile.close();
+
+            if (! packed)
+            {
+                packedFile.delete();
+            }
+        }
+
+        try
+        {
+            moveOverTableFile(packedFile);
+        }
+        finally
+        {
+            reopenTableFile();
+        }
+
+        header.setRecordCount(packedRecordCount);
+    }
+
+    /*
+     * Closes the table file and renames packedFile, which must be complete and synced, over it.
+     * The record source is released first, as a file that is still mapped cannot be replaced on
+     * some platforms. If the rename fails, packedFile is deleted. Either way the table file must
+     * be reopened with reopenTableFile() afterwards.
+     */
+    private void moveOverTableFile(final File packedFile)
+                            throws IOException
+    {
+        recordSource.invalidate();
+        recordSource = null;
+        deletedRecords = null;
+        raFile.close();
+        raFile = null;
+
+        try
+        {
+            Files.move(packedFile.toPath(),
+                       tableFile.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (final IOException e)
+        {
+            packedFile.delete();
+
+            throw e;
+        }
+    }
+
+    private void reopenTableFile()
+                          throws IOException
+    {
+        raFile = new RandomAccessFile(tableFile, accessMode);
+        recordSource = createRecordSource();
+    }
+
+    private static boolean isMemoType(final Type type)
+    {
+        return type == Type.MEMO || type == Type.BINARY || type == Type.GENERAL || type == Type.PICTURE;
     }
 
     /**
@@ -926,9 +2482,33 @@ public class Table
     public void pack()
               throws IOException, DbfLibException
     {
+        pack(PackMode.IN_PLACE);
+    }
+
+    /**
+     * Physically remove the records currently flagged as "deleted", in the specified way. With
+     * {@link PackMode#NEW_FILE} the table file is replaced, so iterators, cursors, streams and
+     * readers created before packing must not be used afterwards.
+     *
+     * @param mode how to remove the records
+     * @throws IOException if an I/O error occurs
+     * @throws DbfLibException if a record could not be written
+     */
+    public void pack(final PackMode mode)
+              throws IOException, DbfLibException
+    {
+        checkOpen();
+
+        if (mode == PackMode.NEW_FILE)
+        {
+            packIntoNewFile();
+
+            return;
+        }
+
         final Iterator<Record> iterator = recordIterator(false);
 
-        int i = 0;
+        long i = 0;
 
         while (iterator.hasNext())
         {
@@ -940,6 +2520,14 @@ public class Table
         jumpToRecordAt(i);
         raFile.write(MARKER_EOF);
         raFile.setLength(raFile.getFilePointer());
+        recordSource.invalidate();
+
+        if (deletedRecords != null)
+        {
+            deletedRecords.clear();
+        }
+
+        recordsWritten(i);
     }
 
     /**
@@ -963,7 +2551,40 @@ public class Table
         return header.getVersion();
     }
 
-    private void jumpToRecordAt(final int index)
+    /**
+     * Sets the memo cache of the database this table belongs to. It is used if the options the
+     * table is opened with do not specify a cache.
+     */
+    void setDatabaseMemoCache(final MemoCache memoCache)
+    {
+        databaseMemoCache = memoCache;
+    }
+
+    /**
+     * Sets the durability policy of the database this table belongs to. It is used if the options
+     * the table is opened with do not specify a policy.
+     */
+    void setDatabaseDurabilityPolicy(final DurabilityPolicy durabilityPolicy)
+    {
+        databaseDurabilityPolicy = durabilityPolicy;
+    }
+
+    /**
+     * Returns the policy that determines when this table syncs its files to the storage device,
+     * and that counts the syncs.
+     *
+     * @return the durability policy
+     * @throws IllegalStateException if the table is not open
+     * @see OpenOptions#setDurabilityPolicy(DurabilityPolicy)
+     */
+    public DurabilityPolicy getDurabilityPolicy()
+    {
+        checkOpen();
+
+        return durabilityPolicy;
+    }
+
+    private void jumpToRecordAt(final long index)
                          throws IOException
     {
         raFile.seek(header.getLength() + (index * header.getRecordLength()));
@@ -975,10 +2596,35 @@ public class Table
      * that they were deleted. To phyically removed them you need to call {@link #pack()}
      *
      * @return the record count
+     * @throws IllegalStateException if the table has more than <code>Integer.MAX_VALUE</code>
+     *             records
      * @see #pack()
      * @see Record#isMarkedDeleted()
+     * @see #getLargeRecordCount()
      */
     public int getRecordCount()
+    {
+        final long recordCount = header.getRecordCount();
+
+        if (recordCount > Integer.MAX_VALUE)
+        {
+            throw new IllegalStateException("Table has " + recordCount + " records, use getLargeRecordCount()");
+        }
+
+        return (int) recordCount;
+    }
+
+    /**
+     * Returns the record count as a <code>long</code>. The record count of a DBF file is an
+     * unsigned 32-bit number, so a table can have more than <code>Integer.MAX_VALUE</code> records.
+     * Such a table can be read in full with a record iterator, a {@link RecordCursor} or a stream,
+     * but the methods that take a record index as an <code>int</code> only reach the first
+     * <code>Integer.MAX_VALUE</code> records.
+     *
+     * @return the record count
+     * @see #getRecordCount()
+     */
+    public long getLargeRecordCount()
     {
         return header.getRecordCount();
     }
@@ -0,0 +1,167 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Adds records to the end of an open {@link Table} in bulk. {@link Table#addRecord(Record)} writes
+ * each record with a separate write, followed by the end-of-file marker and the record count. An
+ * appender instead encodes the records into a buffer and writes the buffer to the table file as
+ * one sequential chunk each time it is full. The end-of-file marker, the record count and the
+ * modified date in the header are written only once, when the appender is flushed or closed.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * table.open(IfNonExistent.CREATE);
+ *
+ * final TableAppender appender = table.appender();
+ *
+ * try
+ * {
+ *     for (...)
+ *     {
+ *         appender.append(value1, value2, value3);
+ *     }
+ * }
+ * finally
+ * {
+ *     appender.close();
+ * }
+ * </pre>
+ *
+ * Records become part of the table when the chunk that holds them is written. Until the appender
+ * is flushed the header on disk still holds the old record count, so a reader of the file will
+ * not see the records appended since the last flush. The values of memo fields are written to
+ * the memo file right away. An appender is not thread-safe.
+ *
+ * @see Table#appender(int)
+ */
+public final class TableAppender
+    implements Closeable
+{
+    private final Table table;
+    private final byte[] buffer;
+    private final int recordLength;
+    private int length = 0;
+    private boolean closed = false;
+
+    TableAppender(final Table table, final int recordLength, final int maxBufferedRecords)
+    {
+        this.table = table;
+        this.recordLength = recordLength;
+        buffer = new byte[recordLength * maxBufferedRecords];
+    }
+
+    /**
+     * Appends a record.
+     *
+     * @param record the record to append
+     * @throws IOException if the table is full, or if an I/O error occurs
+     * @throws DbfLibException if a value could not be encoded
+     * @see Table#addRecord(Record)
+     */
+    public void append(final Record record)
+                throws IOException, DbfLibException
+    {
+        checkOpen();
+
+        if (length == buffer.length)
+        {
+            writeBuffer();
+        }
+
+        /*
+         * Encoding may fail half way, so the record only counts once it is complete.
+         */
+        table.encodeRecord(record, buffer, length);
+        length += recordLength;
+    }
+
+    /**
+     * Appends a record with the specified field values, in the order of the fields of the table.
+     *
+     * @param fieldValues the values of the fields
+     * @throws IOException if the table is full, or if an I/O error occurs
+     * @throws DbfLibException if a value could not be encoded
+     * @see Table#addRecord(Object...)
+     */
+    public void append(final Object... fieldValues)
+                throws IOException, DbfLibException
+    {
+        checkOpen();
+        append(table.createRecord(fieldValues));
+    }
+
+    /**
+     * Writes the buffered records to the table file, followed by the end-of-file marker, and
+     * updates the record count and the modified date in the header.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void flush()
+               throws IOException
+    {
+        checkOpen();
+        writeBuffer();
+        table.finishAppend();
+    }
+
+    /**
+     * Flushes and closes this appender. Closing an appender that is already closed has no
+     * effect.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void close()
+               throws IOException
+    {
+        if (closed)
+        {
+            return;
+        }
+
+        try
+        {
+            flush();
+        }
+        finally
+        {
+            closed = true;
+            table.appenderClosed();
+        }
+    }
+
+    private void writeBuffer()
+                      throws IOException
+    {
+        if (length > 0)
+        {
+            table.appendRecords(buffer, length);
+            length = 0;
+        }
+    }
+
+    private void checkOpen()
+    {
+        if (closed)
+        {
+            throw new IllegalStateException("Appender is closed");
+        }
+    }
+}
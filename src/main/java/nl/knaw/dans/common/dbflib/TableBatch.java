@@ -0,0 +1,215 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Collects changes to an open {@link Table} and applies them all at once, so that after a crash
+ * the table file holds either all or none of them. The records to add, update and delete are
+ * encoded into memory as they are passed to the batch; the table file is not touched until
+ * {@link #commit()} is called.
+ * <p>
+ * On commit, the parts of the table file that are about to be overwritten are first saved to a
+ * journal file next to it, with the extension <code>.jnl</code>. Then the incomplete-transaction
+ * flag in the header is set, the changes are written, the header is brought up to date and the
+ * flag is cleared. Finally the table file and the memo file are synced and the journal is deleted.
+ * If the table is opened while a journal is present, because the program stopped half way
+ * through a commit, the changes are rolled back from the journal. However many records a batch
+ * holds, committing it syncs each file only once.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * final TableBatch batch = table.batch();
+ *
+ * try
+ * {
+ *     batch.addRecord(value1, value2, value3);
+ *     batch.updateRecordAt(0, record);
+ *     batch.deleteRecordAt(1);
+ *     batch.commit();
+ * }
+ * finally
+ * {
+ *     batch.close();
+ * }
+ * </pre>
+ *
+ * The values of memo fields are written to the memo file right away, as with
+ * {@link TableAppender}. If the batch is discarded or rolled back, these memos are no longer
+ * referenced and can be removed with {@link Table#packMemo()}. A batch is not thread-safe.
+ *
+ * @see Table#batch()
+ */
+public final class TableBatch
+    implements Closeable
+{
+    private final Table table;
+    private final int recordLength;
+    private final SortedMap<Long, byte[]> writes = new TreeMap<Long, byte[]>();
+    private final ByteArrayOutputStream additions = new ByteArrayOutputStream();
+    private boolean closed = false;
+
+    TableBatch(final Table table, final int recordLength)
+    {
+        this.table = table;
+        this.recordLength = recordLength;
+    }
+
+    /**
+     * Adds a record to the end of the table when the batch is committed.
+     *
+     * @param record the record to add
+     * @throws IOException if an I/O error occurs writing a memo
+     * @throws DbfLibException if a value could not be encoded
+     * @see Table#addRecord(Record)
+     */
+    public void addRecord(final Record record)
+                   throws IOException, DbfLibException
+    {
+        checkOpen();
+
+        final byte[] bytes = new byte[recordLength];
+        table.encodeRecord(record, bytes, 0);
+        additions.write(bytes, 0, recordLength);
+    }
+
+    /**
+     * Adds a record with the specified field values, in the order of the fields of the table, to
+     * the end of the table when the batch is committed.
+     *
+     * @param fieldValues the values of the fields
+     * @throws IOException if an I/O error occurs writing a memo
+     * @throws DbfLibException if a value could not be encoded
+     * @see Table#addRecord(Object...)
+     */
+    public void addRecord(final Object... fieldValues)
+                   throws IOException, DbfLibException
+    {
+        checkOpen();
+        addRecord(table.createRecord(fieldValues));
+    }
+
+    /**
+     * Replaces the record at <code>index</code> when the batch is committed. Only records that are
+     * already in the table can be updated, not the ones added by this batch.
+     *
+     * @param index the index of the record to update
+     * @param record the new record
+     * @throws IOException if an I/O error occurs writing a memo
+     * @throws DbfLibException if a value could not be encoded
+     * @throws NoSuchElementException if there is no record at <code>index</code>
+     * @see Table#updateRecordAt(int, Record)
+     */
+    public void updateRecordAt(final int index, final Record record)
+                        throws IOException, DbfLibException
+    {
+        checkOpen();
+        checkIndex(index);
+
+        final byte[] bytes = new byte[recordLength];
+        table.encodeRecord(record, bytes, 0);
+        writes.put((long) index, bytes);
+    }
+
+    /**
+     * Flags the record at <code>index</code> as "deleted" when the batch is committed.
+     *
+     * @param index the index of the record to delete
+     * @throws NoSuchElementException if there is no record at <code>index</code>
+     * @see Table#deleteRecordAt(int)
+     */
+    public void deleteRecordAt(final int index)
+    {
+        checkOpen();
+        checkIndex(index);
+
+        final byte[] bytes = writes.get((long) index);
+
+        if (bytes == null)
+        {
+            writes.put((long) index,
+                       new byte[] { Table.MARKER_RECORD_DELETED });
+        }
+        else
+        {
+            bytes[0] = Table.MARKER_RECORD_DELETED;
+        }
+    }
+
+    /**
+     * Applies the changes collected so far to the table, as described above. If an error occurs,
+     * the changes that were already written are rolled back. Either way the batch is empty
+     * afterwards and can be used to collect new changes.
+     *
+     * @throws IOException if an I/O error occurs
+     * @throws NoSuchElementException if the table no longer has a record that is updated or
+     *             deleted by this batch
+     */
+    public void commit()
+                throws IOException
+    {
+        checkOpen();
+
+        try
+        {
+            table.commitBatch(writes,
+                              additions.toByteArray());
+        }
+        finally
+        {
+            clear();
+        }
+    }
+
+    /**
+     * Discards the changes that were not committed and closes this batch. Closing a batch that is
+     * already closed has no effect.
+     */
+    public void close()
+    {
+        clear();
+        closed = true;
+    }
+
+    private void clear()
+    {
+        writes.clear();
+        additions.reset();
+    }
+
+    private void checkIndex(final int index)
+    {
+        if (index < 0 || index >= table.getLargeRecordCount())
+        {
+            throw new NoSuchElementException(String.format("Invalid index: %d", index));
+        }
+    }
+
+    private void checkOpen()
+    {
+        if (closed)
+        {
+            throw new IllegalStateException("Batch is closed");
+        }
+    }
+}
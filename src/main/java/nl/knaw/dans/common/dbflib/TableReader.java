@@ -0,0 +1,209 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+
+/**
+ * A read-only view of an open {@link Table} that can be used by several threads at once. A
+ * <code>Table</code> reads through one file pointer and one buffer, so its read methods must not be
+ * called concurrently; a <code>TableReader</code> instead reads the table file with positional
+ * reads on its <code>FileChannel</code>. A lookup with {@link #getRecordAt(int)} reads into a
+ * buffer of its own and every iterator, cursor or stream created by the reader has its own buffer,
+ * so one reader can serve any number of concurrent lookups and scans. Memo fields are read through
+ * the table, which serializes access to the memo file.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * table.open(&quot;r&quot;, IfNonExistent.ERROR);
+ *
+ * final TableReader reader = table.reader();
+ *
+ * // From any number of threads:
+ * final Record record = reader.getRecordAt(index);
+ * </pre>
+ *
+ * The reader is valid until the table is closed. Records written to the table while a scan is
+ * running are not necessarily seen by the scan. Note that interrupting a thread that is reading
+ * closes the channel, and with it the table, as with any interruptible channel.
+ *
+ * @see Table#reader()
+ */
+public final class TableReader
+{
+    private final Table table;
+
+    TableReader(final Table table)
+    {
+        this.table = table;
+    }
+
+    /**
+     * Returns the table this reader reads from.
+     *
+     * @return the table
+     */
+    public Table getTable()
+    {
+        return table;
+    }
+
+    /**
+     * Returns the number of records in the table, including the records flagged as "deleted".
+     *
+     * @return the record count
+     * @see Table#getLargeRecordCount()
+     */
+    public long getRecordCount()
+    {
+        return table.getLargeRecordCount();
+    }
+
+    /**
+     * Returns the record at <code>index</code>. As with {@link Table#getRecordAt(int)}, records
+     * flagged as "deleted" <em>are</em> returned.
+     *
+     * @param index the zero-based index of the record
+     * @return a <code>Record</code> object
+     * @throws IOException if the table file could not be read
+     * @throws CorruptedTableException if the table file is corrupt
+     * @throws java.util.NoSuchElementException if there is no record at <code>index</code>
+     */
+    public Record getRecordAt(final int index)
+                       throws IOException, CorruptedTableException
+    {
+        return table.readRecordAt(index, null);
+    }
+
+    /**
+     * Returns the record at <code>index</code>, reading only the specified fields. Fields that
+     * were not requested have the value <code>null</code>.
+     *
+     * @param index the zero-based index of the record
+     * @param fieldNames the names of the fields to read
+     * @return a <code>Record</code> object
+     * @throws IOException if the table file could not be read
+     * @throws CorruptedTableException if the table file is corrupt
+     * @throws IllegalArgumentException if one of the field names does not exist in the table
+     */
+    public Record getRecordAt(final int index, final Set<String> fieldNames)
+                       throws IOException, CorruptedTableException
+    {
+        return table.readRecordAt(index,
+                                  table.createProjection(fieldNames));
+    }
+
+    /**
+     * Returns <code>nRecords</code> records starting at <code>startIndex</code>, or fewer if the
+     * table ends before that.
+     *
+     * @param startIndex the index of the first record to read
+     * @param nRecords the number of records to read
+     * @param includeDeleted if <code>true</code>, the records flagged as "deleted" are included
+     * @param fieldNames the names of the fields to read, or <code>null</code> to read all fields
+     * @return a list of records
+     * @throws IOException if the table file could not be read
+     * @throws CorruptedTableException if the table file is corrupt
+     * @throws IllegalArgumentException if one of the field names does not exist in the table
+     */
+    public List<Record> getRecordsAt(final int startIndex, final int nRecords, final boolean includeDeleted,
+                                     final Set<String> fieldNames)
+                              throws IOException, CorruptedTableException
+    {
+        final boolean[] projection = fieldNames == null ? null : table.createProjection(fieldNames);
+        final long endIndex = Math.min(table.getLargeRecordCount(), (long) startIndex + nRecords);
+        final List<Record> records = new ArrayList<Record>((int) Math.max(endIndex - startIndex, 0));
+        final Iterator<Record> iterator =
+            Spliterators.iterator(table.spliterator(startIndex, endIndex, includeDeleted, projection, null));
+
+        while (iterator.hasNext())
+        {
+            records.add(iterator.next());
+        }
+
+        return records;
+    }
+
+    /**
+     * Returns an iterator over the records of the table, skipping the records flagged as
+     * "deleted".
+     *
+     * @return a <code>Record</code> iterator
+     */
+    public Iterator<Record> recordIterator()
+    {
+        return recordIterator(false, null, null);
+    }
+
+    /**
+     * Returns an iterator over the records of the table. The iterator does not support
+     * <code>remove</code>.
+     *
+     * @param includeDeleted if <code>true</code>, the records flagged as "deleted" are included
+     * @param fieldNames the names of the fields to read, or <code>null</code> to read all fields
+     * @param predicate the condition the records must meet, or <code>null</code> to iterate over
+     *            all records
+     * @return a <code>Record</code> iterator
+     * @throws IllegalArgumentException if one of the field names does not exist in the table, or if
+     *             the predicate does not fit the fields of the table
+     * @see Table#recordIterator(boolean, Set, RecordPredicate)
+     */
+    public Iterator<Record> recordIterator(final boolean includeDeleted, final Set<String> fieldNames,
+                                           final RecordPredicate predicate)
+    {
+        return Spliterators.iterator(table.spliterator(includeDeleted, fieldNames, predicate));
+    }
+
+    /**
+     * Returns a {@link RecordCursor} positioned before the first record.
+     *
+     * @param includeDeleted if <code>true</code>, the records flagged as "deleted" are visited
+     * @param predicate the condition the records must meet, or <code>null</code> to visit all
+     *            records
+     * @return a <code>RecordCursor</code>
+     * @throws IllegalArgumentException if the predicate does not fit the fields of the table
+     * @see Table#recordCursor(boolean, RecordPredicate)
+     */
+    public RecordCursor recordCursor(final boolean includeDeleted, final RecordPredicate predicate)
+    {
+        return table.recordCursor(table.createPositionalRecordSource(),
+                                  includeDeleted,
+                                  predicate);
+    }
+
+    /**
+     * Returns a stream of the records of the table.
+     *
+     * @param includeDeleted if <code>true</code>, the records flagged as "deleted" are included
+     * @param fieldNames the names of the fields to read, or <code>null</code> to read all fields
+     * @param predicate the condition the records must meet, or <code>null</code> to stream all
+     *            records
+     * @return a <code>Stream</code> of records
+     * @see Table#stream(boolean, Set, RecordPredicate)
+     */
+    public Stream<Record> stream(final boolean includeDeleted, final Set<String> fieldNames,
+                                 final RecordPredicate predicate)
+    {
+        return table.stream(includeDeleted, fieldNames, predicate);
+    }
+}
@@ -24,7 +24,7 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
 import java.util.Calendar;
 import java.util.Date;
 
@@ -222,20 +222,31 @@ class Util
         return new String(bos.toByteArray());
     }
 
-    static byte[] readStringBytes(final DataInput dataInput, final int length)
-                           throws IOException
+    /**
+     * Reads a field of <tt>length</tt> bytes from <tt>buffer</tt> and returns the bytes up to the
+     * first null character. If the field starts with a null character a single null byte is
+     * returned. The position of the buffer is advanced to the end of the field.
+     *
+     * @param buffer the buffer to read from
+     * @param length the length of the field
+     * @return the bytes of the field up to the first null character
+     */
+    static byte[] readStringBytes(final ByteBuffer buffer, final int length)
     {
-        final byte[] array = new byte[length];
-        dataInput.readFully(array);
-
+        final int start = buffer.position();
         int index = 0;
 
-        while (index != length && array[index] != 0)
+        while (index != length && buffer.get(start + index) != 0)
         {
             ++index;
         }
 
-        return Arrays.copyOf(array, index == 0 ? index + 1 : index);
+        final byte[] array = new byte[index == 0 ? 1 : index];
+        buffer.get(array, 0,
+                   Math.min(array.length, length));
+        buffer.position(start + length);
+
+        return array;
     }
 
     /**
@@ -15,6 +15,7 @@
  */
 package nl.knaw.dans.common.dbflib;
 
+import java.util.Arrays;
 
 /**
  * Represents a value that can be stored in a record. <code>Value</code>s can be created by
@@ -74,7 +75,7 @@ public abstract class Value
     {
         if (typed == null)
         {
-            typed = doGetTypedValue(originalRaw);
+            typed = decodeOriginal();
         }
 
         return typed;
@@ -95,9 +96,11 @@ public abstract class Value
     final byte[] getRawValue(final Field aField)
                       throws DbfLibException
     {
-        if (originalRaw != null && originalField.equals(aField))
+        final byte[] raw = getOriginalRaw();
+
+        if (raw != null && originalField.equals(aField))
         {
-            return originalRaw;
+            return raw;
         }
 
         aField.validateTypedValue(typed);
@@ -105,6 +108,91 @@ public abstract class Value
         return doGetRawValue(aField);
     }
 
+    /**
+     * Writes the raw representation of this value into <code>bytes</code> at <code>offset</code>,
+     * padded with zeros to the length of the field. The bytes written are the same as those
+     * returned by {@link #getRawValue(Field)}.
+     *
+     * @param aField the field for which to write the raw representation of this value
+     * @param bytes the buffer to write to
+     * @param offset the offset in <code>bytes</code> of the field
+     * @throws DbfLibException if the value cannot be stored in the specified field
+     */
+    final void encode(final Field aField, final byte[] bytes, final int offset)
+               throws DbfLibException
+    {
+        final byte[] raw = getOriginalRaw();
+
+        if (raw != null && originalField.equals(aField))
+        {
+            copyPadded(raw, aField, bytes, offset);
+
+            return;
+        }
+
+        aField.validateTypedValue(typed);
+        doEncode(aField, bytes, offset);
+    }
+
+    /**
+     * Writes the typed value into <code>bytes</code>, according to the field specifications
+     * provided. Subclasses that can do so without creating an intermediate byte array override
+     * this.
+     *
+     * @param aField the field specifications
+     * @param bytes the buffer to write to
+     * @param offset the offset in <code>bytes</code> of the field
+     * @throws ValueTooLargeException if the value is too large for the field
+     */
+    void doEncode(final Field aField, final byte[] bytes, final int offset)
+           throws ValueTooLargeException
+    {
+        copyPadded(doGetRawValue(aField), aField, bytes, offset);
+    }
+
+    private static void copyPadded(final byte[] raw, final Field aField, final byte[] bytes, final int offset)
+    {
+        System.arraycopy(raw, 0, bytes, offset, raw.length);
+
+        if (raw.length < aField.getLength())
+        {
+            Arrays.fill(bytes, offset + raw.length, offset + aField.getLength(), (byte) 0);
+        }
+    }
+
+    /**
+     * Returns whether the typed value is <code>null</code>. Subclasses that can tell from the raw
+     * value without converting it override this.
+     *
+     * @return <code>true</code> if the value is empty
+     */
+    boolean isNull()
+    {
+        return getTypedValue() == null;
+    }
+
+    /**
+     * Returns the raw value this value was constructed with, or <code>null</code> if it was
+     * constructed from a typed value. Values of which the raw bytes are read lazily override this.
+     *
+     * @return the original raw value
+     */
+    byte[] getOriginalRaw()
+    {
+        return originalRaw;
+    }
+
+    /**
+     * Converts the raw value this value was constructed with to a Java object. Values of which the
+     * raw bytes are read lazily override this to convert them without copying them first.
+     *
+     * @return the value as a Java object
+     */
+    Object decodeOriginal()
+    {
+        return doGetTypedValue(getOriginalRaw());
+    }
+
     /**
      * Converts the raw bytes to a Java object. The class of Java object to create is determined by
      * the subclass of <tt>Value</tt>.
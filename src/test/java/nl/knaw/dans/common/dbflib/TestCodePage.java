@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+/**
+ * Tests that decoding and encoding through code page tables gives the same results as the JDK.
+ */
+public class TestCodePage
+{
+    private static final String[] SINGLE_BYTE_CHARSETS =
+        {
+            "IBM437", "IBM850", "IBM852", "IBM866", "windows-1250", "windows-1251", "windows-1252", "ISO-8859-1",
+            "US-ASCII"
+        };
+
+    @Test
+    public void decodesLikeJdk()
+                        throws Exception
+    {
+        final Random random = new Random(42);
+
+        for (final String charsetName : SINGLE_BYTE_CHARSETS)
+        {
+            final CodePage codePage = CodePage.forName(charsetName);
+            assertNotNull(charsetName, codePage);
+
+            for (int n = 0; n < 200; ++n)
+            {
+                final byte[] bytes = new byte[random.nextInt(300)];
+                random.nextBytes(bytes);
+
+                for (int i = 0; i < bytes.length - 1; i += 1 + random.nextInt(40))
+                {
+                    bytes[i] = (byte) 0x8d;
+                    bytes[i + 1] = (byte) 0x0a;
+                }
+
+                assertEquals(charsetName,
+                             new String(removeSoftReturns(bytes), charsetName),
+                             codePage.decode(bytes, 0, bytes.length));
+            }
+        }
+    }
+
+    @Test
+    public void encodesLikeJdk()
+                        throws Exception
+    {
+        final Random random = new Random(42);
+
+        for (final String charsetName : SINGLE_BYTE_CHARSETS)
+        {
+            final CodePage codePage = CodePage.forName(charsetName);
+            final byte[] all = new byte[256];
+
+            for (int i = 0; i < all.length; ++i)
+            {
+                all[i] = (byte) i;
+            }
+
+            final String decoded = new String(all, charsetName);
+            assertArrayEquals(charsetName,
+                              decoded.getBytes(charsetName),
+                              codePage.encode(decoded));
+
+            for (int n = 0; n < 200; ++n)
+            {
+                final StringBuilder builder = new StringBuilder();
+
+                for (int i = random.nextInt(100); i > 0; --i)
+                {
+                    builder.append(random.nextInt(10) == 0 ? (char) random.nextInt(0x3000)
+                                                           : decoded.charAt(random.nextInt(256)));
+                }
+
+                if (random.nextInt(10) == 0)
+                {
+                    builder.append("\ud83d\ude00");
+                }
+
+                final String string = builder.toString();
+                assertArrayEquals(charsetName,
+                                  string.getBytes(charsetName),
+                                  codePage.encode(string));
+            }
+        }
+    }
+
+    @Test
+    public void multiByteCharsetsHaveNoCodePage()
+    {
+        assertNull(CodePage.forName("UTF-8"));
+        assertNull(CodePage.forName("UTF-16LE"));
+    }
+
+    private static byte[] removeSoftReturns(final byte[] bytes)
+    {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+        for (int i = 0; i < bytes.length; ++i)
+        {
+            if (i < bytes.length - 1 && bytes[i] == (byte) 0x8d && bytes[i + 1] == (byte) 0x0a)
+            {
+                ++i;
+
+                continue;
+            }
+
+            bos.write(bytes[i]);
+        }
+
+        return bos.toByteArray();
+    }
+}
@@ -25,6 +25,7 @@ import org.junit.runners.Parameterized;
 
 import java.io.File;
 import java.io.IOException;
+import java.time.LocalDate;
 import java.util.Calendar;
 import java.util.Iterator;
 
@@ -78,6 +79,40 @@ public class TestDate
         }
     }
 
+    @Test
+    public void readLocalDate()
+                       throws IOException, CorruptedTableException
+    {
+        final Table t1 = new Table(new File("src/test/resources/" + versionDirectory + "/types/DATE.DBF"));
+
+        try
+        {
+            t1.open(IfNonExistent.ERROR);
+
+            final Iterator<Record> recordIterator = t1.recordIterator();
+
+            Record r = recordIterator.next();
+            assertEquals(LocalDate.of(1999, 6, 10),
+                         r.getLocalDate("DATE"));
+            assertEquals(LocalDate.of(1999, 6, 10).toEpochDay(),
+                         r.getEpochDay("DATE"));
+
+            r = recordIterator.next();
+            assertEquals(LocalDate.of(1901, 1, 1),
+                         r.getLocalDate("DATE"));
+
+            r = recordIterator.next();
+            assertEquals(LocalDate.of(1970, 1, 1),
+                         r.getLocalDate("DATE"));
+            assertEquals(0,
+                         r.getEpochDay("DATE"));
+        }
+        finally
+        {
+            t1.close();
+        }
+    }
+
     @Test
     public void writeDate()
                    throws IOException, DbfLibException
@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tests parsing and formatting YYYYMMDD dates.
+ */
+public class TestDateCodec
+{
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    @Test
+    public void roundTripsEpochDays()
+    {
+        final byte[] bytes = new byte[10];
+        final int first = (int) LocalDate.of(1, 1, 1).toEpochDay();
+        final int last = (int) LocalDate.of(9999, 12, 31).toEpochDay();
+
+        for (int epochDay = first; epochDay <= last; ++epochDay)
+        {
+            final LocalDate date = LocalDate.ofEpochDay(epochDay);
+            DateCodec.format(date.getYear(),
+                             date.getMonthValue(),
+                             date.getDayOfMonth(),
+                             bytes,
+                             1);
+
+            final String expected = date.format(FORMAT);
+            assertEquals(expected,
+                         new String(bytes, 1, 8));
+            assertEquals(expected,
+                         epochDay,
+                         DateCodec.parseEpochDay(bytes, 1));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void yearTooLarge()
+    {
+        DateCodec.format(10000, 1, 1, new byte[8], 0);
+    }
+
+    @Test
+    public void dateValue()
+                   throws Exception
+    {
+        final Field field = new Field("DATE", Type.DATE, 8);
+        final DateValue value = new DateValue(Util.createDate(2012, Calendar.FEBRUARY, 29));
+
+        assertArrayEquals("20120229".getBytes(),
+                          value.getRawValue(field));
+        assertEquals(LocalDate.of(2012, 2, 29).toEpochDay(),
+                     value.epochDay());
+        assertEquals(Util.createDate(2012, Calendar.FEBRUARY, 29),
+                     new DateValue(field, "20120229".getBytes()).getTypedValue());
+        assertTrue(new DateValue(field, "        ".getBytes()).isNull());
+        assertNull(new DateValue(field, new byte[1]).getTypedValue());
+    }
+
+    /**
+     * Formatting dates used to go through a shared <code>SimpleDateFormat</code>, which garbles
+     * results when used from several threads.
+     */
+    @Test
+    public void formatsConcurrently()
+                             throws Exception
+    {
+        final Field field = new Field("DATE", Type.DATE, 8);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try
+        {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+            for (int t = 0; t < 4; ++t)
+            {
+                final int year = 1900 + t * 25;
+
+                futures.add(executor.submit(new Callable<Void>()
+                        {
+                            public Void call()
+                                      throws Exception
+                            {
+                                for (int i = 0; i < 20000; ++i)
+                                {
+                                    final LocalDate date = LocalDate.of(year, 1, 1).plusDays(i % 3650);
+                                    final DateValue value =
+                                        new DateValue(Util.createDate(date.getYear(),
+                                                                      date.getMonthValue() - 1,
+                                                                      date.getDayOfMonth()));
+
+                                    assertEquals(date.format(FORMAT),
+                                                 new String(value.getRawValue(field)));
+                                }
+
+                                return null;
+                            }
+                        }));
+            }
+
+            for (final Future<Void> future : futures)
+            {
+                future.get();
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+}
@@ -20,6 +20,9 @@ import static org.junit.Assert.*;
 import org.junit.Test;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 
 public class TestDelete
 {
@@ -59,4 +62,71 @@ public class TestDelete
 
         table.close();
     }
+
+    /**
+     * The iterator must skip long runs of deleted records, also when records are deleted or
+     * undeleted after the table was opened.
+     */
+    @Test
+    public void testIteratorSkipsDeleted()
+                                  throws Exception
+    {
+        final File outputDir = UnitTestUtil.recreateDirectory("target/test-output/dbase3plus/delete");
+        final List<Field> fields = new ArrayList<Field>();
+        fields.add(new Field("ID", Type.NUMBER, 5));
+
+        final Table table = new Table(new File(outputDir, "RUN.DBF"), Version.DBASE_3, fields);
+        table.open(IfNonExistent.CREATE);
+
+        try
+        {
+            for (int i = 0; i < 3000; ++i)
+            {
+                table.addRecord(i);
+            }
+
+            assertTrue(table.recordIterator().hasNext());
+
+            for (int i = 0; i < 3000; ++i)
+            {
+                if (i != 5 && i != 2500)
+                {
+                    table.deleteRecordAt(i);
+                }
+            }
+
+            assertLiveRecords(table, 5, 2500);
+
+            table.updateRecordAt(1000,
+                                 table.getRecordAt(1000));
+            assertLiveRecords(table, 5, 1000, 2500);
+
+            table.addRecord(3000);
+            table.deleteRecordAt(5);
+            assertLiveRecords(table, 1000, 2500, 3000);
+
+            table.pack();
+            assertLiveRecords(table, 1000, 2500, 3000);
+            assertEquals(3,
+                         table.getRecordCount());
+        }
+        finally
+        {
+            table.close();
+        }
+    }
+
+    private static void assertLiveRecords(final Table table, final int... expectedIds)
+    {
+        final Iterator<Record> iterator = table.recordIterator();
+
+        for (final int expectedId : expectedIds)
+        {
+            assertTrue(iterator.hasNext());
+            assertEquals(expectedId,
+                         iterator.next().getNumberValue("ID").intValue());
+        }
+
+        assertFalse(iterator.hasNext());
+    }
 }
@@ -0,0 +1,250 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests when tables sync their files under the different {@link DurabilityPolicy} modes.
+ */
+public class TestDurabilityPolicy
+{
+    private File outputDir;
+    private List<Field> fields;
+
+    @Before
+    public void createFields()
+                      throws Exception
+    {
+        outputDir = UnitTestUtil.recreateDirectory("target/test-output/dbase3plus/durability");
+        fields = new ArrayList<Field>();
+        fields.add(new Field("ID", Type.NUMBER, 5));
+        fields.add(new Field("TEXT", Type.MEMO, 10));
+    }
+
+    @Test
+    public void none()
+              throws Exception
+    {
+        final DurabilityPolicy policy = DurabilityPolicy.none();
+        final Table table = openTable("NONE.DBF", policy);
+        addRecords(table, 5);
+        table.close();
+
+        assertEquals(DurabilityPolicy.Mode.NONE,
+                     policy.getMode());
+        assertEquals(0,
+                     policy.getSyncCount());
+    }
+
+    @Test
+    public void defaultsToNone()
+                        throws Exception
+    {
+        final Table table = new Table(new File(outputDir, "DEFAULT.DBF"), Version.DBASE_3, fields);
+        table.open(IfNonExistent.CREATE);
+
+        try
+        {
+            assertEquals(DurabilityPolicy.Mode.NONE,
+                         table.getDurabilityPolicy().getMode());
+        }
+        finally
+        {
+            table.close();
+        }
+    }
+
+    @Test
+    public void onClose()
+                 throws Exception
+    {
+        final DurabilityPolicy policy = DurabilityPolicy.onClose();
+        final Table table = openTable("ONCLOSE.DBF", policy);
+        addRecords(table, 5);
+
+        assertEquals(0,
+                     policy.getSyncCount());
+        table.close();
+        assertEquals(1,
+                     policy.getSyncCount());
+
+        /*
+         * Nothing was written this time, so there is nothing to sync.
+         */
+        table.open(OpenOptions.defaults().setDurabilityPolicy(policy));
+        table.getRecordAt(0);
+        table.close();
+        assertEquals(1,
+                     policy.getSyncCount());
+    }
+
+    @Test
+    public void everyNRecords()
+                       throws Exception
+    {
+        final DurabilityPolicy policy = DurabilityPolicy.everyNRecords(3);
+        final Table table = openTable("NRECORDS.DBF", policy);
+        addRecords(table, 7);
+
+        assertEquals(2,
+                     policy.getSyncCount());
+
+        table.updateField(new int[] { 0, 1, 2 }, "ID", 9);
+        assertEquals(3,
+                     policy.getSyncCount());
+
+        table.deleteRecordAt(6);
+        table.close();
+        assertEquals(4,
+                     policy.getSyncCount());
+        assertTrue(policy.getMaxSyncTime(TimeUnit.NANOSECONDS) > 0);
+        assertTrue(policy.getTotalSyncTime(TimeUnit.NANOSECONDS) >= policy.getMaxSyncTime(TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void everyNMillis()
+                      throws Exception
+    {
+        final DurabilityPolicy often = DurabilityPolicy.everyNMillis(0);
+        final Table first = openTable("OFTEN.DBF", often);
+        addRecords(first, 3);
+        first.close();
+
+        assertEquals(3,
+                     often.getSyncCount());
+
+        final DurabilityPolicy seldom = DurabilityPolicy.everyNMillis(TimeUnit.HOURS.toMillis(1));
+        final Table second = openTable("SELDOM.DBF", seldom);
+        addRecords(second, 3);
+
+        assertEquals(0,
+                     seldom.getSyncCount());
+        second.close();
+        assertEquals(1,
+                     seldom.getSyncCount());
+    }
+
+    @Test
+    public void everyCommit()
+                     throws Exception
+    {
+        final DurabilityPolicy policy = DurabilityPolicy.everyCommit();
+        final Table table = openTable("COMMIT.DBF", policy);
+        addRecords(table, 2);
+
+        assertEquals(2,
+                     policy.getSyncCount());
+
+        final TableAppender appender = table.appender();
+
+        for (int i = 0; i < 100; ++i)
+        {
+            appender.append(i, "Appended " + i);
+        }
+
+        appender.close();
+        assertEquals(3,
+                     policy.getSyncCount());
+
+        table.close();
+        assertEquals(3,
+                     policy.getSyncCount());
+    }
+
+    @Test
+    public void batchAlwaysSyncs()
+                          throws Exception
+    {
+        final DurabilityPolicy policy = DurabilityPolicy.none();
+        final Table table = openTable("BATCH.DBF", policy);
+        final TableBatch batch = table.batch();
+        batch.addRecord(1, "One");
+        batch.addRecord(2, "Two");
+        batch.commit();
+        batch.close();
+        table.close();
+
+        assertEquals(1,
+                     policy.getSyncCount());
+    }
+
+    @Test
+    public void sharedByDatabase()
+                          throws Exception
+    {
+        final DurabilityPolicy policy = DurabilityPolicy.everyCommit();
+        final Database database = new Database(outputDir, Version.DBASE_3);
+        database.setDurabilityPolicy(policy);
+
+        final Table first = database.addTable("FIRST.DBF", fields);
+        final Table second = database.addTable("SECOND.DBF", fields);
+        first.open(IfNonExistent.CREATE);
+        second.open(IfNonExistent.CREATE);
+
+        try
+        {
+            assertSame(policy,
+                       first.getDurabilityPolicy());
+            first.addRecord(1, "First");
+            second.addRecord(1, "Second");
+
+            assertEquals(2,
+                         policy.getSyncCount());
+        }
+        finally
+        {
+            first.close();
+            second.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidNumberOfRecords()
+    {
+        DurabilityPolicy.everyNRecords(0);
+    }
+
+    private Table openTable(final String name, final DurabilityPolicy policy)
+                     throws Exception
+    {
+        final Table table = new Table(new File(outputDir, name), Version.DBASE_3, fields);
+        table.open("rw",
+                   IfNonExistent.CREATE,
+                   OpenOptions.defaults().setDurabilityPolicy(policy));
+
+        return table;
+    }
+
+    private static void addRecords(final Table table, final int nRecords)
+                            throws Exception
+    {
+        for (int i = 0; i < nRecords; ++i)
+        {
+            table.addRecord(i, "Memo " + i);
+        }
+    }
+}
@@ -0,0 +1,356 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Spliterator;
+
+/**
+ * Tests tables and memo files larger than 2 GB, and tables with more than
+ * <code>Integer.MAX_VALUE</code> records. The files are created sparse, by extending them with
+ * <code>setLength</code>, so that they take hardly any disk space.
+ */
+public class TestLargeTable
+{
+    private static final int RECORD_LENGTH = 251;
+    private static final int LARGE_RECORD_COUNT = 10000000;
+    private static final int FAR_INDEX = 9000000;
+
+    @Test
+    public void recordsBeyondTwoGigabytes()
+                                   throws Exception
+    {
+        final File tableFile = createSparseTable("BIG.DBF");
+
+        try
+        {
+            for (final OpenOptions options : new OpenOptions[] { OpenOptions.defaults(), OpenOptions.mmap() })
+            {
+                final Table table = new Table(tableFile);
+
+                try
+                {
+                    table.open("rw", IfNonExistent.ERROR, options);
+                    assertEquals(LARGE_RECORD_COUNT,
+                                 table.getRecordCount());
+
+                    /*
+                     * FAR_INDEX * RECORD_LENGTH is beyond Integer.MAX_VALUE.
+                     */
+                    table.updateRecordAt(FAR_INDEX,
+                                         record(table, FAR_INDEX, "far away"));
+                    assertRecord(table.getRecordAt(FAR_INDEX), FAR_INDEX, "far away");
+                    assertRecord(table.getRecordAt(0), 0, "first");
+
+                    final List<Record> last = table.getRecordsAt(LARGE_RECORD_COUNT - 1, 2);
+                    assertEquals(1,
+                                 last.size());
+                    assertEquals(null,
+                                 last.get(0).getNumberValue("ID"));
+                }
+                finally
+                {
+                    table.close();
+                }
+            }
+
+            final Table table = new Table(tableFile);
+
+            try
+            {
+                table.open("rw", IfNonExistent.ERROR);
+                table.addRecord(LARGE_RECORD_COUNT, "appended");
+                table.deleteRecordAt(FAR_INDEX);
+                assertEquals(LARGE_RECORD_COUNT + 1,
+                             table.getRecordCount());
+                assertRecord(table.getRecordAt(LARGE_RECORD_COUNT), LARGE_RECORD_COUNT, "appended");
+                assertEquals(true,
+                             table.getRecordAt(FAR_INDEX).isMarkedDeleted());
+            }
+            finally
+            {
+                table.close();
+            }
+
+            assertEquals(tableFile.length(),
+                         1 + headerLength(tableFile) + (LARGE_RECORD_COUNT + 1L) * RECORD_LENGTH);
+        }
+        finally
+        {
+            tableFile.delete();
+        }
+    }
+
+    @Test
+    public void memoBeyondTwoGigabytes()
+                                throws Exception
+    {
+        final File outputDir = UnitTestUtil.recreateDirectory("target/test-output/dbase3plus/large/MEMO");
+        final List<Field> fields = new ArrayList<Field>();
+        fields.add(new Field("ID", Type.NUMBER, 10));
+        fields.add(new Field("TEXT", Type.MEMO, 10));
+
+        final File tableFile = new File(outputDir, "MEMO.DBF");
+        final File memoFile = new File(outputDir, "MEMO.dbt");
+        Table table = new Table(tableFile, Version.DBASE_3, fields);
+
+        try
+        {
+            table.open(IfNonExistent.CREATE);
+            table.addRecord(1, "first memo");
+            table.close();
+
+            /*
+             * Block 5 000 000 starts beyond Integer.MAX_VALUE.
+             */
+            final long blockIndex = 5000000;
+            final RandomAccessFile memoRaf = new RandomAccessFile(memoFile, "rw");
+
+            try
+            {
+                memoRaf.seek(blockIndex * 512);
+                memoRaf.write("far away memo".getBytes());
+                memoRaf.write(new byte[] { 0x1a, 0x1a });
+            }
+            finally
+            {
+                memoRaf.close();
+            }
+
+            final RandomAccessFile tableRaf = new RandomAccessFile(tableFile, "rw");
+
+            try
+            {
+                tableRaf.seek(headerLength(tableFile) + 1 + 10);
+                tableRaf.write(String.format("%10d", blockIndex).getBytes());
+            }
+            finally
+            {
+                tableRaf.close();
+            }
+
+            for (final boolean lazyMemo : new boolean[] { true, false })
+            {
+                table = new Table(tableFile);
+                table.open("r",
+                           IfNonExistent.ERROR,
+                           OpenOptions.defaults().setLazyMemo(lazyMemo));
+                assertEquals("far away memo",
+                             table.getRecordAt(0).getStringValue("TEXT"));
+                table.close();
+            }
+        }
+        finally
+        {
+            table.close();
+            memoFile.delete();
+        }
+    }
+
+    /**
+     * The record count in the header is an unsigned 32-bit number.
+     */
+    @Test
+    public void moreThanMaxIntRecords()
+                               throws Exception
+    {
+        final File outputDir = UnitTestUtil.recreateDirectory("target/test-output/dbase3plus/large/MANY");
+        final List<Field> fields = new ArrayList<Field>();
+        fields.add(new Field("ID", Type.NUMBER, 1));
+
+        final File tableFile = new File(outputDir, "MANY.DBF");
+        Table table = new Table(tableFile, Version.DBASE_3, fields);
+        final long recordCount = Integer.MAX_VALUE + 11L;
+        final long lastIndex = recordCount - 1;
+
+        try
+        {
+            table.open(IfNonExistent.CREATE);
+            table.addRecord(1);
+            table.close();
+
+            final long headerLength = headerLength(tableFile);
+            final RandomAccessFile raf = new RandomAccessFile(tableFile, "rw");
+
+            try
+            {
+                raf.seek(DbfHeader.OFFSET_RECORD_COUNT);
+                raf.writeInt(Util.changeEndianness((int) recordCount));
+                raf.setLength(headerLength + recordCount * 2 + 1);
+                raf.seek(headerLength + lastIndex * 2);
+                raf.write(" 7".getBytes());
+                raf.write(0x1a);
+            }
+            finally
+            {
+                raf.close();
+            }
+
+            table = new Table(tableFile);
+            table.open("r", IfNonExistent.ERROR);
+            assertEquals(recordCount,
+                         table.getLargeRecordCount());
+
+            try
+            {
+                table.getRecordCount();
+                throw new AssertionError("Expected IllegalStateException");
+            }
+            catch (final IllegalStateException e)
+            {
+                assertNotNull(e.getMessage());
+            }
+
+            final ByteBuffer records = table.createPositionalRecordSource().getRecords(lastIndex, 10);
+            assertEquals(2,
+                         records.remaining());
+            assertEquals('7',
+                         records.get(records.position() + 1));
+
+            final Spliterator<Record> spliterator = table.stream(true, null).spliterator();
+            assertEquals(recordCount,
+                         spliterator.estimateSize());
+
+            final Spliterator<Record> prefix = spliterator.trySplit();
+            assertEquals(recordCount,
+                         prefix.estimateSize() + spliterator.estimateSize());
+        }
+        finally
+        {
+            table.close();
+            tableFile.delete();
+        }
+    }
+
+    @Test
+    public void longBitSetMatchesBitSet()
+    {
+        final Random random = new Random(42);
+        final BitSet expected = new BitSet();
+        final LongBitSet actual = new LongBitSet(100);
+
+        for (int i = 0; i < 10000; ++i)
+        {
+            final int index = random.nextInt(1000);
+
+            if (random.nextBoolean())
+            {
+                expected.set(index);
+                actual.set(index);
+            }
+            else
+            {
+                expected.clear(index);
+                actual.clear(index);
+            }
+
+            final int from = random.nextInt(1100);
+            assertEquals(expected.nextClearBit(from),
+                         actual.nextClearBit(from));
+            assertEquals(expected.get(from),
+                         actual.get(from));
+        }
+    }
+
+    /*
+     * Creates a table with one record and then extends it to LARGE_RECORD_COUNT records.
+     */
+    private static File createSparseTable(final String name)
+                                   throws Exception
+    {
+        final File outputDir = UnitTestUtil.recreateDirectory("target/test-output/dbase3plus/large/" + name);
+        final List<Field> fields = new ArrayList<Field>();
+        fields.add(new Field("ID", Type.NUMBER, 10));
+        fields.add(new Field("NAME", Type.CHARACTER, RECORD_LENGTH - 11));
+
+        final File tableFile = new File(outputDir, name);
+        final Table table = new Table(tableFile, Version.DBASE_3, fields);
+
+        try
+        {
+            table.open(IfNonExistent.CREATE);
+            table.addRecord(0, "first");
+        }
+        finally
+        {
+            table.close();
+        }
+
+        final RandomAccessFile raf = new RandomAccessFile(tableFile, "rw");
+
+        try
+        {
+            raf.seek(DbfHeader.OFFSET_RECORD_COUNT);
+            raf.writeInt(Util.changeEndianness(LARGE_RECORD_COUNT));
+            raf.setLength(headerLength(tableFile) + (long) LARGE_RECORD_COUNT * RECORD_LENGTH + 1);
+            raf.seek(raf.length() - 1);
+            raf.write(0x1a);
+        }
+        finally
+        {
+            raf.close();
+        }
+
+        return tableFile;
+    }
+
+    private static long headerLength(final File tableFile)
+                              throws Exception
+    {
+        final RandomAccessFile raf = new RandomAccessFile(tableFile, "r");
+
+        try
+        {
+            raf.seek(8);
+
+            return Util.changeEndianness(raf.readShort()) & 0xffff;
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    private static Record record(final Table table, final int id, final String name)
+    {
+        final Map<String, Value> values = new HashMap<String, Value>();
+        values.put("ID", new NumberValue(id));
+        values.put("NAME", new StringValue(name, table.getCharsetName()));
+
+        return new Record(values);
+    }
+
+    private static void assertRecord(final Record record, final int id, final String name)
+    {
+        assertEquals(id,
+                     record.getNumberValue("ID").intValue());
+        assertEquals(name,
+                     record.getStringValue("NAME").trim());
+    }
+}
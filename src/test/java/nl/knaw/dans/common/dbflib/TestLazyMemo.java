@@ -0,0 +1,174 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.junit.Test;
+
+import org.junit.runner.RunWith;
+
+import org.junit.runners.Parameterized;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Tests reading memo fields on first access.
+ */
+@RunWith(Parameterized.class)
+public class TestLazyMemo
+    extends BaseTestcase
+{
+    /**
+     * Creates a new TestLazyMemo object.
+     *
+     * @param aVersion test parameter
+     * @param aVersionDirectory test parameter
+     */
+    public TestLazyMemo(final Version aVersion, final String aVersionDirectory)
+    {
+        super(aVersion, aVersionDirectory);
+    }
+
+    @Test
+    public void lazyMatchesEager()
+                          throws Exception
+    {
+        final File tableFile = new File("src/test/resources/" + versionDirectory + "/rndtrip/TABLE2.DBF");
+        final Table eager = new Table(tableFile);
+        final Table lazy = new Table(tableFile);
+
+        try
+        {
+            eager.open("r",
+                       IfNonExistent.ERROR,
+                       OpenOptions.defaults().setLazyMemo(false));
+            lazy.open("r",
+                      IfNonExistent.ERROR,
+                      OpenOptions.defaults().setLazyMemo(true));
+
+            final List<Record> expected = eager.getAllRecords();
+            final List<Record> actual = lazy.getAllRecords();
+            final Field memoField = lazy.getFields().get(1);
+
+            assertEquals(expected.size(),
+                         actual.size());
+
+            for (int i = 0; i < expected.size(); ++i)
+            {
+                assertNotNull(actual.get(i).getStringValue("MEMOFIELD"));
+                assertEquals(expected.get(i).getStringValue("MEMOFIELD"),
+                             actual.get(i).getStringValue("MEMOFIELD"));
+                assertEquals(new String(expected.get(i).getRawValue(memoField)),
+                             new String(actual.get(i).getRawValue(memoField)));
+            }
+        }
+        finally
+        {
+            eager.close();
+            lazy.close();
+        }
+    }
+
+    /**
+     * A memo that was read before the table was closed stays available.
+     */
+    @Test
+    public void resolvedBeforeClose()
+                             throws Exception
+    {
+        final Table table = new Table(new File("src/test/resources/" + versionDirectory + "/rndtrip/TABLE2.DBF"));
+        final Record record;
+        final String memoText;
+
+        try
+        {
+            table.open("r",
+                       IfNonExistent.ERROR,
+                       OpenOptions.defaults().setLazyMemo(true));
+            record = table.getRecordAt(0);
+            memoText = record.getStringValue("MEMOFIELD");
+        }
+        finally
+        {
+            table.close();
+        }
+
+        assertEquals(memoText,
+                     record.getStringValue("MEMOFIELD"));
+    }
+
+    /**
+     * Without options, memo fields are read together with the record, so they stay available
+     * after the table is closed.
+     */
+    @Test
+    public void eagerByDefault()
+                        throws Exception
+    {
+        final Table table = new Table(new File("src/test/resources/" + versionDirectory + "/rndtrip/TABLE2.DBF"));
+        final Record record;
+        final String memoText;
+
+        try
+        {
+            table.open("r", IfNonExistent.ERROR);
+            record = table.getRecordAt(0);
+        }
+        finally
+        {
+            table.close();
+        }
+
+        table.open("r", IfNonExistent.ERROR);
+
+        try
+        {
+            memoText = table.getRecordAt(0).getStringValue("MEMOFIELD");
+        }
+        finally
+        {
+            table.close();
+        }
+
+        assertEquals(memoText,
+                     record.getStringValue("MEMOFIELD"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void unresolvedAfterClose()
+                              throws Exception
+    {
+        final Table table = new Table(new File("src/test/resources/" + versionDirectory + "/rndtrip/TABLE2.DBF"));
+        final Record record;
+
+        try
+        {
+            table.open("r",
+                       IfNonExistent.ERROR,
+                       OpenOptions.defaults().setLazyMemo(true));
+            record = table.getRecordAt(0);
+        }
+        finally
+        {
+            table.close();
+        }
+
+        record.getStringValue("MEMOFIELD");
+    }
+}
@@ -26,7 +26,9 @@ import org.junit.runners.Parameterized;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * Tests reading and writing memo fields.
@@ -83,6 +85,105 @@ public class TestMemo
         }
     }
 
+    /**
+     * Tests that memos spanning many blocks, and memos that end exactly at a block boundary, are
+     * read back completely.
+     */
+    @Test
+    public void readLongMemos()
+                       throws IOException, DbfLibException
+    {
+        final File outputDir = UnitTestUtil.recreateDirectory("target/test-output/" + versionDirectory + "/longmemo");
+        final List<Field> fields = new ArrayList<Field>();
+        fields.add(new Field("MEMO", Type.MEMO, 10));
+
+        final int[] lengths = { 1, 500, 511, 512, 1000, 8191, 8192, 8193, 100000 };
+        final Table table = new Table(new File(outputDir, "LONGMEMO.DBF"), version, fields);
+
+        try
+        {
+            table.open(IfNonExistent.CREATE);
+
+            for (final int length : lengths)
+            {
+                table.addRecord(createMemoText(length));
+            }
+
+            for (int i = 0; i < lengths.length; ++i)
+            {
+                assertEquals(createMemoText(lengths[i]),
+                             table.getRecordAt(i).getStringValue("MEMO"));
+            }
+        }
+        finally
+        {
+            table.close();
+        }
+    }
+
+    /**
+     * Tests reading memos from a memory mapped memo file, with windows smaller than some of the
+     * memos, both lazily and together with the records.
+     */
+    @Test
+    public void readMappedMemos()
+                         throws IOException, DbfLibException
+    {
+        final File outputDir = UnitTestUtil.recreateDirectory("target/test-output/" + versionDirectory + "/mappedmemo");
+        final List<Field> fields = new ArrayList<Field>();
+        fields.add(new Field("MEMO", Type.MEMO, 10));
+
+        final int[] lengths = { 1, 3000, 511, 512, 9000, 20, 4095, 4096, 100000, 7 };
+
+        for (final boolean lazyMemo : new boolean[] { true, false })
+        {
+            final Table table = new Table(new File(outputDir, "MAPPED" + lazyMemo + ".DBF"), version, fields);
+
+            try
+            {
+                table.open("rw",
+                           IfNonExistent.CREATE,
+                           OpenOptions.mmap().setMapWindowSize(4096).setLazyMemo(lazyMemo));
+
+                for (final int length : lengths)
+                {
+                    table.addRecord(createMemoText(length));
+                }
+
+                for (int i = lengths.length - 1; i >= 0; --i)
+                {
+                    assertEquals(createMemoText(lengths[i]),
+                                 table.getRecordAt(i).getStringValue("MEMO"));
+                }
+
+                /*
+                 * Memos written after the file was mapped are read as well.
+                 */
+                table.addRecord(createMemoText(5000));
+                assertEquals(createMemoText(5000),
+                             table.getRecordAt(lengths.length).getStringValue("MEMO"));
+                assertEquals(createMemoText(lengths[0]),
+                             table.getRecordAt(0).getStringValue("MEMO"));
+            }
+            finally
+            {
+                table.close();
+            }
+        }
+    }
+
+    private static String createMemoText(final int length)
+    {
+        final StringBuilder builder = new StringBuilder(length);
+
+        for (int i = 0; i < length; ++i)
+        {
+            builder.append((char) ('a' + (i % 26)));
+        }
+
+        return builder.toString();
+    }
+
     @Test
     public void writeMemo()
                    throws IOException, DbfLibException
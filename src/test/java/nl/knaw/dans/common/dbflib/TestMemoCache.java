@@ -0,0 +1,183 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests reading memos through a {@link MemoCache}.
+ */
+public class TestMemoCache
+{
+    private File outputDir;
+    private List<Field> fields;
+
+    @Before
+    public void setUp()
+               throws Exception
+    {
+        outputDir = UnitTestUtil.recreateDirectory("target/test-output/dbase3plus/memocache");
+        fields = new ArrayList<Field>();
+        fields.add(new Field("ID", Type.NUMBER, 5));
+        fields.add(new Field("TEXT", Type.MEMO, 10));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed()
+    {
+        final File file = new File("A.DBT").getAbsoluteFile();
+        final MemoCache cache = new MemoCache(10);
+        cache.put(file, 1, new byte[4]);
+        cache.put(file, 2, new byte[4]);
+        cache.get(file, 1);
+        cache.put(file, 3, new byte[4]);
+
+        assertEquals(8,
+                     cache.getSize());
+        assertEquals(4,
+                     cache.get(file, 1).length);
+        assertNull(cache.get(file, 2));
+        assertEquals(4,
+                     cache.get(file, 3).length);
+        assertEquals(3,
+                     cache.getHitCount());
+        assertEquals(1,
+                     cache.getMissCount());
+
+        cache.put(file, 4, new byte[11]);
+        assertNull(cache.get(file, 4));
+
+        cache.invalidate(file);
+        assertNull(cache.get(file, 1));
+        assertNull(cache.get(file, 3));
+
+        cache.put(file, 1, new byte[4]);
+        cache.put(file, 2, new byte[2]);
+        cache.invalidate(file, 2, 1);
+        assertNull(cache.get(file, 2));
+        assertEquals(4,
+                     cache.get(file, 1).length);
+    }
+
+    @Test
+    public void cachedMemoCannotBeChanged()
+    {
+        final File file = new File("A.DBT").getAbsoluteFile();
+        final MemoCache cache = new MemoCache(10);
+        final byte[] memo = { 1, 2, 3 };
+        cache.put(file, 1, memo);
+        memo[0] = 9;
+        cache.get(file, 1)[1] = 9;
+
+        assertArrayEquals(new byte[] { 1, 2, 3 },
+                          cache.get(file, 1));
+    }
+
+    @Test
+    public void repeatedReadsAreHits()
+                              throws Exception
+    {
+        final MemoCache cache = new MemoCache(1024 * 1024);
+        final Table table = new Table(new File(outputDir, "CACHED.DBF"), Version.DBASE_3, fields);
+        table.open("rw", IfNonExistent.CREATE, OpenOptions.defaults().setMemoCache(cache));
+
+        try
+        {
+            for (int i = 0; i < 10; ++i)
+            {
+                table.addRecord(i, "Memo " + i);
+            }
+
+            for (int n = 0; n < 3; ++n)
+            {
+                for (int i = 0; i < 10; ++i)
+                {
+                    assertEquals("Memo " + i,
+                                 table.getRecordAt(i).getStringValue("TEXT"));
+                }
+            }
+
+            assertEquals(10,
+                         cache.getMissCount());
+            assertEquals(20,
+                         cache.getHitCount());
+
+            /*
+             * Writing a memo only invalidates the blocks it is written to, which are new.
+             */
+            table.addRecord(10, "Memo 10");
+            assertEquals("Memo 3",
+                         table.getRecordAt(3).getStringValue("TEXT"));
+            assertEquals(10,
+                         cache.getMissCount());
+            assertEquals("Memo 10",
+                         table.getRecordAt(10).getStringValue("TEXT"));
+            assertEquals(11,
+                         cache.getMissCount());
+        }
+        finally
+        {
+            table.close();
+        }
+    }
+
+    @Test
+    public void sharedByDatabase()
+                          throws Exception
+    {
+        final MemoCache cache = new MemoCache(1024 * 1024);
+        final Database database = new Database(outputDir, Version.DBASE_3);
+        database.setMemoCache(cache);
+
+        final Table first = database.addTable("FIRST.DBF", fields);
+        final Table second = database.addTable("SECOND.DBF", fields);
+        first.open(IfNonExistent.CREATE);
+        second.open(IfNonExistent.CREATE);
+
+        try
+        {
+            first.addRecord(1, "First");
+            second.addRecord(1, "Second");
+
+            for (int n = 0; n < 2; ++n)
+            {
+                assertEquals("First",
+                             first.getRecordAt(0).getStringValue("TEXT"));
+                assertEquals("Second",
+                             second.getRecordAt(0).getStringValue("TEXT"));
+            }
+
+            assertEquals(2,
+                         cache.getMissCount());
+            assertEquals(2,
+                         cache.getHitCount());
+        }
+        finally
+        {
+            first.close();
+            second.close();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import org.junit.runner.RunWith;
+
+import org.junit.runners.Parameterized;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Tests reading tables through a memory mapped view of the table file.
+ */
+@RunWith(Parameterized.class)
+public class TestMemoryMappedRead
+    extends BaseTestcase
+{
+    /**
+     * Creates a new TestMemoryMappedRead object.
+     *
+     * @param aVersion test parameter
+     * @param aVersionDirectory test parameter
+     */
+    public TestMemoryMappedRead(final Version aVersion, final String aVersionDirectory)
+    {
+        super(aVersion, aVersionDirectory);
+    }
+
+    @Test
+    public void iteratorMatchesBufferedRead()
+                                     throws Exception
+    {
+        for (final String tableName : new String[] { "TABLE1.DBF", "TABLE2.DBF" })
+        {
+            final File tableFile = new File("src/test/resources/" + versionDirectory + "/rndtrip/" + tableName);
+            final List<Record> expected = readAll(tableFile,
+                                                  OpenOptions.defaults());
+
+            /*
+             * A window of one byte is rounded up to one record, so every record is mapped separately.
+             */
+            assertSameRecords(tableFile,
+                              expected,
+                              readAll(tableFile,
+                                      OpenOptions.mmap().setMapWindowSize(1)));
+            assertSameRecords(tableFile,
+                              expected,
+                              readAll(tableFile,
+                                      OpenOptions.mmap()));
+        }
+    }
+
+    @Test
+    public void getRecordsAtMatchesBufferedRead()
+                                         throws Exception
+    {
+        final File tableFile = new File("src/test/resources/" + versionDirectory + "/rndtrip/TABLE1.DBF");
+        final Table buffered = new Table(tableFile);
+        final Table mapped = new Table(tableFile);
+
+        try
+        {
+            buffered.open("r",
+                          IfNonExistent.ERROR,
+                          OpenOptions.defaults());
+
+            /*
+             * The records of TABLE1 are 73 bytes long, so this maps two records per window.
+             */
+            mapped.open("r",
+                        IfNonExistent.ERROR,
+                        OpenOptions.mmap().setMapWindowSize(150));
+
+            final List<Record> expected = buffered.getRecordsAt(1, 100, true);
+            final List<Record> actual = mapped.getRecordsAt(1, 100, true);
+
+            assertSameRecords(tableFile, expected, actual);
+            assertSameRecords(tableFile,
+                              buffered.getAllRecords(),
+                              mapped.getAllRecords());
+        }
+        finally
+        {
+            buffered.close();
+            mapped.close();
+        }
+    }
+
+    private static List<Record> readAll(final File tableFile, final OpenOptions options)
+                                 throws Exception
+    {
+        final Table table = new Table(tableFile);
+        final List<Record> records = new ArrayList<Record>();
+
+        try
+        {
+            /*
+             * The records are compared after the table is closed, so memos cannot be read lazily.
+             */
+            table.open("r", IfNonExistent.ERROR,
+                       options.setLazyMemo(false));
+
+            final Iterator<Record> iterator = table.recordIterator(true);
+
+            while (iterator.hasNext())
+            {
+                records.add(iterator.next());
+            }
+        }
+        finally
+        {
+            table.close();
+        }
+
+        return records;
+    }
+
+    private static void assertSameRecords(final File tableFile, final List<Record> expected, final List<Record> actual)
+                                   throws Exception
+    {
+        final Table table = new Table(tableFile);
+
+        try
+        {
+            table.open("r", IfNonExistent.ERROR);
+            assertEquals(expected.size(),
+                         actual.size());
+
+            for (int i = 0; i < expected.size(); ++i)
+            {
+                assertEquals(expected.get(i).isMarkedDeleted(),
+                             actual.get(i).isMarkedDeleted());
+
+                for (final Field field : table.getFields())
+                {
+                    assertArrayEquals("Record " + i + ", field " + field.getName(),
+                                      expected.get(i).getRawValue(field),
+                                      actual.get(i).getRawValue(field));
+                }
+            }
+        }
+        finally
+        {
+            table.close();
+        }
+    }
+}
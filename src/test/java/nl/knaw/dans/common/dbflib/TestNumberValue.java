@@ -15,12 +15,22 @@
  */
 package nl.knaw.dans.common.dbflib;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
+import java.io.File;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
 
 public class TestNumberValue
 {
@@ -93,4 +103,232 @@ public class TestNumberValue
         assertEquals("   1234.45",
                      new String(numberBigDecimal.getRawValue(fieldFractional)));
     }
+
+    /**
+     * Tests that the primitive accessors return the same as the corresponding methods of the typed
+     * value.
+     */
+    @Test
+    public void primitivesMatchTypedValue()
+    {
+        final String[] raws =
+            {
+                "         0", "      1234", "     -1234", "  +42     ", "2147483647", "-2147483648", "9999999999",
+                "  123456789012345678", " -9223372036854775808", "99999999999999999999", "   1234.56",
+                "  -1234.56", "      -.5 ", "0.1", "12345678.9012", "123456789.0123"
+            };
+        final Field field = new Field("NUM", Type.NUMBER, 20, 4);
+
+        for (final String raw : raws)
+        {
+            final NumberValue value = new NumberValue(field, raw.getBytes());
+            final Number expected = (Number) new NumberValue(field, raw.getBytes()).getTypedValue();
+
+            assertFalse(raw, value.isNull());
+            assertEquals(raw,
+                         expected.intValue(),
+                         value.intValue());
+            assertEquals(raw,
+                         expected.longValue(),
+                         value.longValue());
+            assertEquals(raw,
+                         expected.doubleValue(),
+                         value.doubleValue(),
+                         0.0);
+        }
+    }
+
+    @Test
+    public void blankPrimitivesAreZero()
+    {
+        final Field field = new Field("NUM", Type.NUMBER, 10, 2);
+
+        for (final String raw : new String[] { "          ", "    .     ", "" })
+        {
+            final NumberValue value = new NumberValue(field, raw.getBytes());
+
+            assertTrue(value.isNull());
+            assertEquals(0,
+                         value.intValue());
+            assertEquals(0L,
+                         value.longValue());
+            assertEquals(0.0,
+                         value.doubleValue(),
+                         0.0);
+            assertEquals(0L,
+                         value.scaledValue(2));
+        }
+    }
+
+    @Test
+    public void scaledValueIsExact()
+    {
+        final Field field = new Field("NUM", Type.NUMBER, 20, 2);
+        final String[] raws =
+            {
+                "   1234.56", "  -1234.5 ", "       7", "   0.10", "-.01", "92233720368547758.07",
+                "-92233720368547758.08"
+            };
+
+        for (final String raw : raws)
+        {
+            assertEquals(raw,
+                         new BigDecimal(raw.trim()).setScale(2, RoundingMode.UNNECESSARY).unscaledValue().longValue(),
+                         new NumberValue(field, raw.getBytes()).scaledValue(2));
+        }
+
+        assertEquals(123456L,
+                     new NumberValue(new Double(1234.56)).scaledValue(2));
+    }
+
+    @Test
+    public void formatsLikeStringFormat()
+                                 throws Exception
+    {
+        final Random random = new Random(42);
+        final List<Number> numbers = new ArrayList<Number>();
+        numbers.addAll(Arrays.<Number>asList(0, -0.0, 0.125, 0.135, 1.005, -1.005, 2.5, -2.5, 0.5, -0.004, 999.995,
+                                             9.999999, 123456789012L, Long.MIN_VALUE, Long.MAX_VALUE,
+                                             (short) -12, (byte) 7, 1.5f, -0.3f, Double.NaN, 1e20, 1e-20,
+                                             new BigDecimal("-0.001"), new BigDecimal("12.345"),
+                                             new BigDecimal("1E+3"), new BigDecimal("99999999999999999999.5"),
+                                             new BigInteger("123456789012345678901234")));
+
+        for (int i = 0; i < 2000; ++i)
+        {
+            numbers.add(random.nextInt());
+            numbers.add(random.nextLong() >> random.nextInt(64));
+            numbers.add((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(16)));
+            numbers.add(Math.round(random.nextDouble() * 100000) / 1000.0);
+            numbers.add(BigDecimal.valueOf(random.nextLong() >> random.nextInt(64), random.nextInt(8)));
+        }
+
+        for (final Number number : numbers)
+        {
+            for (int scale = 0; scale <= 6; ++scale)
+            {
+                final Field field = new Field("NUM", Type.NUMBER, 30, scale);
+                final String expected = legacyFormat(number, field);
+
+                if (expected.length() > 30)
+                {
+                    continue;
+                }
+
+                final byte[] expectedRaw = Arrays.copyOf(expected.getBytes(), 30);
+                final byte[] buffer = new byte[40];
+                Arrays.fill(buffer, (byte) 'x');
+
+                final NumberValue value = new NumberValue(number);
+                assertArrayEquals(number + ", " + scale,
+                                  expectedRaw,
+                                  value.doGetRawValue(field));
+
+                value.doEncode(field, buffer, 5);
+                assertArrayEquals(number + ", " + scale,
+                                  expectedRaw,
+                                  Arrays.copyOfRange(buffer, 5, 35));
+                assertEquals('x',
+                             buffer[4]);
+                assertEquals('x',
+                             buffer[35]);
+            }
+        }
+    }
+
+    @Test
+    public void formatsZeroPaddedLong()
+    {
+        final byte[] bytes = new byte[10];
+
+        for (final long value : new long[] { 0, 7, -7, 1234567890L, -123456789L, Long.MIN_VALUE })
+        {
+            final String expected = String.format("%010d", value);
+
+            if (expected.length() > 10)
+            {
+                assertFalse(NumberCodec.formatLong(value, 10, (byte) '0', bytes, 0));
+            }
+            else
+            {
+                assertTrue(NumberCodec.formatLong(value, 10, (byte) '0', bytes, 0));
+                assertEquals(expected,
+                             new String(bytes));
+            }
+        }
+
+        assertFalse(NumberCodec.formatLong(12345678901L, 10, (byte) ' ', bytes, 0));
+    }
+
+    /*
+     * The conversions and format strings used by NumberValue before it formatted numbers itself.
+     */
+    private static String legacyFormat(final Number number, final Field field)
+    {
+        final boolean integral =
+            number instanceof Byte || number instanceof Short || number instanceof Integer || number instanceof Long
+            || number instanceof BigInteger;
+        Number num = number;
+
+        if (field.getDecimalCount() > 0 && integral)
+        {
+            num = number instanceof BigInteger ? new BigDecimal((BigInteger) number) : (Number) number.doubleValue();
+        }
+
+        if (field.getDecimalCount() == 0 && ! integral)
+        {
+            num = Math.round(number.doubleValue());
+        }
+
+        return String.format(Locale.US,
+                             "%" + field.getLength()
+                             + (field.getDecimalCount() == 0 ? "d" : "." + field.getDecimalCount() + "f"),
+                             num);
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void scaledValueDoesNotRound()
+    {
+        new NumberValue(new Field("NUM", Type.NUMBER, 10, 3), "  1234.567".getBytes()).scaledValue(2);
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void scaledValueOverflow()
+    {
+        new NumberValue(new Field("NUM", Type.NUMBER, 20, 2), "92233720368547758.08".getBytes()).scaledValue(2);
+    }
+
+    @Test
+    public void recordAccessors()
+                         throws Exception
+    {
+        final Table table = new Table(new File("src/test/resources/dbase3plus/cars/cars.dbf"));
+
+        try
+        {
+            table.open("r", IfNonExistent.ERROR);
+
+            for (final Record record : table.getAllRecords())
+            {
+                final Number year = record.getNumberValue("YEAR");
+                final Number cc = record.getNumberValue("CC");
+
+                assertEquals(year == null,
+                             record.isNull("YEAR"));
+                assertEquals(year == null ? 0 : year.intValue(),
+                             record.getInt("YEAR"));
+                assertEquals(cc == null ? 0L : cc.longValue(),
+                             record.getLong("CC"));
+                assertEquals(cc == null ? 0.0 : cc.doubleValue(),
+                             record.getDouble("CC"),
+                             0.0);
+                assertEquals(cc == null ? 0L : new BigDecimal(cc.toString()).movePointRight(3).longValue(),
+                             record.getScaledLong("CC", 3));
+            }
+        }
+        finally
+        {
+            table.close();
+        }
+    }
 }
@@ -20,7 +20,11 @@ import static org.junit.Assert.*;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 public class TestPack
 {
@@ -173,4 +177,142 @@ public class TestPack
 
         assertEquals("Counted record count after pack incorrect (deleted records included) ", 0, counter);
     }
+
+    @Test
+    public void testPackIntoNewFile()
+                             throws Exception
+    {
+        final File outputDir = UnitTestUtil.recreateDirectory("target/pack_new_file");
+        final File inPlaceDir = UnitTestUtil.recreateDirectory("target/pack_new_file/in_place");
+        final File newFileDir = UnitTestUtil.recreateDirectory("target/pack_new_file/new_file");
+        final List<Field> fields = new ArrayList<Field>();
+        fields.add(new Field("ID", Type.NUMBER, 5));
+        fields.add(new Field("NAME", Type.CHARACTER, 20));
+        fields.add(new Field("TEXT", Type.MEMO, 10));
+
+        Table table = new Table(new File(outputDir, "PACK.DBF"), Version.DBASE_3, fields);
+
+        try
+        {
+            table.open(IfNonExistent.CREATE);
+
+            for (int i = 0; i < 5000; ++i)
+            {
+                table.addRecord(i, "Name " + i, i % 4 == 0 ? "Memo " + i : null);
+            }
+
+            for (int i = 0; i < 5000; i += 3)
+            {
+                table.deleteRecordAt(i);
+            }
+        }
+        finally
+        {
+            table.close();
+        }
+
+        for (final File dir : new File[] { inPlaceDir, newFileDir })
+        {
+            UnitTestUtil.copyFile(new File(outputDir, "PACK.DBF"), dir, "PACK.DBF");
+            UnitTestUtil.copyFile(new File(outputDir, "PACK.dbt"), dir, "PACK.dbt");
+        }
+
+        final Table inPlace = new Table(new File(inPlaceDir, "PACK.DBF"));
+        final Table newFile = new Table(new File(newFileDir, "PACK.DBF"));
+
+        try
+        {
+            inPlace.open(IfNonExistent.ERROR);
+            newFile.open("rw", IfNonExistent.ERROR, OpenOptions.mmap());
+
+            /*
+             * Read a record first, so that the packed table must let go of the mapping.
+             */
+            assertEquals(0,
+                         newFile.getRecordAt(0).getInt("ID"));
+
+            inPlace.pack();
+            newFile.pack(PackMode.NEW_FILE);
+
+            assertEquals(3333,
+                         newFile.getRecordCount());
+            assertEquals(inPlace.getRecordCount(),
+                         newFile.getRecordCount());
+
+            for (int i = 0; i < newFile.getRecordCount(); ++i)
+            {
+                final Record expected = inPlace.getRecordAt(i);
+                final Record actual = newFile.getRecordAt(i);
+
+                assertEquals(expected.getInt("ID"),
+                             actual.getInt("ID"));
+                assertEquals(expected.getStringValue("NAME"),
+                             actual.getStringValue("NAME"));
+                assertEquals(expected.getStringValue("TEXT"),
+                             actual.getStringValue("TEXT"));
+                assertFalse(actual.isMarkedDeleted());
+            }
+
+            newFile.addRecord(5000, "Name 5000", "Memo 5000");
+            assertEquals("Memo 5000",
+                         newFile.getRecordAt(3333).getStringValue("TEXT"));
+        }
+        finally
+        {
+            inPlace.close();
+            newFile.close();
+        }
+
+        assertFalse(new File(newFileDir, "PACK.DBF.pack").exists());
+
+        table = new Table(new File(newFileDir, "PACK.DBF"));
+
+        try
+        {
+            table.open(IfNonExistent.ERROR);
+            assertEquals(3334,
+                         table.getRecordCount());
+            assertEquals("Name 1",
+                         table.getRecordAt(0).getStringValue("NAME").trim());
+            assertEquals("Memo 4",
+                         table.getRecordAt(2).getStringValue("TEXT"));
+        }
+        finally
+        {
+            table.close();
+        }
+    }
+
+    @Test
+    public void testPackIntoNewFileReadOnly()
+                                    throws Exception
+    {
+        final File inputDir = new File("src/test/resources/dbase3plus/cars_del");
+        final File outputDir = UnitTestUtil.recreateDirectory("target/pack_read_only");
+        UnitTestUtil.copyFile(new File(inputDir, "cars.dbf"), outputDir, "cars.dbf");
+        UnitTestUtil.copyFile(new File(inputDir, "cars.dbt"), outputDir, "cars.dbt");
+
+        final File file = new File(outputDir, "cars.dbf");
+        final byte[] before = Files.readAllBytes(file.toPath());
+        final Table table = new Table(file);
+
+        try
+        {
+            table.open("r", IfNonExistent.ERROR);
+            table.pack(PackMode.NEW_FILE);
+            fail("A table opened for reading only should not be packed");
+        }
+        catch (final IOException e)
+        {
+            /* expected */
+        }
+        finally
+        {
+            table.close();
+        }
+
+        assertArrayEquals(before,
+                          Files.readAllBytes(file.toPath()));
+        assertFalse(new File(outputDir, "cars.dbf.pack").exists());
+    }
 }
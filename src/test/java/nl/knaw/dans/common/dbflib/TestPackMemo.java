@@ -0,0 +1,453 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests removing memos that are no longer referred to with {@link Table#packMemo()}.
+ */
+@RunWith(Parameterized.class)
+public class TestPackMemo
+    extends BaseTestcase
+{
+    private static final int N_RECORDS = 200;
+
+    public TestPackMemo(final Version aVersion, final String aVersionDirectory)
+    {
+        super(aVersion, aVersionDirectory);
+    }
+
+    @Test
+    public void packMemo()
+                  throws Exception
+    {
+        final File outputDir = UnitTestUtil.recreateDirectory("target/test-output/" + versionDirectory + "/packmemo");
+        final List<Field> fields = new ArrayList<Field>();
+        fields.add(new Field("ID", Type.NUMBER, 5));
+        fields.add(new Field("TEXT", Type.MEMO, 10));
+        fields.add(new Field("NOTE", Type.MEMO, 10));
+
+        final File file = new File(outputDir, "PACKMEMO.DBF");
+        final Map<Integer, String> expected = new HashMap<Integer, String>();
+        Table table = new Table(file, version, fields);
+
+        try
+        {
+            table.open(IfNonExistent.CREATE);
+
+            for (int i = 0; i < N_RECORDS; ++i)
+            {
+                table.addRecord(i, createText(i, 1000), i % 3 == 0 ? null : "Note " + i);
+            }
+
+            /*
+             * Updating a record writes its memos anew, leaving the old ones behind.
+             */
+            for (int i = 0; i < N_RECORDS; i += 2)
+            {
+                table.updateRecordAt(i,
+                                     table.createRecord(i, createText(i, 100), null));
+            }
+
+            for (int i = 0; i < N_RECORDS; i += 5)
+            {
+                table.deleteRecordAt(i);
+            }
+
+            table.pack();
+        }
+        finally
+        {
+            table.close();
+        }
+
+        final File memoFile = Util.getMemoFile(file, version);
+        final long lengthBefore = memoFile.length();
+
+        table = new Table(file);
+
+        try
+        {
+            table.open(IfNonExistent.ERROR);
+
+            for (int i = 0; i < N_RECORDS; ++i)
+            {
+                if (i % 5 != 0)
+                {
+                    expected.put(i, table.getRecordAt(expected.size()).getStringValue("TEXT"));
+                }
+            }
+
+            table.packMemo();
+
+            assertTrue(memoFile.length() < lengthBefore / 2);
+            assertFalse(new File(memoFile.getPath() + ".pack").exists());
+            assertRecords(table, expected);
+
+            /*
+             * New memos go after the packed ones.
+             */
+            table.addRecord(N_RECORDS, "New", "Note");
+            assertEquals("New",
+                         table.getRecordAt(expected.size()).getStringValue("TEXT"));
+            assertRecords(table, expected);
+        }
+        finally
+        {
+            table.close();
+        }
+
+        table = new Table(file);
+
+        try
+        {
+            table.open(IfNonExistent.ERROR);
+            assertRecords(table, expected);
+        }
+        finally
+        {
+            table.close();
+        }
+    }
+
+    @Test
+    public void staleMemoPointers()
+                           throws Exception
+    {
+        final File file = createTable("stalememo");
+        final Table table = new Table(file);
+
+        try
+        {
+            table.open(OpenOptions.defaults().setLazyMemo(true));
+
+            final Record read = table.getRecordAt(1);
+            final Record accessed = table.getRecordAt(2);
+            accessed.getStringValue("TEXT");
+
+            table.packMemo();
+
+            assertEquals(createText(2, 100),
+                         accessed.getStringValue("TEXT"));
+
+            try
+            {
+                read.getStringValue("TEXT");
+                fail("A memo pointer read before packing should not be followed");
+            }
+            catch (final IllegalStateException e)
+            {
+                /* expected */
+            }
+
+            assertEquals(createText(1, 100),
+                         table.getRecordAt(1).getStringValue("TEXT"));
+        }
+        finally
+        {
+            table.close();
+        }
+    }
+
+    @Test
+    public void sharedMemoIsCopiedOnce()
+                                throws Exception
+    {
+        final File file = createTable("sharedmemo");
+        final File memoFile = Util.getMemoFile(file, version);
+        final int[] indexes = new int[N_RECORDS];
+
+        for (int i = 0; i < N_RECORDS; ++i)
+        {
+            indexes[i] = i;
+        }
+
+        final Table table = new Table(file);
+
+        try
+        {
+            table.open(IfNonExistent.ERROR);
+            table.updateField(indexes, "TEXT", "Shared memo");
+            table.packMemo();
+
+            for (int i = 0; i < N_RECORDS; ++i)
+            {
+                assertEquals("Shared memo",
+                             table.getRecordAt(i).getStringValue("TEXT"));
+            }
+        }
+        finally
+        {
+            table.close();
+        }
+
+        assertEquals(1,
+                     countOccurrences(Files.readAllBytes(memoFile.toPath()),
+                                      "Shared memo".getBytes("US-ASCII")));
+    }
+
+    private static int countOccurrences(final byte[] bytes, final byte[] pattern)
+    {
+        int count = 0;
+
+        for (int i = 0; i <= bytes.length - pattern.length; ++i)
+        {
+            int j = 0;
+
+            while (j < pattern.length && bytes[i + j] == pattern[j])
+            {
+                ++j;
+            }
+
+            if (j == pattern.length)
+            {
+                ++count;
+            }
+        }
+
+        return count;
+    }
+
+    @Test
+    public void corruptPointerChangesNothing()
+                                      throws Exception
+    {
+        final File file = createTable("corruptpointer");
+        final File memoFile = Util.getMemoFile(file, version);
+        Table table = new Table(file);
+
+        /*
+         * Make the pointer in the last record point beyond the end of the memo file.
+         */
+        try
+        {
+            table.open(IfNonExistent.ERROR);
+
+            final int offset = table.getSchema().getOffset(1);
+            final RandomAccessFile raFile = new RandomAccessFile(file, "rw");
+
+            try
+            {
+                final byte[] header = new byte[12];
+                raFile.readFully(header);
+
+                final int headerLength = (header[8] & 0xff) | ((header[9] & 0xff) << 8);
+                final int recordLength = (header[10] & 0xff) | ((header[11] & 0xff) << 8);
+                raFile.seek(headerLength + ((long) (N_RECORDS - 1) * recordLength) + offset);
+                raFile.write("9999999999".getBytes("US-ASCII"));
+            }
+            finally
+            {
+                raFile.close();
+            }
+        }
+        finally
+        {
+            table.close();
+        }
+
+        final byte[] before = Files.readAllBytes(file.toPath());
+        final byte[] memoBefore = Files.readAllBytes(memoFile.toPath());
+        table = new Table(file);
+
+        try
+        {
+            table.open(IfNonExistent.ERROR);
+            table.packMemo();
+            fail("A corrupt memo pointer should be reported");
+        }
+        catch (final CorruptedTableException e)
+        {
+            /* expected */
+        }
+        finally
+        {
+            table.close();
+        }
+
+        assertArrayEquals(before,
+                          Files.readAllBytes(file.toPath()));
+        assertArrayEquals(memoBefore,
+                          Files.readAllBytes(memoFile.toPath()));
+        assertFalse(new File(file.getPath() + ".pack").exists());
+        assertFalse(new File(memoFile.getPath() + ".pack").exists());
+    }
+
+    @Test
+    public void finishesInterruptedPack()
+                                 throws Exception
+    {
+        final File packedDir = UnitTestUtil.recreateDirectory("target/test-output/" + versionDirectory
+                                                              + "/packmemo/packed");
+        final File file = createTable("interrupted");
+        final File memoFile = Util.getMemoFile(file, version);
+        final File packedFile = new File(packedDir, file.getName());
+        final File packedMemoFile = new File(packedDir, memoFile.getName());
+        Files.copy(file.toPath(), packedFile.toPath());
+        Files.copy(memoFile.toPath(), packedMemoFile.toPath());
+
+        Table table = new Table(packedFile);
+
+        try
+        {
+            table.open(IfNonExistent.ERROR);
+            table.packMemo();
+        }
+        finally
+        {
+            table.close();
+        }
+
+        /*
+         * Leave the files as if packing stopped right after the table file was replaced.
+         */
+        Files.copy(packedFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.copy(packedMemoFile.toPath(), new File(memoFile.getPath() + ".pack").toPath());
+
+        table = new Table(file);
+
+        try
+        {
+            table.open("r", IfNonExistent.ERROR);
+            fail("A table with an unfinished memo pack should not be opened for reading only");
+        }
+        catch (final CorruptedTableException e)
+        {
+            /* expected */
+        }
+        finally
+        {
+            table.close();
+        }
+
+        try
+        {
+            table.open(IfNonExistent.ERROR);
+
+            assertFalse(new File(memoFile.getPath() + ".pack").exists());
+
+            for (int i = 0; i < N_RECORDS; ++i)
+            {
+                assertEquals(createText(i, 100),
+                             table.getRecordAt(i).getStringValue("TEXT"));
+            }
+        }
+        finally
+        {
+            table.close();
+        }
+
+        assertArrayEquals(Files.readAllBytes(packedMemoFile.toPath()),
+                          Files.readAllBytes(memoFile.toPath()));
+    }
+
+    /*
+     * Creates a table in which every record has one memo in use and one that is no longer
+     * referred to.
+     */
+    private File createTable(final String name)
+                      throws Exception
+    {
+        final File outputDir = UnitTestUtil.recreateDirectory("target/test-output/" + versionDirectory + "/" + name);
+        final List<Field> fields = new ArrayList<Field>();
+        fields.add(new Field("ID", Type.NUMBER, 5));
+        fields.add(new Field("TEXT", Type.MEMO, 10));
+
+        final File file = new File(outputDir, "PACKMEMO.DBF");
+        final Table table = new Table(file, version, fields);
+
+        try
+        {
+            table.open(IfNonExistent.CREATE);
+
+            for (int i = 0; i < N_RECORDS; ++i)
+            {
+                table.addRecord(i, createText(i, 1000));
+                table.updateRecordAt(i,
+                                     table.createRecord(i, createText(i, 100)));
+            }
+        }
+        finally
+        {
+            table.close();
+        }
+
+        return file;
+    }
+
+    private static void assertRecords(final Table table, final Map<Integer, String> expected)
+                               throws Exception
+    {
+        int index = 0;
+
+        for (int i = 0; i < N_RECORDS; ++i)
+        {
+            if (! expected.containsKey(i))
+            {
+                continue;
+            }
+
+            final Record record = table.getRecordAt(index++);
+            assertEquals(i,
+                         record.getInt("ID"));
+            assertEquals(i % 2 == 0 ? createText(i, 100) : createText(i, 1000),
+                         expected.get(i));
+            assertEquals(expected.get(i),
+                         record.getStringValue("TEXT"));
+
+            if (i % 2 == 0 || i % 3 == 0)
+            {
+                assertNull(record.getStringValue("NOTE"));
+            }
+            else
+            {
+                assertEquals("Note " + i,
+                             record.getStringValue("NOTE"));
+            }
+        }
+    }
+
+    private static String createText(final int i, final int length)
+    {
+        final StringBuilder builder = new StringBuilder(length);
+
+        while (builder.length() < length)
+        {
+            builder.append(i).append(' ');
+        }
+
+        return builder.toString();
+    }
+}
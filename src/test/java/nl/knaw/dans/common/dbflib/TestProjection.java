@@ -0,0 +1,147 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests reading a subset of the fields of a table.
+ */
+public class TestProjection
+{
+    private static Set<String> fieldNames(final String... names)
+    {
+        return new HashSet<String>(Arrays.asList(names));
+    }
+
+    @Test
+    public void iteratorReadsOnlyRequestedFields()
+                                          throws Exception
+    {
+        final Table table = new Table(new File("src/test/resources/dbase3plus/cars/cars.dbf"));
+
+        try
+        {
+            table.open("r", IfNonExistent.ERROR);
+
+            final Iterator<Record> full = table.recordIterator();
+            final Iterator<Record> projected = table.recordIterator(fieldNames("NAME", "CC"));
+            int count = 0;
+
+            while (full.hasNext())
+            {
+                final Record expected = full.next();
+                final Record actual = projected.next();
+
+                assertEquals(expected.getStringValue("NAME"),
+                             actual.getStringValue("NAME"));
+                assertEquals(expected.getNumberValue("CC"),
+                             actual.getNumberValue("CC"));
+                assertNull(actual.getNumberValue("YEAR"));
+                assertNull(actual.getStringValue("DESCR"));
+                ++count;
+            }
+
+            assertEquals(4, count);
+        }
+        finally
+        {
+            table.close();
+        }
+    }
+
+    /**
+     * If the memo field is not requested, the memo file must not be touched, so a missing memo
+     * file is no problem.
+     */
+    @Test
+    public void memoFileNotAccessed()
+                             throws Exception
+    {
+        final Table table = new Table(new File("src/test/resources/dbase3plus/tableExceptions/MISSMEMO.DBF"));
+
+        try
+        {
+            table.open("r", IfNonExistent.ERROR);
+
+            final List<Record> records = table.getAllRecords(false,
+                                                             fieldNames("DESCR"));
+            assertEquals(4,
+                         records.size());
+            assertNotNull(records.get(0).getStringValue("DESCR"));
+
+            final Iterator<Record> iterator = table.recordIterator(Collections.singleton("DESCR"));
+            assertNotNull(iterator.next().getStringValue("DESCR"));
+        }
+        finally
+        {
+            table.close();
+        }
+    }
+
+    @Test
+    public void getRecordsAtWithProjection()
+                                    throws Exception
+    {
+        final Table table = new Table(new File("src/test/resources/dbase3plus/cars/cars.dbf"));
+
+        try
+        {
+            table.open("r", IfNonExistent.ERROR);
+
+            final List<Record> records = table.getRecordsAt(1, 2, false,
+                                                            fieldNames("YEAR"));
+            assertEquals(2,
+                         records.size());
+            assertEquals(table.getRecordAt(1).getNumberValue("YEAR"),
+                         records.get(0).getNumberValue("YEAR"));
+            assertNull(records.get(0).getStringValue("NAME"));
+        }
+        finally
+        {
+            table.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownField()
+                      throws Exception
+    {
+        final Table table = new Table(new File("src/test/resources/dbase3plus/cars/cars.dbf"));
+
+        try
+        {
+            table.open("r", IfNonExistent.ERROR);
+            table.recordIterator(fieldNames("NAME", "NO_SUCH_FIELD"));
+        }
+        finally
+        {
+            table.close();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Tests the read-ahead buffer of the record iterator.
+ */
+public class TestReadAhead
+{
+    private static final int N_RECORDS = 500;
+
+    @Test
+    public void readAheadSizes()
+                        throws Exception
+    {
+        final Table table = createTable("SIZES.DBF");
+
+        try
+        {
+            for (final int readAheadSize : new int[] { 1, 50, 1000, 1000000 })
+            {
+                table.close();
+                table.open("r",
+                           IfNonExistent.ERROR,
+                           OpenOptions.defaults().setReadAheadSize(readAheadSize));
+                assertIds(table, 0, 1);
+            }
+        }
+        finally
+        {
+            table.close();
+        }
+    }
+
+    /**
+     * Records written while iterating must be returned as written, even if they were already read
+     * ahead.
+     */
+    @Test
+    public void writesWhileIterating()
+                              throws Exception
+    {
+        final Table table = createTable("WRITES.DBF");
+
+        try
+        {
+            final Iterator<Record> iterator = table.recordIterator();
+            assertEquals(0,
+                         iterator.next().getNumberValue("ID").intValue());
+
+            final Record record = table.getRecordAt(2);
+            table.updateRecordAt(1, record);
+            table.deleteRecordAt(3);
+
+            assertEquals(2,
+                         iterator.next().getNumberValue("ID").intValue());
+            assertEquals(2,
+                         iterator.next().getNumberValue("ID").intValue());
+            assertEquals(4,
+                         iterator.next().getNumberValue("ID").intValue());
+        }
+        finally
+        {
+            table.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidReadAheadSize()
+    {
+        OpenOptions.defaults().setReadAheadSize(0);
+    }
+
+    private static Table createTable(final String name)
+                              throws Exception
+    {
+        final File outputDir = UnitTestUtil.recreateDirectory("target/test-output/dbase3plus/readahead/" + name);
+        final List<Field> fields = new ArrayList<Field>();
+        fields.add(new Field("ID", Type.NUMBER, 5));
+        fields.add(new Field("NAME", Type.CHARACTER, 20));
+
+        final Table table = new Table(new File(outputDir, name), Version.DBASE_3, fields);
+        table.open(IfNonExistent.CREATE);
+
+        for (int i = 0; i < N_RECORDS; ++i)
+        {
+            table.addRecord(i, "Record " + i);
+        }
+
+        return table;
+    }
+
+    private static void assertIds(final Table table, final int firstId, final int step)
+    {
+        final Iterator<Record> iterator = table.recordIterator();
+
+        for (int id = firstId; id < N_RECORDS; id += step)
+        {
+            assertTrue(iterator.hasNext());
+
+            final Record record = iterator.next();
+            assertEquals(id,
+                         record.getNumberValue("ID").intValue());
+            assertEquals("Record " + id,
+                         record.getStringValue("NAME").trim());
+        }
+
+        assertFalse(iterator.hasNext());
+    }
+}
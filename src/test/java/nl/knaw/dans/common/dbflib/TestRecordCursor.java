@@ -0,0 +1,265 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import org.junit.runner.RunWith;
+
+import org.junit.runners.Parameterized;
+
+import java.io.File;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Tests that {@link RecordCursor} returns the same values as the record iterator.
+ */
+@RunWith(Parameterized.class)
+public class TestRecordCursor
+    extends BaseTestcase
+{
+    /**
+     * Creates a new TestRecordCursor object.
+     *
+     * @param aVersion test parameter
+     * @param aVersionDirectory test parameter
+     */
+    public TestRecordCursor(final Version aVersion, final String aVersionDirectory)
+    {
+        super(aVersion, aVersionDirectory);
+    }
+
+    @Test
+    public void cursorMatchesIterator()
+                               throws Exception
+    {
+        for (final String tableName : new String[] { "TABLE1.DBF", "TABLE2.DBF" })
+        {
+            final Table table =
+                new Table(new File("src/test/resources/" + versionDirectory + "/rndtrip/" + tableName));
+
+            try
+            {
+                table.open("r", IfNonExistent.ERROR);
+
+                final List<Field> fields = table.getFields();
+                final Iterator<Record> iterator = table.recordIterator();
+                final RecordCursor cursor = table.recordCursor();
+
+                while (iterator.hasNext())
+                {
+                    assertTrue(cursor.next());
+
+                    final Record record = iterator.next();
+
+                    for (int i = 0; i < fields.size(); ++i)
+                    {
+                        assertSameValue(fields.get(i), record, cursor, i);
+                    }
+                }
+
+                assertFalse(cursor.next());
+            }
+            finally
+            {
+                table.close();
+            }
+        }
+    }
+
+    @Test
+    public void typedAccessors()
+                        throws Exception
+    {
+        final Table table = new Table(new File("src/test/resources/" + versionDirectory + "/rndtrip/TABLE1.DBF"));
+
+        try
+        {
+            table.open("r", IfNonExistent.ERROR);
+
+            final RecordCursor cursor = table.recordCursor();
+            final int id = cursor.getFieldIndex("ID");
+            final int string = cursor.getFieldIndex("STRFIELD");
+            final int logic = cursor.getFieldIndex("LOGICFIELD");
+            final int date = cursor.getFieldIndex("DATEFIELD");
+            final int number = cursor.getFieldIndex("FLOATFIELD");
+
+            while (cursor.next())
+            {
+                if (cursor.getInt(id) == 1)
+                {
+                    assertEquals("String data 01",
+                                 cursor.getCharSequence(string).toString().trim());
+                    assertTrue(cursor.getBoolean(logic));
+                    assertEquals(epochDay(1909, Calendar.MARCH, 18),
+                                 cursor.getEpochDay(date));
+                    assertEquals(1234.56,
+                                 cursor.getDouble(number),
+                                 0.0);
+                    assertEquals(1234,
+                                 cursor.getLong(number));
+                }
+                else if (cursor.getInt(id) == 3)
+                {
+                    assertTrue(cursor.isNull(logic));
+                    assertTrue(cursor.isNull(date));
+                    assertTrue(cursor.isNull(number));
+                    assertEquals(0.0,
+                                 cursor.getDouble(number),
+                                 0.0);
+                }
+            }
+        }
+        finally
+        {
+            table.close();
+        }
+    }
+
+    @Test
+    public void skipsDeletedRecords()
+                             throws Exception
+    {
+        final Table table = new Table(new File("src/test/resources/dbase3plus/cars_del/cars.dbf"));
+
+        try
+        {
+            table.open("r", IfNonExistent.ERROR);
+
+            RecordCursor cursor = table.recordCursor();
+            int count = 0;
+
+            while (cursor.next())
+            {
+                assertFalse(cursor.isMarkedDeleted());
+                assertTrue(cursor.getRecordIndex() != 1);
+                ++count;
+            }
+
+            assertEquals(3, count);
+
+            cursor = table.recordCursor(true);
+            count = 0;
+
+            while (cursor.next())
+            {
+                assertEquals(cursor.getRecordIndex() == 1,
+                             cursor.isMarkedDeleted());
+                ++count;
+            }
+
+            assertEquals(4, count);
+        }
+        finally
+        {
+            table.close();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void notPositioned()
+                       throws Exception
+    {
+        final Table table = new Table(new File("src/test/resources/" + versionDirectory + "/rndtrip/TABLE1.DBF"));
+
+        try
+        {
+            table.open("r", IfNonExistent.ERROR);
+            table.recordCursor().getInt(0);
+        }
+        finally
+        {
+            table.close();
+        }
+    }
+
+    private static void assertSameValue(final Field field, final Record record, final RecordCursor cursor,
+                                        final int fieldIndex)
+    {
+        final Object expected = record.getTypedValue(field.getName());
+        final String message = "Field " + field.getName();
+
+        assertEquals(message,
+                     expected == null,
+                     cursor.isNull(fieldIndex));
+
+        switch (field.getType())
+        {
+            case NUMBER:
+            case FLOAT:
+
+                if (expected != null)
+                {
+                    assertEquals(message,
+                                 ((Number) expected).doubleValue(),
+                                 cursor.getDouble(fieldIndex),
+                                 0.0);
+                    assertEquals(message,
+                                 ((Number) expected).longValue(),
+                                 cursor.getLong(fieldIndex));
+                }
+
+                break;
+
+            case LOGICAL:
+                assertEquals(message,
+                             Boolean.TRUE.equals(expected),
+                             cursor.getBoolean(fieldIndex));
+
+                break;
+
+            case DATE:
+
+                if (expected != null)
+                {
+                    final Calendar cal = Calendar.getInstance();
+                    cal.setTime((Date) expected);
+                    assertEquals(message,
+                                 epochDay(cal.get(Calendar.YEAR), cal.get(Calendar.MONTH), cal.get(Calendar.DAY_OF_MONTH)),
+                                 cursor.getEpochDay(fieldIndex));
+                }
+
+                break;
+
+            case CHARACTER:
+            case MEMO:
+                assertEquals(message, expected,
+                             cursor.getString(fieldIndex));
+
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    private static int epochDay(final int year, final int month, final int day)
+    {
+        final Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        utc.clear();
+        utc.set(year, month, day);
+
+        return (int) (utc.getTimeInMillis() / (24 * 60 * 60 * 1000L));
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Tests filtering records with a {@link RecordPredicate}.
+ */
+public class TestRecordPredicate
+{
+    private Table table;
+
+    @Before
+    public void open()
+              throws Exception
+    {
+        table = new Table(new File("src/test/resources/dbase3plus/cars/cars.dbf"));
+        table.open("r", IfNonExistent.ERROR);
+    }
+
+    @After
+    public void close()
+               throws Exception
+    {
+        table.close();
+    }
+
+    @Test
+    public void characterField()
+    {
+        assertNames(RecordPredicate.equalTo("NAME", "POLO"), "POLO");
+        assertNames(RecordPredicate.equalTo("NAME", "POL"));
+        assertNames(RecordPredicate.startsWith("NAME", "P"), "PASSAT", "POLO");
+        assertNames(RecordPredicate.in("NAME", "JETTA", "PASSAT", "GOLF"), "PASSAT", "JETTA");
+        assertNames(RecordPredicate.between("NAME", "JETTA", "POLO"), "PASSAT", "POLO", "JETTA");
+        assertNames(RecordPredicate.between("NAME", "K", null), "PASSAT", "POLO");
+        assertNames(RecordPredicate.isBlank("NAME"), "");
+    }
+
+    @Test
+    public void numberField()
+    {
+        assertNames(RecordPredicate.equalTo("YEAR", 2000), "POLO");
+        assertNames(RecordPredicate.equalTo("CC", 333.444), "POLO");
+        assertNames(RecordPredicate.between("YEAR", 1990, 2000), "POLO", "JETTA");
+        assertNames(RecordPredicate.between("CC", null, 500), "PASSAT", "POLO");
+        assertNames(RecordPredicate.isBlank("YEAR"), "");
+    }
+
+    @Test
+    public void logicalAndDateFields()
+    {
+        assertNames(RecordPredicate.equalTo("SEDAN", true), "JETTA");
+        assertNames(RecordPredicate.equalTo("SEDAN", false), "PASSAT", "POLO");
+        assertNames(RecordPredicate.between("PROD_DATE",
+                                            date(1950, Calendar.JANUARY, 1),
+                                            date(1990, Calendar.FEBRUARY, 12)),
+                    "PASSAT", "JETTA");
+        assertNames(RecordPredicate.equalTo("PROD_DATE", date(1901, Calendar.DECEMBER, 3)), "POLO");
+        assertNames(RecordPredicate.isBlank("DESCR").negate(), "PASSAT", "JETTA");
+    }
+
+    @Test
+    public void dateFieldInLocaleWithOtherDigits()
+    {
+        final Locale locale = Locale.getDefault();
+        Locale.setDefault(new Locale("ar", "EG"));
+
+        try
+        {
+            assertNames(RecordPredicate.equalTo("PROD_DATE", date(1901, Calendar.DECEMBER, 3)), "POLO");
+        }
+        finally
+        {
+            Locale.setDefault(locale);
+        }
+    }
+
+    @Test
+    public void combined()
+    {
+        assertNames(RecordPredicate.startsWith("NAME", "P").and(RecordPredicate.equalTo("SEDAN", false).negate()));
+        assertNames(RecordPredicate.equalTo("YEAR", 2000).or(RecordPredicate.equalTo("SEDAN", true)), "POLO", "JETTA");
+    }
+
+    @Test
+    public void cursorAndStream()
+                         throws Exception
+    {
+        final RecordPredicate predicate = RecordPredicate.between("YEAR", 1990, null);
+        final RecordCursor cursor = table.recordCursor(false, predicate);
+        final int name = cursor.getFieldIndex("NAME");
+
+        assertTrue(cursor.next());
+        assertEquals("POLO",
+                     cursor.getString(name).trim());
+        assertTrue(cursor.next());
+        assertEquals("JETTA",
+                     cursor.getString(name).trim());
+        assertFalse(cursor.next());
+
+        assertEquals(Arrays.asList("POLO", "JETTA"),
+                     table.stream(false, null, predicate).map(r -> r.getStringValue("NAME").trim())
+                     .collect(Collectors.toList()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownField()
+    {
+        table.recordIterator(RecordPredicate.equalTo("NO_SUCH_FIELD", "X"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongValueType()
+    {
+        table.recordIterator(RecordPredicate.equalTo("YEAR", "2000"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void memoComparison()
+    {
+        table.recordIterator(RecordPredicate.equalTo("DESCR", "X"));
+    }
+
+    private void assertNames(final RecordPredicate predicate, final String... expectedNames)
+    {
+        final List<String> names = new ArrayList<String>();
+        final Iterator<Record> iterator = table.recordIterator(predicate);
+
+        while (iterator.hasNext())
+        {
+            names.add(iterator.next().getStringValue("NAME").trim());
+        }
+
+        assertEquals(Arrays.asList(expectedNames),
+                     names);
+    }
+
+    private static Date date(final int year, final int month, final int day)
+    {
+        final Calendar cal = Calendar.getInstance();
+        cal.clear();
+        cal.set(year, month, day);
+
+        return cal.getTime();
+    }
+}
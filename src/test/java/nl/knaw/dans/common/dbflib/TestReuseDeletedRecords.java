@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests adding records in the slots of deleted records, with
+ * {@link OpenOptions#setReuseDeletedRecords(boolean)}.
+ */
+public class TestReuseDeletedRecords
+{
+    private static final int N_RECORDS = 200;
+    private File file;
+    private Table table;
+
+    @Before
+    public void createTable()
+                     throws Exception
+    {
+        final File outputDir = UnitTestUtil.recreateDirectory("target/test-output/dbase3plus/reuse");
+        final List<Field> fields = new ArrayList<Field>();
+        fields.add(new Field("ID", Type.NUMBER, 5));
+        fields.add(new Field("NAME", Type.CHARACTER, 10));
+
+        file = new File(outputDir, "REUSE.DBF");
+        table = new Table(file, Version.DBASE_3, fields);
+        table.open(IfNonExistent.CREATE);
+
+        for (int i = 0; i < N_RECORDS; ++i)
+        {
+            table.addRecord(i, "Name " + i);
+        }
+
+        table.deleteRecordAt(2);
+        table.deleteRecordAt(130);
+        table.close();
+    }
+
+    @After
+    public void closeTable()
+                    throws Exception
+    {
+        table.close();
+    }
+
+    @Test
+    public void reusesDeletedSlots()
+                            throws Exception
+    {
+        table.open(OpenOptions.defaults().setReuseDeletedRecords(true));
+
+        final long length = file.length();
+
+        table.addRecord(1000, "First");
+        table.addRecord(1001, "Second");
+
+        assertEquals(length,
+                     file.length());
+        assertEquals(N_RECORDS,
+                     table.getRecordCount());
+        assertEquals("First",
+                     table.getRecordAt(2).getStringValue("NAME"));
+        assertFalse(table.getRecordAt(2).isMarkedDeleted());
+        assertEquals("Second",
+                     table.getRecordAt(130).getStringValue("NAME"));
+
+        /*
+         * There are no free slots left, so the next record is added to the end.
+         */
+        table.addRecord(1002, "Third");
+        assertEquals(N_RECORDS + 1,
+                     table.getRecordCount());
+        assertEquals("Third",
+                     table.getRecordAt(N_RECORDS).getStringValue("NAME"));
+
+        /*
+         * Records deleted while the table is open are reused as well.
+         */
+        table.deleteRecordAt(7);
+        table.addRecord(1003, "Fourth");
+        assertEquals(N_RECORDS + 1,
+                     table.getRecordCount());
+        assertEquals("Fourth",
+                     table.getRecordAt(7).getStringValue("NAME"));
+    }
+
+    @Test
+    public void appendsByDefault()
+                          throws Exception
+    {
+        table.open();
+        table.addRecord(1000, "First");
+
+        assertEquals(N_RECORDS + 1,
+                     table.getRecordCount());
+        assertEquals("First",
+                     table.getRecordAt(N_RECORDS).getStringValue("NAME"));
+        assertEquals("Name 2",
+                     table.getRecordAt(2).getStringValue("NAME"));
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Tests the {@link Schema} of a table and accessing record values by ordinal.
+ */
+public class TestSchema
+{
+    private static final File TABLE1 = new File("src/test/resources/dbase3plus/rndtrip/TABLE1.DBF");
+
+    @Test
+    public void offsetsAndOrdinals()
+                            throws Exception
+    {
+        final Table table = new Table(TABLE1);
+
+        try
+        {
+            table.open("r", IfNonExistent.ERROR);
+
+            final Schema schema = table.getSchema();
+            final List<Field> fields = table.getFields();
+
+            assertEquals(fields,
+                         schema.getFields());
+            assertEquals(5,
+                         schema.getFieldCount());
+            assertEquals(2,
+                         schema.getOrdinal("LOGICFIELD"));
+            assertEquals(-1,
+                         schema.getOrdinal("NO_SUCH_FIELD"));
+
+            /*
+             * ID N3, STRFIELD C50, LOGICFIELD L, DATEFIELD D, FLOATFIELD N10
+             */
+            final int[] expectedOffsets = { 1, 4, 54, 55, 63 };
+
+            for (int i = 0; i < expectedOffsets.length; ++i)
+            {
+                assertEquals(expectedOffsets[i],
+                             schema.getOffset(i));
+                assertEquals(fields.get(i),
+                             schema.getField(i));
+            }
+        }
+        finally
+        {
+            table.close();
+        }
+    }
+
+    @Test
+    public void ordinalAccessors()
+                          throws Exception
+    {
+        final Table table = new Table(TABLE1);
+
+        try
+        {
+            table.open("r", IfNonExistent.ERROR);
+
+            final Schema schema = table.getSchema();
+            final Iterator<Record> iterator = table.recordIterator();
+
+            while (iterator.hasNext())
+            {
+                final Record record = iterator.next();
+                assertSame(schema,
+                           record.getSchema());
+
+                assertEquals(record.getNumberValue("ID"),
+                             record.getNumberValue(schema.getOrdinal("ID")));
+                assertEquals(record.getStringValue("STRFIELD"),
+                             record.getStringValue(schema.getOrdinal("STRFIELD")));
+                assertEquals(record.getBooleanValue("LOGICFIELD"),
+                             record.getBooleanValue(schema.getOrdinal("LOGICFIELD")));
+                assertEquals(record.getDateValue("DATEFIELD"),
+                             record.getDateValue(schema.getOrdinal("DATEFIELD")));
+                assertEquals(record.getTypedValue("FLOATFIELD"),
+                             record.getTypedValue(schema.getOrdinal("FLOATFIELD")));
+                assertNull(record.getTypedValue("NO_SUCH_FIELD"));
+            }
+        }
+        finally
+        {
+            table.close();
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void constructedRecordHasNoOrdinals()
+    {
+        final Record record = new Record(new HashMap<String, Value>());
+        assertNull(record.getSchema());
+        record.getTypedValue(0);
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Tests streaming the records of a table, sequentially and in parallel.
+ */
+public class TestStream
+{
+    private static final int N_RECORDS = 20000;
+    private static final File TABLE_FILE = new File("target/test-output/dbase3plus/stream/STREAM.DBF");
+
+    @BeforeClass
+    public static void createTable()
+                            throws Exception
+    {
+        UnitTestUtil.recreateDirectory(TABLE_FILE.getParent());
+
+        final List<Field> fields = new ArrayList<Field>();
+        fields.add(new Field("ID", Type.NUMBER, 6));
+        fields.add(new Field("NAME", Type.CHARACTER, 20));
+
+        final Table table = new Table(TABLE_FILE, Version.DBASE_3, fields);
+        table.open(IfNonExistent.CREATE);
+
+        try
+        {
+            for (int i = 0; i < N_RECORDS; ++i)
+            {
+                table.addRecord(i, "Record " + i);
+            }
+
+            /*
+             * Delete every tenth record.
+             */
+            for (int i = 0; i < N_RECORDS; i += 10)
+            {
+                table.deleteRecordAt(i);
+            }
+        }
+        finally
+        {
+            table.close();
+        }
+    }
+
+    @Test
+    public void buffered()
+                  throws Exception
+    {
+        checkStreams(OpenOptions.defaults().setReadAheadSize(10000));
+    }
+
+    @Test
+    public void memoryMapped()
+                      throws Exception
+    {
+        checkStreams(OpenOptions.mmap().setMapWindowSize(10000));
+    }
+
+    private static void checkStreams(final OpenOptions options)
+                              throws Exception
+    {
+        final Table table = new Table(TABLE_FILE);
+
+        try
+        {
+            table.open("r", IfNonExistent.ERROR, options);
+
+            final List<Integer> expected = new ArrayList<Integer>();
+            final Iterator<Record> iterator = table.recordIterator();
+
+            while (iterator.hasNext())
+            {
+                expected.add(iterator.next().getNumberValue("ID").intValue());
+            }
+
+            assertEquals(N_RECORDS - N_RECORDS / 10,
+                         expected.size());
+            assertEquals(expected,
+                         table.stream().map(r -> r.getNumberValue("ID").intValue()).collect(Collectors.toList()));
+            assertEquals(expected,
+                         table.parallelStream().map(r -> r.getNumberValue("ID").intValue())
+                         .collect(Collectors.toList()));
+            assertEquals(expected.size(),
+                         table.parallelStream().filter(r -> r.getStringValue("NAME").startsWith("Record")).count());
+            assertEquals(N_RECORDS,
+                         table.stream(true, Collections.singleton("ID")).parallel().count());
+            assertEquals(N_RECORDS / 10,
+                         table.stream(true, null).parallel().filter(Record::isMarkedDeleted).count());
+        }
+        finally
+        {
+            table.close();
+        }
+    }
+}
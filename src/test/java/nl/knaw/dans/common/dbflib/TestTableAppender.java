@@ -0,0 +1,242 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests adding records in bulk with a {@link TableAppender}.
+ */
+public class TestTableAppender
+{
+    private static final int N_RECORDS = 1000;
+    private static final int HEADER_LENGTH = 32 + (3 * 32) + 1;
+    private static final int RECORD_LENGTH = 1 + 5 + 20 + 10;
+    private File outputDir;
+    private List<Field> fields;
+
+    @Before
+    public void setUp()
+               throws Exception
+    {
+        outputDir = UnitTestUtil.recreateDirectory("target/test-output/dbase3plus/appender");
+        fields = new ArrayList<Field>();
+        fields.add(new Field("ID", Type.NUMBER, 5));
+        fields.add(new Field("NAME", Type.CHARACTER, 20));
+        fields.add(new Field("TEXT", Type.MEMO, 10));
+    }
+
+    @Test
+    public void appendInChunks()
+                        throws Exception
+    {
+        final File file = new File(outputDir, "APPEND.DBF");
+        final Table table = new Table(file, Version.DBASE_3, fields);
+        table.open(IfNonExistent.CREATE);
+
+        try
+        {
+            /*
+             * A buffer of about ten records, so that the records are written in many chunks.
+             */
+            final TableAppender appender = table.appender(10 * RECORD_LENGTH);
+
+            for (int i = 0; i < N_RECORDS; ++i)
+            {
+                appender.append(i, "Record " + i, i % 10 == 0 ? "Memo " + i : null);
+            }
+
+            assertEquals(0,
+                         readRecordCountOnDisk(file));
+
+            appender.close();
+
+            assertEquals(N_RECORDS,
+                         readRecordCountOnDisk(file));
+            assertEquals(N_RECORDS,
+                         table.getRecordCount());
+
+            for (int i = 0; i < N_RECORDS; ++i)
+            {
+                final Record record = table.getRecordAt(i);
+                assertEquals(i,
+                             record.getInt("ID"));
+                assertEquals("Record " + i,
+                             record.getStringValue("NAME").trim());
+                assertEquals(i % 10 == 0 ? "Memo " + i : null,
+                             record.getStringValue("TEXT"));
+            }
+        }
+        finally
+        {
+            table.close();
+        }
+
+        final byte[] bytes = Files.readAllBytes(file.toPath());
+        assertEquals(HEADER_LENGTH + (N_RECORDS * RECORD_LENGTH) + 1,
+                     bytes.length);
+        assertEquals(0x1A,
+                     bytes[bytes.length - 1]);
+    }
+
+    @Test
+    public void sameFileAsAddRecord()
+                             throws Exception
+    {
+        /*
+         * The memo file holds the name of the table, so both tables get the same name.
+         */
+        final File appendedDir = UnitTestUtil.recreateDirectory("target/test-output/dbase3plus/appender/appended");
+        final File addedDir = UnitTestUtil.recreateDirectory("target/test-output/dbase3plus/appender/added");
+        final File appended = new File(appendedDir, "SAME.DBF");
+        final File added = new File(addedDir, "SAME.DBF");
+        final Table appendedTable = new Table(appended, Version.DBASE_3, fields);
+        final Table addedTable = new Table(added, Version.DBASE_3, fields);
+        appendedTable.open(IfNonExistent.CREATE);
+        addedTable.open(IfNonExistent.CREATE);
+
+        try
+        {
+            final TableAppender appender = appendedTable.appender(1000);
+
+            for (int i = 0; i < N_RECORDS; ++i)
+            {
+                final Object[] values = { i, i % 3 == 0 ? null : "Name " + i, i % 7 == 0 ? "Memo " + i : null };
+                appender.append(values);
+                addedTable.addRecord(values);
+
+                if (i == N_RECORDS / 2)
+                {
+                    appender.flush();
+                }
+            }
+
+            appender.close();
+        }
+        finally
+        {
+            appendedTable.close();
+            addedTable.close();
+        }
+
+        assertArrayEquals(Files.readAllBytes(added.toPath()),
+                          Files.readAllBytes(appended.toPath()));
+        assertArrayEquals(Files.readAllBytes(new File(addedDir, "SAME.dbt").toPath()),
+                          Files.readAllBytes(new File(appendedDir, "SAME.dbt").toPath()));
+    }
+
+    @Test
+    public void closingTableFlushesAppender()
+                                     throws Exception
+    {
+        final File file = new File(outputDir, "UNCLOSED.DBF");
+        final Table table = new Table(file, Version.DBASE_3, fields);
+        table.open(IfNonExistent.CREATE);
+
+        final TableAppender appender = table.appender();
+        appender.append(1, "One", null);
+        appender.append(2, "Two", "Memo");
+        table.close();
+
+        table.open(IfNonExistent.ERROR);
+
+        try
+        {
+            assertEquals(2,
+                         table.getRecordCount());
+            assertEquals("Two",
+                         table.getRecordAt(1).getStringValue("NAME").trim());
+            assertEquals("Memo",
+                         table.getRecordAt(1).getStringValue("TEXT"));
+            assertNull(table.getRecordAt(0).getStringValue("TEXT"));
+        }
+        finally
+        {
+            table.close();
+        }
+    }
+
+    @Test
+    public void oneAppenderAtATime()
+                            throws Exception
+    {
+        final Table table = new Table(new File(outputDir, "ONE.DBF"), Version.DBASE_3, fields);
+        table.open(IfNonExistent.CREATE);
+
+        try
+        {
+            final TableAppender appender = table.appender();
+
+            try
+            {
+                table.appender();
+                fail("Second appender should not be allowed");
+            }
+            catch (final IllegalStateException e)
+            {
+                /* expected */
+            }
+
+            appender.close();
+            appender.close();
+
+            try
+            {
+                appender.append(1, "One", null);
+                fail("Closed appender should not accept records");
+            }
+            catch (final IllegalStateException e)
+            {
+                /* expected */
+            }
+
+            table.appender().close();
+        }
+        finally
+        {
+            table.close();
+        }
+    }
+
+    private static long readRecordCountOnDisk(final File file)
+                                       throws Exception
+    {
+        final RandomAccessFile raFile = new RandomAccessFile(file, "r");
+
+        try
+        {
+            raFile.seek(4);
+
+            return Integer.reverseBytes(raFile.readInt()) & 0xffffffffL;
+        }
+        finally
+        {
+            raFile.close();
+        }
+    }
+}
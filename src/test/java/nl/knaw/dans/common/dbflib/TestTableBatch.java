@@ -0,0 +1,274 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Tests committing changes with a {@link TableBatch} and rolling back interrupted batches when
+ * the table is opened.
+ */
+public class TestTableBatch
+{
+    private static final int N_RECORDS = 10;
+    private File file;
+    private File journalFile;
+    private Table table;
+
+    @Before
+    public void createTable()
+                     throws Exception
+    {
+        final File outputDir = UnitTestUtil.recreateDirectory("target/test-output/dbase3plus/batch");
+        final List<Field> fields = new ArrayList<Field>();
+        fields.add(new Field("ID", Type.NUMBER, 5));
+        fields.add(new Field("NAME", Type.CHARACTER, 10));
+        fields.add(new Field("TEXT", Type.MEMO, 10));
+
+        file = new File(outputDir, "BATCH.DBF");
+        journalFile = new File(outputDir, "BATCH.DBF.jnl");
+        table = new Table(file, Version.DBASE_3, fields);
+        table.open(IfNonExistent.CREATE);
+
+        for (int i = 0; i < N_RECORDS; ++i)
+        {
+            table.addRecord(i, "Name " + i, "Memo " + i);
+        }
+    }
+
+    @After
+    public void closeTable()
+                    throws Exception
+    {
+        table.close();
+    }
+
+    @Test
+    public void appliesChangesOnCommit()
+                                throws Exception
+    {
+        final TableBatch batch = table.batch();
+
+        try
+        {
+            batch.addRecord(10, "Added", "New memo");
+            batch.updateRecordAt(3, table.createRecord(3, "Updated", "Changed memo"));
+            batch.deleteRecordAt(5);
+            batch.updateRecordAt(7, table.createRecord(7, "Gone"));
+            batch.deleteRecordAt(7);
+
+            assertEquals(N_RECORDS,
+                         table.getRecordCount());
+            assertEquals("Name 3",
+                         table.getRecordAt(3).getStringValue("NAME"));
+
+            batch.commit();
+        }
+        finally
+        {
+            batch.close();
+        }
+
+        assertFalse(journalFile.exists());
+        table.close();
+        table.open();
+
+        assertEquals(N_RECORDS + 1,
+                     table.getRecordCount());
+        assertEquals("Added",
+                     table.getRecordAt(N_RECORDS).getStringValue("NAME"));
+        assertEquals("New memo",
+                     table.getRecordAt(N_RECORDS).getStringValue("TEXT"));
+        assertEquals("Updated",
+                     table.getRecordAt(3).getStringValue("NAME"));
+        assertEquals("Changed memo",
+                     table.getRecordAt(3).getStringValue("TEXT"));
+        assertTrue(table.getRecordAt(5).isMarkedDeleted());
+        assertEquals("Name 5",
+                     table.getRecordAt(5).getStringValue("NAME"));
+        assertTrue(table.getRecordAt(7).isMarkedDeleted());
+        assertEquals("Gone",
+                     table.getRecordAt(7).getStringValue("NAME"));
+        assertFalse(table.getRecordAt(6).isMarkedDeleted());
+
+        final byte[] bytes = Files.readAllBytes(file.toPath());
+        assertEquals(0,
+                     bytes[DbfHeader.OFFSET_INCOMPLETE_TRANSATION]);
+        assertEquals(0x1A,
+                     bytes[bytes.length - 1]);
+    }
+
+    @Test
+    public void discardsChangesOnClose()
+                                throws Exception
+    {
+        final byte[] before = Files.readAllBytes(file.toPath());
+        final TableBatch batch = table.batch();
+        batch.addRecord(10, "Added");
+        batch.deleteRecordAt(0);
+        batch.close();
+
+        assertArrayEquals(before,
+                          Files.readAllBytes(file.toPath()));
+
+        try
+        {
+            batch.commit();
+            fail("A closed batch should not be committed");
+        }
+        catch (final IllegalStateException e)
+        {
+            /* expected */
+        }
+    }
+
+    @Test
+    public void invalidIndex()
+                      throws Exception
+    {
+        final TableBatch batch = table.batch();
+
+        try
+        {
+            batch.deleteRecordAt(N_RECORDS);
+            fail("Index beyond the last record should not be allowed");
+        }
+        catch (final NoSuchElementException e)
+        {
+            /* expected */
+        }
+        finally
+        {
+            batch.close();
+        }
+    }
+
+    @Test
+    public void rollsBackInterruptedCommit()
+                                    throws Exception
+    {
+        table.close();
+
+        final byte[] before = Files.readAllBytes(file.toPath());
+        interruptCommit(true);
+
+        table.open();
+
+        assertFalse(journalFile.exists());
+        assertArrayEquals(before,
+                          Files.readAllBytes(file.toPath()));
+        assertEquals(N_RECORDS,
+                     table.getRecordCount());
+        assertEquals("Name 2",
+                     table.getRecordAt(2).getStringValue("NAME"));
+    }
+
+    @Test
+    public void ignoresIncompleteJournal()
+                                  throws Exception
+    {
+        table.close();
+
+        final byte[] before = Files.readAllBytes(file.toPath());
+        interruptCommit(false);
+
+        /*
+         * Only the journal was written; the table file was not touched yet.
+         */
+        Files.write(file.toPath(), before);
+        table.open();
+
+        assertFalse(journalFile.exists());
+        assertArrayEquals(before,
+                          Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void readOnlyOpenRefusesInterruptedCommit()
+                                              throws Exception
+    {
+        table.close();
+        interruptCommit(true);
+
+        try
+        {
+            table.open("r", IfNonExistent.ERROR);
+            fail("A table with a batch to roll back should not be opened for reading only");
+        }
+        catch (final CorruptedTableException e)
+        {
+            /* expected */
+        }
+
+        assertTrue(journalFile.exists());
+    }
+
+    /*
+     * Leaves the table file and journal as if the program stopped half way through committing a
+     * batch that updates record 2 and appends a record. If the journal is not complete, its last
+     * byte is cut off, as if the program stopped while writing it.
+     */
+    private void interruptCommit(final boolean journalComplete)
+                          throws Exception
+    {
+        final RandomAccessFile raFile = new RandomAccessFile(file, "rw");
+
+        try
+        {
+            final DbfHeader header = new DbfHeader();
+            header.readAll(raFile);
+            new Journal(journalFile).write(raFile,
+                                           header,
+                                           new long[] { 2 });
+
+            raFile.seek(DbfHeader.OFFSET_INCOMPLETE_TRANSATION);
+            raFile.writeByte(1);
+            raFile.seek(header.getLength() + (2 * header.getRecordLength()));
+            raFile.write(new byte[header.getRecordLength()]);
+            raFile.seek(raFile.length() - 1);
+            raFile.write(new byte[header.getRecordLength()]);
+            raFile.seek(DbfHeader.OFFSET_RECORD_COUNT);
+            raFile.writeInt(Util.changeEndianness(N_RECORDS + 1));
+        }
+        finally
+        {
+            raFile.close();
+        }
+
+        if (! journalComplete)
+        {
+            final byte[] journal = Files.readAllBytes(journalFile.toPath());
+            Files.write(journalFile.toPath(),
+                        Arrays.copyOf(journal, journal.length - 1));
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tests reading one table from several threads at once through a {@link TableReader}.
+ */
+public class TestTableReader
+{
+    private static final int N_RECORDS = 5000;
+    private static final int N_THREADS = 8;
+    private Table table;
+
+    @Before
+    public void createTable()
+                     throws Exception
+    {
+        final File outputDir = UnitTestUtil.recreateDirectory("target/test-output/dbase3plus/reader");
+        final List<Field> fields = new ArrayList<Field>();
+        fields.add(new Field("ID", Type.NUMBER, 5));
+        fields.add(new Field("NAME", Type.CHARACTER, 20));
+        fields.add(new Field("TEXT", Type.MEMO, 10));
+
+        table = new Table(new File(outputDir, "READER.DBF"), Version.DBASE_3, fields);
+        table.open(IfNonExistent.CREATE);
+
+        for (int i = 0; i < N_RECORDS; ++i)
+        {
+            table.addRecord(i, "Record " + i, i % 10 == 0 ? "Memo " + i : null);
+        }
+
+        for (int i = 7; i < N_RECORDS; i += 100)
+        {
+            table.deleteRecordAt(i);
+        }
+    }
+
+    @After
+    public void closeTable()
+                    throws Exception
+    {
+        table.close();
+    }
+
+    @Test
+    public void concurrentLookups()
+                           throws Exception
+    {
+        final TableReader reader = table.reader();
+
+        runConcurrently(new Callable<Void>()
+            {
+                public Void call()
+                          throws Exception
+                {
+                    final Random random = new Random();
+
+                    for (int n = 0; n < 2000; ++n)
+                    {
+                        final int index = random.nextInt(N_RECORDS);
+                        final Record record = reader.getRecordAt(index);
+
+                        assertEquals(index,
+                                     record.getInt("ID"));
+                        assertEquals("Record " + index,
+                                     record.getStringValue("NAME").trim());
+                        assertEquals(index % 100 == 7,
+                                     record.isMarkedDeleted());
+                        assertEquals(index % 10 == 0 ? "Memo " + index : null,
+                                     record.getStringValue("TEXT"));
+                    }
+
+                    return null;
+                }
+            });
+    }
+
+    @Test
+    public void concurrentScans()
+                         throws Exception
+    {
+        final TableReader reader = table.reader();
+        final long expectedSum = expectedSum();
+
+        runConcurrently(new Callable<Void>()
+            {
+                public Void call()
+                          throws Exception
+                {
+                    long sum = 0;
+                    final Iterator<Record> iterator =
+                        reader.recordIterator(false,
+                                              Collections.singleton("ID"),
+                                              null);
+
+                    while (iterator.hasNext())
+                    {
+                        sum += iterator.next().getInt("ID");
+                    }
+
+                    assertEquals(expectedSum, sum);
+
+                    sum = 0;
+
+                    final RecordCursor cursor = reader.recordCursor(false, null);
+
+                    while (cursor.next())
+                    {
+                        sum += cursor.getInt(0);
+                    }
+
+                    assertEquals(expectedSum, sum);
+
+                    final List<Record> records = reader.getRecordsAt(100, 200, false, null);
+                    assertEquals(198,
+                                 records.size());
+                    assertEquals(100,
+                                 records.get(0).getInt("ID"));
+
+                    return null;
+                }
+            });
+    }
+
+    /**
+     * The reader does not use the file pointer of the table, so the iterators of the table itself
+     * are not disturbed by it.
+     */
+    @Test
+    public void doesNotDisturbTable()
+                             throws Exception
+    {
+        final TableReader reader = table.reader();
+        final Iterator<Record> iterator = table.recordIterator();
+
+        for (int i = 0; i < N_RECORDS; ++i)
+        {
+            if (i % 100 == 7)
+            {
+                continue;
+            }
+
+            assertEquals(i,
+                         iterator.next().getInt("ID"));
+            assertEquals(N_RECORDS - 1 - i,
+                         reader.getRecordAt(N_RECORDS - 1 - i).getInt("ID"));
+        }
+
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void projection()
+                    throws Exception
+    {
+        final Record record = table.reader().getRecordAt(10, Collections.singleton("NAME"));
+
+        assertEquals("Record 10",
+                     record.getStringValue("NAME").trim());
+        assertNull(record.getStringValue("TEXT"));
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void indexOutOfRange()
+                         throws Exception
+    {
+        table.reader().getRecordAt(N_RECORDS);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closedTable()
+                     throws Exception
+    {
+        final TableReader reader = table.reader();
+        table.close();
+        reader.getRecordAt(0);
+    }
+
+    private static long expectedSum()
+    {
+        long sum = 0;
+
+        for (int i = 0; i < N_RECORDS; ++i)
+        {
+            if (i % 100 != 7)
+            {
+                sum += i;
+            }
+        }
+
+        return sum;
+    }
+
+    private static void runConcurrently(final Callable<Void> task)
+                                 throws Exception
+    {
+        final ExecutorService executor = Executors.newFixedThreadPool(N_THREADS);
+
+        try
+        {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+            for (int i = 0; i < N_THREADS; ++i)
+            {
+                futures.add(executor.submit(task));
+            }
+
+            for (final Future<Void> future : futures)
+            {
+                future.get();
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+}
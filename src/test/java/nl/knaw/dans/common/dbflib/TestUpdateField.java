@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2009-2016 DANS - Data Archiving and  Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.common.dbflib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Tests updating single fields with {@link Table#updateField(int, String, Object)}.
+ */
+public class TestUpdateField
+{
+    private static final int N_RECORDS = 100;
+    private File file;
+    private File memoFile;
+    private Table table;
+
+    @Before
+    public void createTable()
+                     throws Exception
+    {
+        final File outputDir = UnitTestUtil.recreateDirectory("target/test-output/dbase3plus/updatefield");
+        final List<Field> fields = new ArrayList<Field>();
+        fields.add(new Field("ID", Type.NUMBER, 5));
+        fields.add(new Field("STATUS", Type.CHARACTER, 1));
+        fields.add(new Field("TEXT", Type.MEMO, 10));
+        fields.add(new Field("AMOUNT", Type.NUMBER, 8, 2));
+
+        file = new File(outputDir, "UPDATE.DBF");
+        memoFile = new File(outputDir, "UPDATE.dbt");
+        table = new Table(file, Version.DBASE_3, fields);
+        table.open(IfNonExistent.CREATE);
+
+        for (int i = 0; i < N_RECORDS; ++i)
+        {
+            table.addRecord(i, "N", "Memo " + i, i * 1.5);
+        }
+    }
+
+    @After
+    public void closeTable()
+                    throws Exception
+    {
+        table.close();
+    }
+
+    @Test
+    public void writesOnlyTheField()
+                            throws Exception
+    {
+        final byte[] before = Files.readAllBytes(file.toPath());
+        final byte[] memoBefore = Files.readAllBytes(memoFile.toPath());
+
+        table.updateField(42, "STATUS", "Y");
+
+        final byte[] after = Files.readAllBytes(file.toPath());
+        final int statusOffset = table.getSchema().getOffset(1);
+        final int position = 32 + (4 * 32) + 1 + (42 * 25) + statusOffset;
+
+        assertEquals('N',
+                     before[position]);
+        assertEquals('Y',
+                     after[position]);
+        after[position] = before[position];
+        assertArrayEquals(before, after);
+        assertArrayEquals(memoBefore,
+                          Files.readAllBytes(memoFile.toPath()));
+
+        final Record record = table.getRecordAt(42);
+        assertEquals("Y",
+                     record.getStringValue("STATUS"));
+        assertEquals("Memo 42",
+                     record.getStringValue("TEXT"));
+        assertEquals(6300,
+                     record.getScaledLong("AMOUNT", 2));
+    }
+
+    @Test
+    public void updatesBufferedRecords()
+                                throws Exception
+    {
+        final Iterator<Record> iterator = table.recordIterator();
+        assertEquals("N",
+                     iterator.next().getStringValue("STATUS"));
+
+        table.updateField(new int[] { 50, 1, 10 }, "STATUS", "Y");
+        table.updateField(10, "AMOUNT", 7.25);
+        table.updateField(1, "TEXT", "Changed");
+        table.updateField(50, "TEXT", null);
+
+        for (int i = 1; i < N_RECORDS; ++i)
+        {
+            final Record record = iterator.next();
+            assertEquals(i == 1 || i == 10 || i == 50 ? "Y" : "N",
+                         record.getStringValue("STATUS"));
+            assertEquals(i == 10 ? 725 : i * 150,
+                         record.getScaledLong("AMOUNT", 2));
+
+            if (i == 50)
+            {
+                assertNull(record.getStringValue("TEXT"));
+            }
+            else
+            {
+                assertEquals(i == 1 ? "Changed" : "Memo " + i,
+                             record.getStringValue("TEXT"));
+            }
+        }
+    }
+
+    @Test
+    public void invalidIndexWritesNothing()
+                                   throws Exception
+    {
+        final byte[] before = Files.readAllBytes(file.toPath());
+
+        try
+        {
+            table.updateField(new int[] { 3, N_RECORDS }, "STATUS", "Y");
+            fail("Index beyond the last record should not be allowed");
+        }
+        catch (final NoSuchElementException e)
+        {
+            /* expected */
+        }
+
+        assertArrayEquals(before,
+                          Files.readAllBytes(file.toPath()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownField()
+                      throws Exception
+    {
+        table.updateField(3, "NOSUCHFIELD", "Y");
+    }
+}